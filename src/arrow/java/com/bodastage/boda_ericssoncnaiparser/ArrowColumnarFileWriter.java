@@ -0,0 +1,136 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Writes a table of nullable utf8 columns to an Arrow IPC file, a record
+ * batch at a time.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class ArrowColumnarFileWriter implements ColumnarFileWriter {
+
+    private final int batchSize;
+
+    private final FileOutputStream out;
+
+    private final BufferAllocator allocator;
+
+    private final VectorSchemaRoot root;
+
+    private final VarCharVector[] vectors;
+
+    private final ArrowFileWriter writer;
+
+    /**
+     * Number of values set in the current row.
+     */
+    private int column = 0;
+
+    /**
+     * Number of rows in the current batch.
+     */
+    private int rows = 0;
+
+    ArrowColumnarFileWriter(String fileName, String[] columns, int batchSize) throws IOException{
+        this.batchSize = batchSize;
+
+        List<Field> fields = new ArrayList<Field>(columns.length);
+        for(String name : columns){
+            fields.add(Field.nullable(name, ArrowType.Utf8.INSTANCE));
+        }
+
+        allocator = new RootAllocator();
+        VectorSchemaRoot root = null;
+        FileOutputStream out = null;
+        try{
+            root = VectorSchemaRoot.create(new Schema(fields), allocator);
+            vectors = new VarCharVector[columns.length];
+            for(int i = 0; i < columns.length; i++){
+                vectors[i] = (VarCharVector) root.getVector(i);
+                vectors[i].allocateNew();
+            }
+
+            out = new FileOutputStream(fileName);
+            writer = new ArrowFileWriter(root, null, out.getChannel());
+            writer.start();
+        }catch(IOException | RuntimeException e){
+            //The vectors' memory is only released by closing the root and
+            //the allocator, as close does
+            close(e, out, root, allocator);
+            throw e;
+        }
+        this.root = root;
+        this.out = out;
+    }
+
+    /**
+     * Close what was created before a failure, keeping the failure.
+     */
+    private static void close(Exception failure, AutoCloseable... closeables){
+        for(AutoCloseable c : closeables){
+            if(c == null) continue;
+            try{
+                c.close();
+            }catch(Exception e){
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    @Override
+    public void add(String value){
+        VarCharVector vector = vectors[column++];
+        if(value == null){
+            vector.setNull(rows);
+        }else{
+            vector.setSafe(rows, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void endRow() throws IOException{
+        column = 0;
+        if(++rows == batchSize) writeBatch();
+    }
+
+    private void writeBatch() throws IOException{
+        if(rows == 0) return;
+        root.setRowCount(rows);
+        writer.writeBatch();
+        for(VarCharVector vector : vectors) vector.reset();
+        rows = 0;
+    }
+
+    /**
+     * Write the last batch and the file footer.
+     */
+    @Override
+    public void close() throws IOException{
+        try{
+            writeBatch();
+            writer.end();
+        }finally{
+            writer.close();
+            root.close();
+            allocator.close();
+            out.close();
+        }
+    }
+}
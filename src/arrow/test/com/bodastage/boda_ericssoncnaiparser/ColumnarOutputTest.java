@@ -0,0 +1,170 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.types.pojo.Field;
+
+/**
+ * Checks that the Arrow files hold the values of the csv files.
+ */
+public class ColumnarOutputTest extends TestCase
+{
+    private Path dump;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        dump = Files.createTempFile("cnai", ".txt");
+        try(PrintWriter pw = new PrintWriter(dump.toFile())){
+            pw.print("..cnai v2\n");
+            pw.print("..capabilities CAP\n");
+            pw.print(".subnetwork NET\n");
+            pw.print(".utctime 2020-01-01 00:00\n");
+            for(int r = 0; r < 100; r++){
+                if(r % 40 == 0) pw.print(".domain D" + r + "\n");
+                pw.print(".set E" + r + "\n");
+                pw.print("P0=\"v, \"\"" + r + "\"\n");
+                pw.print("P1=" + (r % 3) + "\n");
+                if(r % 5 != 1) pw.print("P2=x" + r + "\n");
+                pw.print(".set E" + r + "\n");
+                pw.print("USERDATA=\"u\"\n");
+            }
+            pw.print(".domain EMPTY\n");
+            pw.print("..end\n");
+        }
+    }
+
+    public void testFileThatCannotBeCreated() throws IOException
+    {
+        //The vectors are released before the error is passed on
+        File directory = Files.createTempDirectory("cnai-out").toFile();
+        try{
+            ColumnarFileWriter.open(new File(directory, "missing/CELL.arrow").getPath(),
+                    new String[]{ "set", "P0" }, 16);
+            fail();
+        }catch(IOException e){
+            assertEquals(0, e.getSuppressed().length);
+        }
+    }
+
+    public void testColumnsMatchCsv() throws IOException
+    {
+        CnaiParser parser = CnaiParser.builder().build();
+
+        File csv = Files.createTempDirectory("cnai-out").toFile();
+        try(DomainWriters output = parser.newOutput(csv.getAbsolutePath())){
+            parser.newSession(output, "dump.txt").parse(dump.toString());
+        }
+
+        //Small batches to have several of them
+        File arrow = Files.createTempDirectory("cnai-out").toFile();
+        try(DomainWriters output = new ColumnarDomainWriters(arrow.getAbsolutePath(), null, 7)){
+            parser.newSession(output, "dump.txt").parse(dump.toString());
+        }
+
+        boolean missingValues = false;
+        for(String domain : new String[]{"D0", "D40", "D80"}){
+            List<String> lines = Files.readAllLines(
+                    new File(csv, domain + ".csv").toPath(), StandardCharsets.UTF_8);
+            List<String> header = splitCsv(lines.get(0));
+
+            List<List<String>> rows = new ArrayList<List<String>>();
+            assertEquals(header, readArrow(new File(arrow, domain + ".arrow"), rows));
+            assertEquals(lines.size() - 1, rows.size());
+
+            for(int r = 1; r < lines.size(); r++){
+                List<String> row = rows.get(r - 1);
+                for(int c = 0; c < header.size(); c++){
+                    String value = row.get(c);
+                    if(value == null){
+                        missingValues = true;
+                        value = "";
+                    }
+                    assertEquals(splitCsv(lines.get(r)).get(c), value);
+                }
+            }
+        }
+        assertTrue(missingValues);
+
+        List<List<String>> rows = new ArrayList<List<String>>();
+        assertTrue(readArrow(new File(arrow, "EMPTY.arrow"), rows).isEmpty());
+        assertTrue(rows.isEmpty());
+    }
+
+    /**
+     * Read an Arrow file.
+     *
+     * @param rows Gets the rows of the file
+     * @return The column names
+     */
+    private static List<String> readArrow(File file, List<List<String>> rows) throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        try(BufferAllocator allocator = new RootAllocator();
+                FileChannel channel = FileChannel.open(file.toPath());
+                ArrowFileReader reader = new ArrowFileReader(channel, allocator)){
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            for(Field f : root.getSchema().getFields()) names.add(f.getName());
+
+            int batches = 0;
+            while(reader.loadNextBatch()){
+                batches++;
+                for(int r = 0; r < root.getRowCount(); r++){
+                    List<String> row = new ArrayList<String>();
+                    for(FieldVector v : root.getFieldVectors()){
+                        Object value = v.getObject(r);
+                        row.add(value == null ? null : value.toString());
+                    }
+                    rows.add(row);
+                }
+            }
+            if(!names.isEmpty()) assertTrue(batches > 1);
+        }
+        return names;
+    }
+
+    /**
+     * Split a csv line into its fields.
+     */
+    private static List<String> splitCsv(String line)
+    {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for(int i = 0; i < line.length(); i++){
+            char c = line.charAt(i);
+            if(quoted){
+                if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"'){
+                    field.append('"');
+                    i++;
+                }else if(c == '"'){
+                    quoted = false;
+                }else{
+                    field.append(c);
+                }
+            }else if(c == '"'){
+                quoted = true;
+            }else if(c == ','){
+                fields.add(field.toString());
+                field.setLength(0);
+            }else{
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,92 @@
+package com.bodastage.boda_ericssoncnaiparser.benchmark;
+
+import com.bodastage.boda_ericssoncnaiparser.BodaCNAIParser;
+import com.bodastage.boda_ericssoncnaiparser.CsvEscaper;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the regex based toCSVFormat used up to 2.3.0 with 
+ * {@link CsvEscaper}, on 1000 generated parameter values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvEscaperBenchmark {
+
+    @Param({"8", "64"})
+    int valueLength;
+
+    @Param({"0.25"})
+    double quotedShare;
+
+    @Param({"0.1"})
+    double commaShare;
+
+    String[] values;
+
+    final StringBuilder row = new StringBuilder(1024);
+
+    @Setup
+    public void setUp(){
+        values = new DumpGenerator().domains(1).records(10).parameters(100)
+                .valueLength(valueLength).quotedShare(quotedShare)
+                .commaShare(commaShare).values();
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh){
+        for(String value : values){
+            bh.consume(legacyToCSVFormat(value));
+        }
+    }
+
+    @Benchmark
+    public void escape(Blackhole bh){
+        for(String value : values){
+            bh.consume(CsvEscaper.escape(value));
+        }
+    }
+
+    @Benchmark
+    public void toCSVFormat(Blackhole bh){
+        for(String value : values){
+            bh.consume(BodaCNAIParser.toCSVFormat(value));
+        }
+    }
+
+    @Benchmark
+    public StringBuilder escapeIntoBuilder(){
+        row.setLength(0);
+        for(String value : values){
+            CsvEscaper.escape(value, row);
+        }
+        return row;
+    }
+
+    private static String legacyToCSVFormat(String s) {
+        s = s.replaceAll("^\"","").replaceAll("\"$","");
+        String csvValue = s;
+        if (s.contains(",")) {
+            csvValue = "\"" + s + "\"";
+        }
+        if (s.contains("\"")) {
+            csvValue = "\"" + s.replace("\"", "\"\"") + "\"";
+        }
+        return csvValue;
+    }
+}
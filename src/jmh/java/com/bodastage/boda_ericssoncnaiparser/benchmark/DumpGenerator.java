@@ -0,0 +1,205 @@
+package com.bodastage.boda_ericssoncnaiparser.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic CNAI dumps for the benchmarks.
+ *
+ * <pre>
+ * List&lt;String&gt; lines = new DumpGenerator()
+ *         .domains(5)
+ *         .records(1000)
+ *         .parameters(40)
+ *         .valueLength(12)
+ *         .quotedShare(0.2)
+ *         .commaShare(0.1)
+ *         .lines();
+ * </pre>
+ *
+ * The same settings always give the same dump.
+ */
+public final class DumpGenerator {
+
+    private int domains = 10;
+    private int records = 1000;
+    private int parameters = 40;
+    private int valueLength = 8;
+    private double quotedShare = 0.25;
+    private double commaShare = 0.1;
+
+    /**
+     * Number of domains.
+     */
+    public DumpGenerator domains(int domains){
+        this.domains = domains;
+        return this;
+    }
+
+    /**
+     * Number of network entities (sets) per domain.
+     */
+    public DumpGenerator records(int records){
+        this.records = records;
+        return this;
+    }
+
+    /**
+     * Number of parameters per network entity.
+     */
+    public DumpGenerator parameters(int parameters){
+        this.parameters = parameters;
+        return this;
+    }
+
+    /**
+     * Number of characters in a parameter value, without quotes.
+     */
+    public DumpGenerator valueLength(int valueLength){
+        this.valueLength = valueLength;
+        return this;
+    }
+
+    /**
+     * Share of the values in double quotes, from 0 to 1.
+     */
+    public DumpGenerator quotedShare(double quotedShare){
+        this.quotedShare = quotedShare;
+        return this;
+    }
+
+    /**
+     * Share of the values with a comma in them, from 0 to 1.
+     */
+    public DumpGenerator commaShare(double commaShare){
+        this.commaShare = commaShare;
+        return this;
+    }
+
+    /**
+     * The lines of a CNAI v2 dump.
+     *
+     * @return List of lines without line terminators
+     */
+    public List<String> lines(){
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<String>();
+        lines.add("..cnai v2");
+        lines.add("..capabilities CNAI_CAPABILITIES");
+        lines.add(".subnetwork ONRM_ROOT_MO_R");
+        lines.add(".utctime 2020-01-01 10:00");
+        for(int d = 0; d < domains; d++){
+            lines.add(".domain DOMAIN" + d);
+            for(int r = 0; r < records; r++){
+                String set = "BSC" + d + "_CELL" + r;
+                lines.add(".set " + set);
+                for(int p = 0; p < parameters; p++){
+                    lines.add("PARAMETER" + p + "=" + value(random));
+                }
+                lines.add(".set " + set + " PG");
+                lines.add(".set " + set);
+                lines.add("USERDATA=\"" + set + "\"");
+            }
+        }
+        lines.add("..end");
+        return lines;
+    }
+
+    /**
+     * The parameter values of the dump, in the order they appear in it.
+     *
+     * @return Array of values
+     */
+    public String[] values(){
+        Random random = new Random(42);
+        String[] values = new String[domains * records * parameters];
+        for(int i = 0; i < values.length; i++){
+            values[i] = value(random);
+        }
+        return values;
+    }
+
+    /**
+     * The lines of a tabular CNAI v1 dump: a header, a separator line and one
+     * row per network entity of each domain with its parameters separated by
+     * spaces.
+     *
+     * @return List of lines without line terminators
+     */
+    public List<String> version1Lines(){
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<String>();
+
+        StringBuilder header = new StringBuilder("CELL");
+        for(int p = 0; p < parameters; p++){
+            header.append(' ').append("PARAMETER").append(p);
+        }
+        lines.add(header.toString());
+        lines.add(header.toString().replaceAll("[^ ]", "-"));
+
+        StringBuilder row = new StringBuilder();
+        for(int r = 0; r < domains * records; r++){
+            row.setLength(0);
+            row.append("CELL").append(r);
+            for(int p = 0; p < parameters; p++){
+                row.append(' ').append(token(random, valueLength));
+            }
+            lines.add(row.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Write the lines of a dump to a file as UTF-8 with '\n' line endings.
+     *
+     * @param file
+     * @param lines
+     */
+    public static void write(Path file, List<String> lines) throws IOException{
+        try(BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            for(String line : lines){
+                w.write(line);
+                w.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Write a CNAI v2 dump file.
+     *
+     * @param file
+     * @param domains Number of domains
+     * @param records Number of network entities per domain
+     * @param parameters Number of parameters per network entity
+     */
+    public static void write(Path file, int domains, int records, int parameters) throws IOException{
+        write(file, new DumpGenerator().domains(domains).records(records)
+                .parameters(parameters).lines());
+    }
+
+    private String value(Random random){
+        String value = token(random, valueLength);
+        if(random.nextDouble() < commaShare){
+            int middle = value.length() / 2;
+            value = value.substring(0, middle) + "," + value.substring(middle);
+        }
+        if(random.nextDouble() < quotedShare){
+            value = "\"" + value + "\"";
+        }
+        return value;
+    }
+
+    private static String token(Random random, int length){
+        char[] chars = new char[Math.max(length, 1)];
+        for(int i = 0; i < chars.length; i++){
+            chars[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
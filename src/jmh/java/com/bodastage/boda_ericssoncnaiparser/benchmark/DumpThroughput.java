@@ -0,0 +1,32 @@
+package com.bodastage.boda_ericssoncnaiparser.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the dump lines and megabytes processed by a benchmark. In
+ * throughput mode JMH reports them as lines and megabytes per time unit next
+ * to the benchmark score.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class DumpThroughput {
+
+    public long lines;
+
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset(){
+        lines = 0;
+        megabytes = 0;
+    }
+
+    void add(long lineCount, long byteCount){
+        lines += lineCount;
+        megabytes += byteCount / (1024.0 * 1024.0);
+    }
+}
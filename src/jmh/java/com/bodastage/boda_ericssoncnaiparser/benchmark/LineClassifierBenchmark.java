@@ -0,0 +1,98 @@
+package com.bodastage.boda_ericssoncnaiparser.benchmark;
+
+import com.bodastage.boda_ericssoncnaiparser.LineClassifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the directive checks and parameter split done by processLine before
+ * 2.4.0 with {@link LineClassifier}.
+ *
+ * Run with -prof gc to see the allocation rate of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineClassifierBenchmark {
+
+    /**
+     * Number of parameter lines per network entity.
+     */
+    @Param({"10", "100"})
+    int parametersPerRecord;
+
+    String[] lines;
+
+    @Setup
+    public void setUp(){
+        List<String> dump = new ArrayList<String>();
+        dump.add("..cnai v2");
+        dump.add("..capabilities CAP_1");
+        dump.add(".subnetwork ONRM_ROOT_MO");
+        dump.add(".utctime 2020-01-01 10:00");
+        dump.add(".domain CELL");
+        for(int r = 0; r < 100; r++){
+            dump.add(".set CELL" + r);
+            for(int p = 0; p < parametersPerRecord; p++){
+                dump.add("PARAMETER" + p + "=" + (p % 3 == 0 ? "\"a, b\"" : "VALUE" + r));
+            }
+            dump.add(".set CELL" + r + " PG");
+            dump.add(".set CELL" + r);
+            dump.add("USERDATA=\"cell " + r + "\"");
+        }
+        dump.add("..end");
+        lines = dump.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh){
+        for(String line : lines){
+            if(line.contains("..cnai")){ bh.consume(line); continue; }
+            if(line.contains("..end")){ bh.consume(line); continue; }
+            if(line.contains(".set ")){ bh.consume(line.replace(".set ", "")); continue; }
+            if(line.contains(".domain")){ bh.consume(line.replace(".domain ", "")); continue; }
+            if(line.contains("..capabilities")){ bh.consume(line.replace("..capabilities ", "")); continue; }
+            if(line.contains(".subnetwork")){ bh.consume(line.replace(".subnetwork ", "")); continue; }
+            if(line.contains(".utctime")){ bh.consume(line.replace(".utctime ", "")); continue; }
+
+            String[] paramValuePair = line.split("=", 2);
+            if(paramValuePair.length != 2) continue;
+            bh.consume(paramValuePair[0]);
+            bh.consume(paramValuePair[1]);
+            bh.consume(line.startsWith("USERDATA="));
+        }
+    }
+
+    @Benchmark
+    public void classifier(Blackhole bh){
+        for(String line : lines){
+            int type = LineClassifier.classify(line);
+            if(type != LineClassifier.PARAMETER){
+                bh.consume(LineClassifier.directiveValue(line, type));
+                continue;
+            }
+
+            int separator = LineClassifier.separator(line);
+            if(separator < 0) continue;
+            bh.consume(line.substring(0, separator));
+            bh.consume(line.substring(separator + 1));
+            bh.consume(LineClassifier.isUserData(line, separator));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.bodastage.boda_ericssoncnaiparser.benchmark;
+
+import com.bodastage.boda_ericssoncnaiparser.CnaiParser;
+import com.bodastage.boda_ericssoncnaiparser.CnaiRecord;
+import com.bodastage.boda_ericssoncnaiparser.DomainWriters;
+import com.bodastage.boda_ericssoncnaiparser.ParseSession;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of ParseSession.processLine on lines held in memory, for
+ * strings and for byte arrays. The records collected are counted but not
+ * written, so only the line handling is measured.
+ *
+ * The lines and megabytes columns give the lines and megabytes processed per
+ * second. Run with -prof gc to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessLineBenchmark {
+
+    @Param({"10", "100"})
+    int parameters;
+
+    @Param({"8", "64"})
+    int valueLength;
+
+    @Param({"0.25"})
+    double quotedShare;
+
+    @Param({"0.1"})
+    double commaShare;
+
+    CnaiParser parser;
+    DomainWriters output;
+    String[] lines;
+    byte[][] lineBytes;
+    long bytes;
+
+    /**
+     * Number of records collected.
+     */
+    long records;
+
+    @Setup
+    public void setUp() throws IOException{
+        List<String> dumpLines = new DumpGenerator().domains(2).records(100)
+                .parameters(parameters).valueLength(valueLength)
+                .quotedShare(quotedShare).commaShare(commaShare).lines();
+        lines = dumpLines.toArray(new String[0]);
+        lineBytes = new byte[lines.length][];
+        for(int i = 0; i < lines.length; i++){
+            lineBytes[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+            bytes += lineBytes[i].length + 1;
+        }
+
+        String outputDirectory = Files.createTempDirectory("cnai-out").toString();
+        parser = CnaiParser.builder().outputDirectory(outputDirectory).build();
+        output = new DomainWriters(outputDirectory, null){
+            @Override
+            public void openDomain(String domain){
+            }
+
+            @Override
+            public void write(CnaiRecord record){
+                records++;
+            }
+        };
+    }
+
+    @Benchmark
+    public long processLine(DumpThroughput throughput){
+        ParseSession session = parser.newSession(output, "dump.txt");
+        for(String line : lines){
+            session.processLine(line);
+        }
+        throughput.add(lines.length, bytes);
+        return records;
+    }
+
+    @Benchmark
+    public long processLineBytes(DumpThroughput throughput){
+        ParseSession session = parser.newSession(output, "dump.txt");
+        for(byte[] line : lineBytes){
+            session.processLine(line, 0, line.length);
+        }
+        throughput.add(lineBytes.length, bytes);
+        return records;
+    }
+}
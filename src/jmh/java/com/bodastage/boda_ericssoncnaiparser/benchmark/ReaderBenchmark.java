@@ -0,0 +1,75 @@
+package com.bodastage.boda_ericssoncnaiparser.benchmark;
+
+import com.bodastage.boda_ericssoncnaiparser.LineClassifier;
+import com.bodastage.boda_ericssoncnaiparser.NioLineReader;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares reading a dump with BufferedReader and with {@link NioLineReader}.
+ *
+ * The benchmarks only find the lines and split the parameters. See
+ * {@link ParseBenchmark} for parsing to the domain csv files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReaderBenchmark {
+
+    Path dump;
+
+    @Setup
+    public void setUp() throws IOException{
+        dump = Files.createTempFile("cnai", ".txt");
+        DumpGenerator.write(dump, 10, 5000, 40);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException{
+        Files.delete(dump);
+    }
+
+    @Benchmark
+    public void readBuffered(Blackhole bh) throws IOException{
+        try(BufferedReader br = new BufferedReader(new FileReader(dump.toFile()))){
+            for(String line; (line = br.readLine()) != null; ){
+                if(LineClassifier.classify(line) != LineClassifier.PARAMETER) continue;
+                int separator = LineClassifier.separator(line);
+                bh.consume(line.substring(0, separator));
+                bh.consume(line.substring(separator + 1));
+            }
+        }
+    }
+
+    @Benchmark
+    public void readNio(final Blackhole bh) throws IOException{
+        try(NioLineReader reader = new NioLineReader(dump)){
+            reader.forEachLine(new NioLineReader.LineHandler(){
+                @Override
+                public void line(byte[] line, int offset, int length){
+                    if(LineClassifier.classify(line, offset, length) != LineClassifier.PARAMETER) return;
+                    bh.consume(LineClassifier.separator(line, offset, length));
+                }
+            });
+        }
+    }
+}
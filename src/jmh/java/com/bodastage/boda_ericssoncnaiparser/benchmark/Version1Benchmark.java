@@ -0,0 +1,81 @@
+package com.bodastage.boda_ericssoncnaiparser.benchmark;
+
+import com.bodastage.boda_ericssoncnaiparser.CnaiParser;
+import com.bodastage.boda_ericssoncnaiparser.DomainWriters;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of converting a tabular CNAI v1 dump file to csv with
+ * parseCNAIVersion1File.
+ *
+ * The lines and megabytes columns give the lines and megabytes converted per
+ * second. Run with -prof gc to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class Version1Benchmark {
+
+    @Param({"40"})
+    int parameters;
+
+    @Param({"8", "32"})
+    int valueLength;
+
+    CnaiParser parser;
+    Path dump;
+    Path outputDirectory;
+    long lines;
+    long bytes;
+
+    @Setup
+    public void setUp() throws IOException{
+        List<String> dumpLines = new DumpGenerator().domains(10).records(2000)
+                .parameters(parameters).valueLength(valueLength).version1Lines();
+        dump = Files.createTempFile("cnai", ".txt");
+        DumpGenerator.write(dump, dumpLines);
+        lines = dumpLines.size();
+        bytes = Files.size(dump);
+
+        outputDirectory = Files.createTempDirectory("cnai-out");
+        parser = CnaiParser.builder()
+                .outputDirectory(outputDirectory.toString())
+                .version1(true)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException{
+        Files.delete(dump);
+        for(File f : outputDirectory.toFile().listFiles()) f.delete();
+        Files.delete(outputDirectory);
+    }
+
+    @Benchmark
+    public void parseCNAIVersion1File(DumpThroughput throughput) throws IOException{
+        try(DomainWriters output = parser.newOutput(outputDirectory.toString())){
+            parser.newSession(output, "dump.txt").parseCNAIVersion1File(dump.toString());
+        }
+        throughput.add(lines, bytes);
+    }
+}
@@ -1,25 +1,10 @@
 package com.bodastage.boda_ericssoncnaiparser;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
-import java.util.ArrayDeque;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Deque;
-import java.util.GregorianCalendar;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Stack;
-import javax.xml.stream.XMLStreamException;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -61,63 +46,7 @@ public class BodaCNAIParser
      * 
      * Since 1.3.0
      */
-    final static String VERSION = "2.3.0";
-    
-    /**
-     * The CNAI dump file being parsed.
-     * 
-     * @since 1.0.0
-     */
-    static String filename;
-    
-    /**
-     * The capabilities value in the CNAI dump file.
-     * 
-     * @since 1.0.0
-     */
-    static String capabilities;
-    
-    /**
-     * The time and date the file was generated.
-     * 
-     * @since 1.0.0
-     */
-    static String creationDateTime;
-    
-    /**
-     * The subnetwork value.
-     * 
-     * @since 1.0.0
-     */
-    static String subnetwork;
-    
-    /**
-     * The entity identifier.
-     * 
-     * @since 1.0.1
-     */
-    static String set;
-
-    /**
-     * The previous set value
-     * 
-     * @since 1.0.1
-     */
-    static String prevSet;
-    
-    /**
-     * The domain value.
-     * 
-     */
-    static String domain;
-    
-    /**
-     * A list of all the parameters and their value collected for each network 
-     * entity under a domain.
-     * 
-     * @since 1.0.0
-     */
-    static Map<String, String> domainParameterList = new LinkedHashMap<String, String>();
+    final static String VERSION = "2.4.0";
     
     /**
      * Parser start time. 
@@ -125,110 +54,71 @@ public class BodaCNAIParser
      * @since 1.0.0
      */
     final static long startTime = System.currentTimeMillis();
-            
-    /**
-     * Output directory.
-     *
-     * @since 1.0.0
-     */
-    static String outputDirectory;
     
     /**
-     * CNAI Export file.
+     * Prints a line per file: "Parsing dump.txt...Done."
      * 
-     * @since 1.0.0
+     * @since 2.4.0
      */
-    static String cnaiExportFile;
-    
-    /**
-     * Domain print writers.
-     *
-     * @since 1.0.0
-     */
-    static Map<String, PrintWriter> domainPWMap 
-            = new LinkedHashMap<String, PrintWriter>();
+    static final ParseListener CONSOLE = new ParseListener(){
+        @Override
+        public void fileStarted(String fileName){
+            System.out.print("Parsing " + fileName + "...");
+        }
 
-    /**
-     * Mark which domain parameter headers have been added to the csv file.
-     * 
-     * @since 1.0.0
-     */
-    static Map<String, Boolean> domainHeaderAdded 
-            = new LinkedHashMap<String, Boolean>();
-    
-    static String dataSource;
-    static String fileName;
-    static int parserState = ParserStates.EXTRACTING_VALUES;
-    static String baseFileName;
-    static String dataFile;
-    static String parameterFile = null;
-    
-    /**
-     * The list of parameters to extract for each domain.
-     * 
-     * @since 1.0.0
-     */
-    static Map<String,Stack> domainColumnHeaders 
-            = new LinkedHashMap<String, Stack>();
-    
-    /**
-     * Extract managed objects and their parameters
-     */
-    private Boolean extractParametersOnly = false;
-    
-    /**
-     * Add meta fields to each MO. FILENAME, DATETIME
-     */
-    private Boolean extractMetaFields = false;
+        @Override
+        public void fileParsed(String fileName){
+            System.out.println("Done.");
+        }
+
+        @Override
+        public void fileUnchanged(String fileName){
+            System.out.println("Unchanged.");
+        }
+
+        @Override
+        public void fileSkipped(String fileName, Exception error){
+            System.out.println(error.getMessage());
+            System.out.println("Skipping file: " + fileName + "\n");
+        }
+
+        @Override
+        public void deltaStarted(String oldInput, String newInput){
+            System.out.print("Comparing " + getFileBasename(newInput)
+                    + " with " + getFileBasename(oldInput) + "...");
+        }
+
+        @Override
+        public void deltaFinished(DumpDelta delta){
+            System.out.println("Done. " + delta.getAdded() + " added, " + delta.getRemoved()
+                    + " removed, " + delta.getModified() + " modified"
+                    + (delta.getDuplicates() > 0 ? ", " + delta.getDuplicates() + " duplicates." : "."));
+        }
+    };
     
     /**
      * Is the file being parsed CNAI v1
      * 
      * @since 2.3.0
+     * @deprecated Use {@link CnaiParser.Builder#version1(boolean)}
      */
+    @Deprecated
     public static Boolean isVersion1 = false;
     
-    public void setIsVersion1( Boolean v1){
-        isVersion1 = v1;
-    }
-    
-    public void setExtractParametersOnly(Boolean bool){
-        extractParametersOnly = bool;
-    }
-    
-    public void setExtractMetaFields(Boolean bool){
-        extractMetaFields = bool;
-    }
-    
-    public void setParameterFile(String filename){
-        parameterFile = filename;
-    }
-    
-    public static void setFileName( String fileName ){
-        //this.fileName = fileName;
-    }
-    
     /**
-     * Set the output directory.
-     *
-     * @since 1.0.0
-     * @version 1.0.0
-     * @param directoryName
+     * Settings of the deprecated static API.
      */
-    public void setOutputDirectory(String directoryName) {
-        this.outputDirectory = directoryName;
-    }
+    private static String legacyOutputDirectory;
+    private static String legacyDataSource;
+    private static String legacyParameterFile;
+    private static boolean legacyExtractParametersOnly = false;
+    private static boolean legacyExtractMetaFields = false;
     
     /**
-     * Set name of file to parser.
-     *
-     * @since 1.0.1
-     * @version 1.0.0
-     * @param dataSource
+     * Output and session of the lines given to the deprecated processLine.
      */
-    public void setDataSource(String dataSource) {
-        this.dataSource = dataSource;
-    }
+    private static DomainWriters legacyOutput;
+    private static ParseSession legacySession;
     
     public static void main( String[] args )
     {
@@ -243,6 +133,26 @@ public class BodaCNAIParser
        Boolean showVersion = false;
        Boolean attachMetaFields = false; //Attach mattachMetaFields FILENAME,DATETIME,NE_TECHNOLOGY,NE_VENDOR,NE_VERSION,NE_TYPE
        Boolean fileIsVersion1  = false;
+       int threads = 1;
+       Boolean nioReader = false;
+       Boolean pipelined = false;
+       Boolean splitFiles = false;
+       int writeBufferSize = DomainWriters.DEFAULT_BUFFER_SIZE;
+       OutputCompression compressOutput = OutputCompression.NONE;
+       Boolean backgroundCompression = false;
+       OutputFormat outputFormat = OutputFormat.CSV;
+       Boolean unionColumns = false;
+       String cacheDirectory = null;
+       String deltaFrom = null;
+       long deltaMemory = 0;
+       long progressInterval = 0;
+       String reportFile = null;
+       long malformedLineLimit = MalformedLines.UNLIMITED;
+       String errorsFile = null;
+       Boolean recursive = false;
+       String[] includes = new String[0];
+       String[] excludes = new String[0];
+       Boolean dryRun = false;
        try{ 
             options.addOption( "p", "extract-parameters", false, "extract only the managed objects and parameters" );
             options.addOption( "v", "version", false, "display version" );
@@ -262,6 +172,96 @@ public class BodaCNAIParser
                     .desc( "parameter configuration file")
                     .hasArg()
                     .argName( "PARAMETER_CONFIG" ).build() );
+            options.addOption(Option.builder("t")
+                    .longOpt( "threads" )
+                    .desc( "number of files to parse in parallel")
+                    .hasArg()
+                    .argName( "THREADS" ).build() );
+            options.addOption( "n", "nio", false, "read input files with the NIO byte reader" );
+            options.addOption(Option.builder()
+                    .longOpt( "pipeline" )
+                    .desc( "read, parse and write each file on separate threads")
+                    .build() );
+            options.addOption(Option.builder()
+                    .longOpt( "split-files" )
+                    .desc( "split large files into parts parsed by the threads")
+                    .build() );
+            options.addOption(Option.builder()
+                    .longOpt( "write-buffer" )
+                    .desc( "write buffer size of each csv file e.g. 64K, 1M")
+                    .hasArg()
+                    .argName( "SIZE" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "compress-output" )
+                    .desc( "compress the csv files: gzip or deflate")
+                    .hasArg()
+                    .argName( "FORMAT" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "background-compression" )
+                    .desc( "compress the csv files on a separate thread")
+                    .build() );
+            options.addOption(Option.builder()
+                    .longOpt( "output-format" )
+                    .desc( "format of the domain files: csv or arrow")
+                    .hasArg()
+                    .argName( "FORMAT" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "union-columns" )
+                    .desc( "add a column for every parameter found in a domain")
+                    .build() );
+            options.addOption(Option.builder()
+                    .longOpt( "cache-directory" )
+                    .desc( "only parse the files changed since the last run, reusing the output of the others kept in this directory")
+                    .hasArg()
+                    .argName( "CACHE_DIRECTORY" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "delta-from" )
+                    .desc( "write the entities added, removed or modified since this earlier dump file or directory")
+                    .hasArg()
+                    .argName( "OLD_INPUT" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "delta-memory" )
+                    .desc( "memory for the earlier dump's entities e.g. 512M, beyond which they are partitioned on disk")
+                    .hasArg()
+                    .argName( "SIZE" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "progress" )
+                    .desc( "print the progress of the files being parsed to the standard error every SECONDS")
+                    .hasArg()
+                    .argName( "SECONDS" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "report" )
+                    .desc( "write a JSON report of the counts, timings and throughput of the run")
+                    .hasArg()
+                    .argName( "REPORT_FILE" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "malformed-lines" )
+                    .desc( "what to do with malformed lines: skip, fail, or the number of them to stop after. Defaults to skip")
+                    .hasArg()
+                    .argName( "POLICY" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "errors-file" )
+                    .desc( "write the first " + MalformedLines.DEFAULT_SAMPLE_SIZE + " malformed lines with their file and line number to this csv file")
+                    .hasArg()
+                    .argName( "ERRORS_FILE" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "recursive" )
+                    .desc( "also parse the files in the subdirectories of the input directory")
+                    .build() );
+            options.addOption(Option.builder()
+                    .longOpt( "include" )
+                    .desc( "only parse the files matching this glob e.g. *.txt. Can be repeated")
+                    .hasArg()
+                    .argName( "GLOB" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "exclude" )
+                    .desc( "leave out the files and directories matching this glob. Can be repeated")
+                    .hasArg()
+                    .argName( "GLOB" ).build() );
+            options.addOption(Option.builder()
+                    .longOpt( "dry-run" )
+                    .desc( "list the files that would be parsed without parsing them")
+                    .build() );
             options.addOption( "h", "help", false, "show help" );
             
             options.addOption( "v1", "version1", false, "process cnai version 1" );
@@ -298,14 +298,95 @@ public class BodaCNAIParser
                 onlyExtractParameters  = true;
             }
             
+            if(cmd.hasOption('n')){
+                nioReader = true;
+            }
+            
+            if(cmd.hasOption("pipeline")){
+                pipelined = true;
+            }
+            
+            if(cmd.hasOption("split-files")){
+                splitFiles = true;
+            }
+            
+            if(cmd.hasOption("write-buffer")){
+                writeBufferSize = parseBufferSize("write-buffer", cmd.getOptionValue("write-buffer"));
+            }
+            
+            if(cmd.hasOption("compress-output")){
+                compressOutput = OutputCompression.fromName(cmd.getOptionValue("compress-output"));
+            }
+            
+            if(cmd.hasOption("background-compression")){
+                backgroundCompression = true;
+            }
+            
+            if(cmd.hasOption("output-format")){
+                outputFormat = OutputFormat.fromName(cmd.getOptionValue("output-format"));
+            }
+            
+            if(cmd.hasOption("union-columns")){
+                unionColumns = true;
+            }
+            
+            if(cmd.hasOption("cache-directory")){
+                cacheDirectory = cmd.getOptionValue("cache-directory");
+            }
+            
+            if(cmd.hasOption("delta-from")){
+                deltaFrom = cmd.getOptionValue("delta-from");
+            }
+            
+            if(cmd.hasOption("delta-memory")){
+                deltaMemory = parseSize("delta-memory", cmd.getOptionValue("delta-memory"));
+            }
+            
+            if(cmd.hasOption("progress")){
+                progressInterval = parseCount("progress", cmd.getOptionValue("progress"));
+            }
+            
+            if(cmd.hasOption("report")){
+                reportFile = cmd.getOptionValue("report");
+            }
+            
+            if(cmd.hasOption("malformed-lines")){
+                malformedLineLimit = MalformedLines.limit(cmd.getOptionValue("malformed-lines"));
+            }
+            
+            if(cmd.hasOption("errors-file")){
+                errorsFile = cmd.getOptionValue("errors-file");
+            }
+            
+            if(cmd.hasOption("recursive")){
+                recursive = true;
+            }
+            
+            if(cmd.hasOption("include")){
+                includes = cmd.getOptionValues("include");
+            }
+            
+            if(cmd.hasOption("exclude")){
+                excludes = cmd.getOptionValues("exclude");
+            }
+            
+            if(cmd.hasOption("dry-run")){
+                dryRun = true;
+            }
+            
+            if(cmd.hasOption('t')){
+                threads = (int) Math.min(Integer.MAX_VALUE, parseCount("threads", cmd.getOptionValue("t")));
+            }
+            
             if(cmd.hasOption('m')){
                 attachMetaFields  = true;
             }
             
-       }catch(IllegalArgumentException e){
-           
-       } catch (ParseException ex) {
-//            java.util.logging.Logger.getLogger(HuaweiCMObjectParser.class.getName()).log(Level.SEVERE, null, ex);
+       }catch(IllegalArgumentException | ParseException e){
+           //An unknown option or an invalid value
+           System.err.println("ERROR: " + e.getMessage());
+           printHelp(options);
+           System.exit(1);
         }
        
        
@@ -320,17 +401,8 @@ public class BodaCNAIParser
             //show help
             if( showHelpMessage == true || 
                 inputFile == null || 
-                ( outputDirectory == null && onlyExtractParameters == false) ){
-                     HelpFormatter formatter = new HelpFormatter();
-                     String header = "Parses Ericsson CNAIv2 configuration data file to csv\n\n";
-                     String footer = "\n";
-                     footer += "Examples: \n";
-                     footer += "java -jar boda-ericssoncnaiparser.jar -i cnaiv2_dump.xml -o out_folder\n";
-                     footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -o out_folder\n";
-                     footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -p\n";
-                     footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -p -m\n";
-                     footer += "\nCopyright (c) 2020 Bodastage Solutions(http://www.bodastage.com)";
-                     formatter.printHelp( "java -jar boda-ericssoncnaiparser.jar", header, options, footer );
+                ( outputDirectory == null && onlyExtractParameters == false && dryRun == false) ){
+                     printHelp(options);
                      System.exit(0);
             }
         
@@ -352,39 +424,70 @@ public class BodaCNAIParser
             
 
             //Get parser instance
-            BodaCNAIParser cmParser = new BodaCNAIParser();
-
+            CnaiParser.Builder builder = CnaiParser.builder();
+            if(deltaMemory > 0) builder.deltaMemory(deltaMemory);
 
-            if(onlyExtractParameters){
-                cmParser.setExtractParametersOnly(true);
+            ParseMetrics metrics = null;
+            if(progressInterval > 0 || reportFile != null){
+                metrics = new ParseMetrics();
+                builder.metrics(metrics);
             }
+
+            MalformedLines malformedLines = new MalformedLines(
+                    malformedLineLimit, MalformedLines.DEFAULT_SAMPLE_SIZE,
+                    errorsFile != null ? Paths.get(errorsFile) : null);
+            builder.malformedLines(malformedLines);
+
+            for(String glob : includes) builder.include(glob);
+            for(String glob : excludes) builder.exclude(glob);
+
+            CnaiParser cmParser = builder
+                    .outputDirectory(outputDirectory)
+                    .parameterFile(parameterConfigFile)
+                    .version1(fileIsVersion1)
+                    .threads(threads)
+                    .nioReader(nioReader)
+                    .pipelined(pipelined)
+                    .splitFiles(splitFiles)
+                    .writeBufferSize(writeBufferSize)
+                    .outputCompression(compressOutput)
+                    .backgroundCompression(backgroundCompression)
+                    .outputFormat(outputFormat)
+                    .unionColumns(unionColumns)
+                    .cacheDirectory(cacheDirectory)
+                    .deltaFrom(deltaFrom)
+                    .extractParametersOnly(onlyExtractParameters)
+                    .extractMetaFields(attachMetaFields)
+                    .recursive(recursive)
+                    .listener(CONSOLE)
+                    .build();
             
-            if(attachMetaFields){
-                cmParser.setExtractMetaFields(true);
+            if(dryRun){
+                cmParser.dryRun(inputFile, System.out);
+                System.exit(0);
             }
             
-            if(fileIsVersion1){
-                cmParser.setIsVersion1(fileIsVersion1);
+            if(progressInterval > 0) metrics.startProgress(System.err, progressInterval);
+            try{
+                cmParser.parse(inputFile);
+            }finally{
+                if(metrics != null) metrics.stopProgress();
+                malformedLines.close();
             }
             
-            if(  parameterConfigFile != null ){
-                File f = new File(parameterConfigFile);
-                if(f.isFile()){
-                    cmParser.setParameterFile(parameterConfigFile);
-                    cmParser.getParametersToExtract(parameterConfigFile);
-                    cmParser.parserState = ParserStates.EXTRACTING_VALUES;
+            //The parameter configuration alone goes to the standard output
+            if(onlyExtractParameters == false || outputDirectory != null){
+                printExecutionTime();
+                if(malformedLines.getCount() > 0){
+                    System.out.println("Skipped " + malformedLines.getCount() + " malformed lines"
+                            + (errorsFile != null ? ", see " + errorsFile : ""));
                 }
             }
             
-            cmParser.cnaiExportFile = cmParser.getFileBasename(filename); 
-            
-            cmParser.setDataSource(inputFile);
-            if(outputDirectory != null ) cmParser.setOutputDirectory(outputDirectory);
-            
-            cmParser.processFileOrDirectory(inputFile);
-            
-            cmParser.printExecutionTime();
-            cmParser.closeDomainPWMap();
+            if(metrics != null){
+                System.out.println("Parsed " + metrics.summary());
+                if(reportFile != null) metrics.writeReport(Paths.get(reportFile));
+            }
         }catch(Exception e){
             System.out.println(e.getMessage());
             System.exit(1);
@@ -392,340 +495,214 @@ public class BodaCNAIParser
 
 
     }
-    
+
     /**
-     * Extract parameter list from  parameter file
-     * 
-     * @param filename 
+     * Print the usage of the options and examples.
+     *
+     * @since 2.4.0
      */
-    public static void getParametersToExtract(String filename) throws FileNotFoundException, IOException{
-        BufferedReader br = new BufferedReader(new FileReader(filename));
-        for(String line; (line = br.readLine()) != null; ) {
-           String [] moAndParameters =  line.split(":");
-           String mo = moAndParameters[0];
-           String [] parameters = moAndParameters[1].split(",");
-           
-           Stack parameterStack = new Stack();
-           for(int i =0; i < parameters.length; i++){
-               parameterStack.push(parameters[i]);
-           }
-            domainColumnHeaders.put(mo, parameterStack);
-            //domainHeaderAdded.put(mo, Boolean.TRUE);
-        }
-        
-        parserState = ParserStates.EXTRACTING_VALUES;
+    static void printHelp(Options options){
+        HelpFormatter formatter = new HelpFormatter();
+        String header = "Parses Ericsson CNAIv2 configuration data file to csv\n\n";
+        String footer = "\n";
+        footer += "Examples: \n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i cnaiv2_dump.xml -o out_folder\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -o out_folder\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -o out_folder -t 4\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i cnaiv2_dump.txt -o out_folder -t 8 --split-files\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -o out_folder --compress-output gzip\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -o out_folder --output-format arrow\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -o out_folder --union-columns\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -o out_folder --cache-directory cache_folder\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i today_folder -o delta_folder --delta-from yesterday_folder\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -o out_folder --progress 30 --report run.json\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -o out_folder --malformed-lines 100 --errors-file errors.csv\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -o out_folder --recursive --include '*.txt' --exclude archive\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder --recursive --dry-run\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -p\n";
+        footer += "java -jar boda-ericssoncnaiparser.jar -i input_folder -p -m\n";
+        footer += "\nCopyright (c) 2020 Bodastage Solutions(http://www.bodastage.com)";
+        formatter.printHelp( "java -jar boda-ericssoncnaiparser.jar", header, options, footer );
     }
-    
-    public static void parse(String inputFilename) throws FileNotFoundException, IOException{
-        BufferedReader br = new BufferedReader(new FileReader(inputFilename));
-        
-        //Parse CNAIV1
-        if(isVersion1){
-            parseCNAIVersion1File(inputFilename);
-            return;
-        }
 
-        for(String line; (line = br.readLine()) != null; ) {
-            processLine(line);
-        }
+    /**
+     * The parser configured through the deprecated setters.
+     */
+    private static CnaiParser legacyParser() throws IOException{
+        return legacyParser(Boolean.TRUE.equals(isVersion1));
     }
-    
-    public static void parseCNAIVersion1File(String inputFilename) throws FileNotFoundException, IOException{
-        BufferedReader br = new BufferedReader(new FileReader(inputFilename));
-        Integer lineCnt = 0;
-        String outFile = outputDirectory + File.separatorChar + getFileBasename(inputFilename) + ".csv";
-        
-        domainPWMap.put(inputFilename, new PrintWriter(new File(outFile)));
-        PrintWriter pw = domainPWMap.get(inputFilename);
-        for(String line; (line = br.readLine()) != null; ) {
-            lineCnt++;
-            
-            //skip 2nd line
-            if(lineCnt != 2) {
-                  pw.println(line.replaceAll("\\s", ","));
-            }
 
-        }
+    private static CnaiParser legacyParser(boolean version1) throws IOException{
+        return CnaiParser.builder()
+                .outputDirectory(legacyOutputDirectory)
+                .parameterFile(legacyParameterFile)
+                .version1(version1)
+                .extractParametersOnly(legacyExtractParametersOnly)
+                .extractMetaFields(legacyExtractMetaFields)
+                .listener(CONSOLE)
+                .build();
     }
-    
+
+    /**
+     * Set the output directory.
+     *
+     * @since 1.0.0
+     * @deprecated Use {@link CnaiParser.Builder#outputDirectory(String)}
+     * @param directoryName
+     */
+    @Deprecated
+    public void setOutputDirectory(String directoryName) {
+        legacyOutputDirectory = directoryName;
+    }
+
+    /**
+     * Set name of file to parser.
+     *
+     * @since 1.0.1
+     * @deprecated Pass the file to {@link CnaiParser#parse(String)}
+     * @param dataSource
+     */
+    @Deprecated
+    public void setDataSource(String dataSource) {
+        legacyDataSource = dataSource;
+    }
+
+    /**
+     * @deprecated Use {@link CnaiParser.Builder#parameterFile(String)}
+     */
+    @Deprecated
+    public void setParameterFile(String filename){
+        legacyParameterFile = filename;
+    }
+
+    /**
+     * @deprecated Use {@link CnaiParser.Builder#version1(boolean)}
+     */
+    @Deprecated
+    public void setIsVersion1( Boolean v1){
+        isVersion1 = v1;
+    }
+
+    /**
+     * Does nothing, as up to 2.3.
+     *
+     * @deprecated The file name is given to {@link CnaiParser#parse(String)}
+     */
+    @Deprecated
+    public static void setFileName( String fileName ){
+    }
+
+    /**
+     * @deprecated Use {@link CnaiParser.Builder#extractParametersOnly(boolean)}
+     */
+    @Deprecated
+    public void setExtractParametersOnly(Boolean bool){
+        legacyExtractParametersOnly = bool;
+    }
+
+    /**
+     * @deprecated Use {@link CnaiParser.Builder#extractMetaFields(boolean)}
+     */
+    @Deprecated
+    public void setExtractMetaFields(Boolean bool){
+        legacyExtractMetaFields = bool;
+    }
+
+    /**
+     * Parse the data source, or the given file or directory if none was
+     * set, with the settings of the deprecated setters.
+     *
+     * @since 1.0.0
+     * @deprecated Use {@link CnaiParser#parse(String)}
+     */
+    @Deprecated
     public static void processFileOrDirectory(String inputPath)
             throws FileNotFoundException, IOException {
-        //this.dataFILe;
-        Path file = Paths.get(dataSource);
-        boolean isRegularExecutableFile = Files.isRegularFile(file)
-                & Files.isReadable(file);
-
-        boolean isReadableDirectory = Files.isDirectory(file)
-                & Files.isReadable(file);
-
-        if (isRegularExecutableFile) {
-            setFileName(dataSource);
-            dataFile = dataSource;
-            baseFileName =  getFileBasename(dataFile);
-            cnaiExportFile = baseFileName;
-            if( parserState == ParserStates.EXTRACTING_PARAMETERS){
-                System.out.print("Extracting parameters from " + baseFileName + "...");
-            }else{
-                System.out.print("Parsing " + baseFileName + "...");
-            }
-            parse(dataSource);
-            if( parserState == ParserStates.EXTRACTING_PARAMETERS){
-                 System.out.println("Done.");
-            }else{
-                System.out.println("Done.");
-               //System.out.println(this.baseFileName + " successfully parsed.\n");
-            }
-        }
+        legacyParser().parse(legacyDataSource != null ? legacyDataSource : inputPath);
+    }
 
-        if (isReadableDirectory) {
-
-            File directory = new File(dataSource);
-
-            //get all the files from a directory
-            File[] fList = directory.listFiles();
-
-            for (File f : fList) {
-                setFileName(f.getAbsolutePath());
-                dataFile = f.getAbsolutePath();
-                try {
-                    baseFileName =  getFileBasename(f.getAbsolutePath());
-                    cnaiExportFile = baseFileName;
-                    if( parserState == ParserStates.EXTRACTING_PARAMETERS){
-                        System.out.print("Extracting parameters from " + baseFileName + "...");
-                    }else{
-                        System.out.print("Parsing " + baseFileName + "...");
-                    }
-                    
-                    //Parse
-                    parse(f.getAbsolutePath());
-                    if( parserState == ParserStates.EXTRACTING_PARAMETERS){
-                         System.out.println("Done.");
-                    }else{
-                        System.out.println("Done.");
-                        //System.out.println(this.baseFileName + " successfully parsed.\n");
-                    }
-                   
-                } catch (Exception e) {
-                    System.out.println(e.getMessage());
-                    System.out.println("Skipping file: " + baseFileName + "\n");
-                }
-            }
-        }
+    /**
+     * Extract parameter list from  parameter file. The parameters are
+     * extracted by the next runs of the deprecated static API.
+     * 
+     * @param filename 
+     * @since 1.0.0
+     * @deprecated Use {@link CnaiParser.Builder#parameterFile(String)}
+     */
+    @Deprecated
+    public static void getParametersToExtract(String filename) throws FileNotFoundException, IOException{
+        CnaiParser.getParametersToExtract(filename);
+        legacyParameterFile = filename;
+    }
 
+    /**
+     * Parse a file into the output directory set with setOutputDirectory.
+     * 
+     * @param inputFilename
+     * @since 1.0.0
+     * @deprecated Use {@link CnaiParser#parse(String)}
+     */
+    @Deprecated
+    public static void parse(String inputFilename) throws FileNotFoundException, IOException{
+        legacyParser().parse(inputFilename);
     }
-    
+
     /**
-     * Holds the parser logic.
+     * Convert a CNAI v1 file to a csv file in the output directory set with
+     * setOutputDirectory.
      * 
+     * @param inputFilename
+     * @since 2.3.0
+     * @deprecated Use {@link CnaiParser#parse(String)}, which recognizes CNAI
+     * v1 files
+     */
+    @Deprecated
+    public static void parseCNAIVersion1File(String inputFilename) throws FileNotFoundException, IOException{
+        legacyParser(true).parse(inputFilename);
+    }
+
+    /**
+     * Parse a line into the output directory set with setOutputDirectory.
+     * The domain csv files stay open until closeDomainPWMap is called.
+     *
      * @param line  String
      * @since 1.0.0
-     * @version 1.0.0
+     * @deprecated Use {@link ParseSession#processLine(String)}
      */
+    @Deprecated
     static public void processLine(String line){
-        //Handle first line
-        if(line.contains("..cnai")){
-            return;
-        }
-        
-        if(line.contains("..end")){
-            return;
-        }        
-        
-        //If a ".set " is encounted, 
-        if(line.contains(".set ")){            
-            prevSet = set;
-            set = line.replace(".set ", "");
-            return;
-        }
-        
-        //Get domain
-        if(line.contains(".domain")){
-            
-            //Get domain name
-            domain = line.replace(".domain ", "");
-            
-            //Skip the rest if the domain print writer has already been added.
-            if( domainPWMap.containsKey(domain) ){
-                return;
-            }
-        
-            //Create domain print writerr
-            String domainFile = outputDirectory + File.separatorChar + domain + ".csv";
-            try {
-                if( parameterFile == null || (parameterFile != null && domainColumnHeaders.containsKey(domain))){
-                    domainPWMap.put(domain, new PrintWriter(new File(domainFile)));
-                }
-                
-            } catch (FileNotFoundException e) {
-                //@TODO: Add logger
-                System.err.println(e.getMessage());
-                System.exit(1);
-            }
-            
-            //Mark domain header as not yet added
-            if(!domainHeaderAdded.containsKey(domain)){
-                domainHeaderAdded.put(domain, false);
+        try{
+            if(legacySession == null){
+                CnaiParser parser = legacyParser();
+                legacyOutput = parser.newOutput(legacyOutputDirectory);
+                legacySession = parser.newSession(legacyOutput,
+                        legacyDataSource != null ? getFileBasename(legacyDataSource) : "");
             }
-            return;
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
         }
-        
-        //Get capabilities
-        if(line.contains("..capabilities")){
-            capabilities = line.replace("..capabilities ", "");       
-            return;
-        }
-
-        //Get subnetwork
-        if(line.contains(".subnetwork")){
-            subnetwork = line.replace(".subnetwork ", "");            
-            return;
-        }
-
-        //Get generation date and time
-        if(line.contains(".utctime")){
-            creationDateTime = line.replace(".utctime ", "");            
-            return;
-        }
-        
-        //Start collecting parameters and their values
-        String[] paramValuePair = line.split("=",2);
-
-        if ( paramValuePair.length != 2 ){
-            System.out.println("line:" + line );
-            return;
-        }
-
-        
-        //Get parameter value
-        domainParameterList.put(paramValuePair[0], paramValuePair[1]);
-        
-        //USERDATA make end of section
-        if(line.startsWith("USERDATA=")){
-            
-            //Write parameter s from previous network entity to domain csv file.
-            if( domainParameterList.size() > 1 ){
-                
-                //Skip if domain is not in the parameter file
-                if(parameterFile != null && !domainColumnHeaders.containsKey(domain) ){
-                    domainParameterList.clear();
-                    return;
-                }
-                
-                String paramNames = "FILENAME";
-                String paramValues = cnaiExportFile;
-
-                //add utctime
-                //@TODO: Add mapping from configuration file
-                //for now call this varDateTime
-                paramNames = paramNames +",DATETIME";
-                paramValues = paramValues + "," + creationDateTime;    
-                
-                
-                //add capabilities
-                //When parameter file is present, only add if in parameter list
-                if( parameterFile == null || 
-                        ( parameterFile != null && domainColumnHeaders.get(domain).contains("capabilities"))){
-                    paramNames = paramNames +",capabilities";
-                    paramValues = paramValues + "," + capabilities;                      
-                }
-
-                //When parameter file is present, only add if in parameter list
-                //add Subnetwork
-                if( parameterFile == null || 
-                        ( parameterFile != null && domainColumnHeaders.get(domain).contains("subnetwork"))){
-                    paramNames = paramNames +",subnetwork";
-                    paramValues = paramValues + "," + subnetwork;                                
-                }
-                
-                
-                //add domain
-                if( parameterFile == null || 
-                        ( parameterFile != null && domainColumnHeaders.get(domain).contains("domain"))){
-                    paramNames = paramNames +",domain";
-                    paramValues = paramValues + "," + domain;  
-                }
-                
-                //add set
-                if( parameterFile == null || 
-                        ( parameterFile != null && domainColumnHeaders.get(domain).contains("set"))){
-                    paramNames = paramNames +",set";
-                    paramValues = paramValues + "," + prevSet;  
-                }
-                
-                if(domainHeaderAdded.get(domain)== true || parameterFile != null){
-                    Stack<String> dk = domainColumnHeaders.get(domain);
-                    for(int i=0; i < dk.size(); i++ ){
-                        String pName = dk.get(i).toString();
-                        String pValue = "";
-                        
-                        if(pName.equals("set") || pName.equals("domain") || 
-                            pName.equals("subnetwork") || pName.equals("capabilities") ) continue;
-                        
-                        if(domainParameterList.containsKey(pName) ){
-                            pValue= toCSVFormat(domainParameterList.get(pName));
-                        }
-                        
-                        
-                        paramNames = paramNames + "," + pName;
-                        paramValues = paramValues + "," + pValue;                           
-                    }
-                }else {
-
-                    Iterator <Map.Entry<String,String>> iter 
-                            = domainParameterList.entrySet().iterator();
-                    while (iter.hasNext()) {
-                        Map.Entry<String, String> dp = iter.next();
-
-                        String pValue = toCSVFormat(dp.getValue());
-                        String pName = dp.getKey();
-                        
-                        paramNames = paramNames + "," + pName;
-                        paramValues = paramValues + "," + pValue;
-                    }
-                }
-                
-                PrintWriter pw = domainPWMap.get(domain);
-                
-                //Add domain csv file headers
-                //If there is no parameter file added
-                if(domainHeaderAdded.get(domain)== false ){
-                    
-                    //Add the file headers
-                    pw.println(paramNames);   
-                    
-                    //Add parameters under the domain to a map for use as a csv 
-                    //header
-                    String [] paramArr = paramNames.split(",");
-                    Stack paramStack = new Stack();
-                    
-                    //Collect after FileName,capabilities,utctime,subnetwork,domain
-                    for(int i=5; i<paramArr.length;i++){
-                        paramStack.push(paramArr[i]);
-                    }
-                    
-                    if(parameterFile == null){
-                        domainColumnHeaders.put(domain,paramStack);
-                    }
-                    
-                    
-                    
-                    //Mark the headers as added
-                    domainHeaderAdded.put(domain,true);
-                    
-                }
-               
-                //Add the parameter values
-                pw.println(paramValues);   
-                
-                //clear the domainParameterList 
-                domainParameterList.clear();
+        legacySession.processLine(line);
+    }
 
-            }
-            
-            return;
+    /**
+     * Close the domain csv files written by processLine.
+     *
+     * @since 1.0.0
+     * @deprecated The files are closed by {@link CnaiParser#parse(String)}
+     */
+    @Deprecated
+    public static void closeDomainPWMap() {
+        if(legacyOutput == null) return;
+        try{
+            legacyOutput.close();
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }finally{
+            legacyOutput = null;
+            legacySession = null;
         }
-        
     }
+
     /**
      * Show parser help.
      * 
@@ -767,14 +744,13 @@ public class BodaCNAIParser
         if(runningTime > 1000){
             int secs = (int) Math.floor(runningTime/(1000));
             s = s + secs + " seconds ";
-            runningTime = runningTime - (secs/1000);
+            runningTime = runningTime - (secs*1000);
         }
         
         //Get milliseconds
         if(runningTime > 0 ){
-            int msecs = (int) Math.floor(runningTime/(1000));
+            int msecs = (int) runningTime;
             s = s + msecs + " milliseconds ";
-            runningTime = runningTime - (msecs/1000);
         }
 
         System.out.println(s);
@@ -788,42 +764,75 @@ public class BodaCNAIParser
      * @return String Formated version of input string
      */
     public static String toCSVFormat(String s) {
-        //First remove leading and trailing double quotes if any
-        //s = s.replaceAll("^\"","");
-        //s = s.replaceAll("\"$","");
-        
-        //s = s.replaceAll("^\"|\"$", "");
-        
-        s = s.replaceAll("^\"","").replaceAll("\"$","");
-        
-        String csvValue = s;
-        
-        //Check if value contains comma
-        if (s.contains(",")) {
-            csvValue = "\"" + s + "\"";
+        return CsvEscaper.escape(s);
+    }
+    
+    /**
+     * Parse a size such as 512, 64K, 1M or 1G.
+     *
+     * @since 2.4.0
+     * @param option Option the size was given to
+     * @param size
+     * @return long
+     * @throws IllegalArgumentException if the size is not valid
+     */
+    static long parseSize(String option, String size){
+        String s = size.trim().toUpperCase();
+        long multiplier = 1;
+        if(s.endsWith("K")){
+            multiplier = 1 << 10;
+        }else if(s.endsWith("M")){
+            multiplier = 1 << 20;
+        }else if(s.endsWith("G")){
+            multiplier = 1 << 30;
         }
-
-        if (s.contains("\"")) {
-            csvValue = "\"" + s.replace("\"", "\"\"") + "\"";
+        if(multiplier > 1) s = s.substring(0, s.length() - 1);
+        try{
+            long n = Math.multiplyExact(Long.parseLong(s), multiplier);
+            if(n > 0) return n;
+        }catch(NumberFormatException | ArithmeticException e){
+            //Reported below
         }
-
-        return csvValue;
+        throw new IllegalArgumentException("Invalid --" + option + " size: " + size
+                + ". Use a number of bytes, K, M or G e.g. 64K.");
     }
     
     /**
-     * Close file print writers.
+     * Parse the size of a buffer, which must fit an int.
      *
-     * @since 1.0.0
-     * @version 1.0.0
+     * @since 2.4.0
+     * @param option Option the size was given to
+     * @param size
+     * @return int
+     * @throws IllegalArgumentException if the size is not valid
      */
-    public static void closeDomainPWMap() {
-        Iterator<Map.Entry<String, PrintWriter>> iter
-                = domainPWMap.entrySet().iterator();
-        while (iter.hasNext()) {
-            iter.next().getValue().close();
+    static int parseBufferSize(String option, String size){
+        long n = parseSize(option, size);
+        if(n > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Invalid --" + option + " size: " + size
+                    + ". The largest buffer is 2047M.");
         }
-        domainPWMap.clear();
-        
+        return (int) n;
+    }
+
+    /**
+     * Parse the value of an option that counts something, at least 1.
+     *
+     * @since 2.4.0
+     * @param option
+     * @param value
+     * @return long
+     * @throws IllegalArgumentException if the value is not valid
+     */
+    static long parseCount(String option, String value){
+        try{
+            long n = Long.parseLong(value.trim());
+            if(n > 0) return n;
+        }catch(NumberFormatException e){
+            //Reported below
+        }
+        throw new IllegalArgumentException("Invalid --" + option + " value: " + value
+                + ". Use a whole number of at least 1.");
     }
     
     /**
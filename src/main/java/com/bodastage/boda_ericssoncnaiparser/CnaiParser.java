@@ -0,0 +1,988 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Ericsson CNAI dump parser engine.
+ *
+ * A parser only holds its configuration and can be reused to parse any number
+ * of files or directories from any number of threads. Each call to
+ * {@link #parse(String)} is a run with its own domain csv files, and each file
+ * is parsed in its own {@link ParseSession}.
+ *
+ * <pre>
+ * CnaiParser parser = CnaiParser.builder()
+ *         .outputDirectory("out_folder")
+ *         .threads(4)
+ *         .build();
+ * parser.parse("input_folder");
+ * </pre>
+ *
+ * The records can also be consumed without writing csv files, with
+ * {@link #parse(String, RecordSink)} or {@link #records(String)}.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public final class CnaiParser {
+
+    /**
+     * Name of the parameter configuration file written by the parameter
+     * extraction.
+     */
+    public static final String PARAMETER_CONFIG_FILE = "parameters.cfg";
+
+    /**
+     * Output directory.
+     */
+    private final String outputDirectory;
+
+    /**
+     * The list of parameters to extract for each domain. Null when all the
+     * parameters are extracted.
+     */
+    private final Map<String, List<String>> parameters;
+
+    /**
+     * The parameters to extract for each domain for lookups.
+     */
+    private final Map<String, Set<String>> parameterNames;
+
+    /**
+     * Are the files being parsed CNAI v1
+     */
+    private final boolean isVersion1;
+
+    /**
+     * Number of files to parse concurrently when the input is a directory.
+     */
+    private final int threads;
+
+    /**
+     * Read the files with {@link NioLineReader} instead of a BufferedReader.
+     */
+    private final boolean nioReader;
+
+    /**
+     * Read, parse and write each file on separate threads.
+     */
+    private final boolean pipelined;
+
+    /**
+     * Split large files into ranges parsed in parallel.
+     */
+    private final boolean splitFiles;
+
+    /**
+     * Size in bytes of the buffer of each domain csv file.
+     */
+    private final int writeBufferSize;
+
+    /**
+     * Compression of the csv files.
+     */
+    private final OutputCompression outputCompression;
+
+    /**
+     * Compress the csv files on a background thread.
+     */
+    private final boolean backgroundCompression;
+
+    /**
+     * Format of the domain files.
+     */
+    private final OutputFormat outputFormat;
+
+    /**
+     * Give each domain csv file a column for every parameter of the domain
+     * instead of those of its first record.
+     */
+    private final boolean unionColumns;
+
+    /**
+     * Directory of the shards kept for incremental runs. Null when the runs
+     * are not incremental.
+     */
+    private final String cacheDirectory;
+
+    /**
+     * Earlier dump the input is compared with. Null unless the changes
+     * between two dumps are written.
+     */
+    private final String deltaFrom;
+
+    /**
+     * Heap in bytes the records of the earlier dump can take.
+     */
+    private final long deltaMemory;
+
+    /**
+     * Counters the runs add to. Null when they are not counted.
+     */
+    private final ParseMetrics metrics;
+
+    /**
+     * What is done with the malformed lines.
+     */
+    private final MalformedLines malformedLines;
+
+    /**
+     * Selects the files of an input directory.
+     */
+    private final InputFileSelector inputFileSelector;
+
+    /**
+     * Told about each file of a run.
+     */
+    private final ParseListener listener;
+
+    /**
+     * Extract managed objects and their parameters
+     */
+    private final boolean extractParametersOnly;
+
+    /**
+     * Add meta fields to each MO. FILENAME, DATETIME
+     */
+    private final boolean extractMetaFields;
+
+    private CnaiParser(Builder builder, Map<String, List<String>> parameters){
+        this.outputDirectory = builder.outputDirectory;
+        this.parameters = parameters;
+        this.parameterNames = new HashMap<String, Set<String>>();
+        if(parameters != null){
+            for(Map.Entry<String, List<String>> e : parameters.entrySet()){
+                parameterNames.put(e.getKey(), new HashSet<String>(e.getValue()));
+            }
+        }
+        this.isVersion1 = builder.isVersion1;
+        this.threads = builder.threads;
+        this.nioReader = builder.nioReader;
+        this.pipelined = builder.pipelined;
+        this.splitFiles = builder.splitFiles;
+        this.writeBufferSize = builder.writeBufferSize;
+        this.outputCompression = builder.outputCompression;
+        this.backgroundCompression = builder.backgroundCompression;
+        this.outputFormat = builder.outputFormat;
+        this.unionColumns = builder.unionColumns;
+        this.cacheDirectory = builder.cacheDirectory;
+        this.deltaFrom = builder.deltaFrom;
+        this.deltaMemory = builder.deltaMemory;
+        this.metrics = builder.metrics;
+        this.malformedLines = builder.malformedLines != null ? builder.malformedLines
+                : new MalformedLines();
+        this.inputFileSelector = new InputFileSelector(builder.recursive,
+                builder.includes, builder.excludes);
+        this.listener = builder.listener;
+        this.extractParametersOnly = builder.extractParametersOnly;
+        this.extractMetaFields = builder.extractMetaFields;
+    }
+
+    private CnaiParser(CnaiParser parser, String outputDirectory){
+        this.outputDirectory = outputDirectory;
+        this.parameters = parser.parameters;
+        this.parameterNames = parser.parameterNames;
+        this.isVersion1 = parser.isVersion1;
+        this.threads = parser.threads;
+        this.nioReader = parser.nioReader;
+        this.pipelined = parser.pipelined;
+        this.splitFiles = parser.splitFiles;
+        this.writeBufferSize = parser.writeBufferSize;
+        this.outputCompression = parser.outputCompression;
+        this.backgroundCompression = parser.backgroundCompression;
+        this.outputFormat = parser.outputFormat;
+        this.unionColumns = parser.unionColumns;
+        this.cacheDirectory = parser.cacheDirectory;
+        this.deltaFrom = parser.deltaFrom;
+        this.deltaMemory = parser.deltaMemory;
+        this.metrics = parser.metrics;
+        this.malformedLines = parser.malformedLines;
+        this.inputFileSelector = parser.inputFileSelector;
+        this.listener = parser.listener;
+        this.extractParametersOnly = parser.extractParametersOnly;
+        this.extractMetaFields = parser.extractMetaFields;
+    }
+
+    public static Builder builder(){
+        return new Builder();
+    }
+
+    /**
+     * A parser with the same configuration that writes to another directory.
+     *
+     * @param directoryName
+     * @return CnaiParser
+     */
+    public CnaiParser withOutputDirectory(String directoryName){
+        return new CnaiParser(this, directoryName);
+    }
+
+    public String getOutputDirectory(){
+        return outputDirectory;
+    }
+
+    public ParseListener getListener(){
+        return listener;
+    }
+
+    public boolean isVersion1(){
+        return isVersion1;
+    }
+
+    public int getThreads(){
+        return threads;
+    }
+
+    public boolean isNioReader(){
+        return nioReader;
+    }
+
+    public boolean isPipelined(){
+        return pipelined;
+    }
+
+    public boolean isSplitFiles(){
+        return splitFiles;
+    }
+
+    public int getWriteBufferSize(){
+        return writeBufferSize;
+    }
+
+    public OutputCompression getOutputCompression(){
+        return outputCompression;
+    }
+
+    public boolean isBackgroundCompression(){
+        return backgroundCompression;
+    }
+
+    public OutputFormat getOutputFormat(){
+        return outputFormat;
+    }
+
+    public boolean isUnionColumns(){
+        return unionColumns;
+    }
+
+    public String getCacheDirectory(){
+        return cacheDirectory;
+    }
+
+    public String getDeltaFrom(){
+        return deltaFrom;
+    }
+
+    public ParseMetrics getMetrics(){
+        return metrics;
+    }
+
+    public MalformedLines getMalformedLines(){
+        return malformedLines;
+    }
+
+    boolean hasParameters(){
+        return parameters != null;
+    }
+
+    /**
+     * Check whether a domain is written to csv files. Only the domains in the
+     * parameter configuration are written when there is one.
+     *
+     * @param domain
+     * @return boolean
+     */
+    boolean isWritten(String domain){
+        return parameters == null || parameters.containsKey(domain);
+    }
+
+    /**
+     * Check whether the value of a parameter can end up in a domain csv file.
+     * Only parameters in the parameter configuration are written when there
+     * is one.
+     *
+     * @param domain
+     * @param parameter
+     * @return boolean
+     */
+    boolean isWritten(String domain, String parameter){
+        if(parameters == null) return true;
+        Set<String> names = parameterNames.get(domain);
+        return names != null && names.contains(parameter);
+    }
+
+    /**
+     * Create the domain files of a new run in the given directory.
+     *
+     * @param directoryName
+     * @return DomainWriters
+     */
+    public DomainWriters newOutput(String directoryName){
+        if(outputFormat == OutputFormat.ARROW){
+            return new ColumnarDomainWriters(directoryName, parameters);
+        }
+        if(unionColumns){
+            return new UnionDomainWriters(directoryName, writeBufferSize,
+                    outputCompression, backgroundCompression);
+        }
+        return new DomainWriters(directoryName, parameters, writeBufferSize,
+                outputCompression, backgroundCompression);
+    }
+
+    /**
+     * Create uncompressed domain csv files, such as the shards of a parallel
+     * run that are merged into the output later.
+     *
+     * @param directoryName
+     * @return DomainWriters
+     */
+    DomainWriters newUncompressedOutput(String directoryName){
+        return new DomainWriters(directoryName, parameters, writeBufferSize);
+    }
+
+    /**
+     * Start parsing a file.
+     *
+     * @param sink Domain csv files of the run the file belongs to, or any
+     *             other sink for the records
+     * @param cnaiExportFile File name to write in the FILENAME column
+     * @return ParseSession
+     */
+    public ParseSession newSession(RecordSink sink, String cnaiExportFile){
+        return new ParseSession(this, sink, cnaiExportFile);
+    }
+
+    /**
+     * Parse a file or all the files in a directory, handing the records to a
+     * sink instead of writing csv files. The files are parsed one after the
+     * other and the first failure stops the parse. CNAI v1 files have no
+     * records and are skipped.
+     *
+     * @param inputPath File or directory name
+     * @param sink
+     */
+    public void parse(String inputPath, RecordSink sink) throws FileNotFoundException, IOException{
+        for(File f : listInputFiles(inputPath)){
+            newSession(sink, f.getName()).parse(f.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Iterate over the records of a file or all the files in a directory
+     * without writing csv files. The files are read as the records are asked
+     * for.
+     *
+     * @param inputPath File or directory name
+     * @return RecordIterator, to be closed
+     */
+    public RecordIterator records(String inputPath) throws FileNotFoundException, IOException{
+        return new RecordIterator(this, listInputFiles(inputPath));
+    }
+
+    /**
+     * Whether a file is converted as CNAI v1: if it is recognized as one, or
+     * if it is of neither version and the parser is set to CNAI v1.
+     *
+     * @param file
+     */
+    boolean isVersion1(Path file) throws IOException{
+        return isVersion1(CnaiVersion.detect(file));
+    }
+
+    /**
+     * Whether a dump of the version found with {@link CnaiVersion} is
+     * converted as CNAI v1.
+     */
+    boolean isVersion1(int version){
+        if(version == CnaiVersion.UNKNOWN) return isVersion1;
+        return version == CnaiVersion.V1;
+    }
+
+    /**
+     * Tell the listener that a CNAI v1 file is skipped by a run that does not
+     * write csv files. CNAI v1 files are tables that are converted as they
+     * are; they have no records or parameters.
+     *
+     * @param fileName
+     */
+    void skipVersion1(String fileName){
+        listener.fileSkipped(fileName, new IOException(fileName
+                + " is a CNAI v1 file, which can only be converted to csv files"));
+    }
+
+    /**
+     * The files a run parses: the file itself, or the files of a directory
+     * selected by the recursive option and the include and exclude globs, in
+     * the order their records appear in the output.
+     *
+     * @param inputPath File or directory name
+     * @return List of files
+     */
+    public List<File> listInputFiles(String inputPath) throws FileNotFoundException, IOException{
+        Path input = Paths.get(inputPath);
+        if(Files.isRegularFile(input)){
+            return Collections.singletonList(input.toFile());
+        }
+        if(Files.isDirectory(input)){
+            return inputFileSelector.select(input);
+        }
+        throw new FileNotFoundException(inputPath);
+    }
+
+    /**
+     * Print the files a run would parse, with their size and how they would
+     * be read, without parsing them.
+     *
+     * @param inputPath File or directory name
+     * @param out
+     */
+    public void dryRun(String inputPath, PrintStream out) throws FileNotFoundException, IOException{
+        List<File> files = listInputFiles(inputPath);
+        Path input = Paths.get(inputPath).toAbsolutePath();
+
+        List<String> names = new ArrayList<String>();
+        int width = 0;
+        long totalSize = 0;
+        for(File f : files){
+            String name = Files.isDirectory(input)
+                    ? input.relativize(f.toPath().toAbsolutePath()).toString() : f.getName();
+            names.add(name);
+            width = Math.max(width, name.length());
+            totalSize += f.length();
+        }
+
+        for(int i = 0; i < files.size(); i++){
+            File f = files.get(i);
+            out.println(String.format("%-" + width + "s %14d  %s", names.get(i), f.length(),
+                    describe(f.toPath())));
+        }
+        out.println(files.size() + (files.size() == 1 ? " file, " : " files, ") + totalSize + " bytes"
+                + (threads > 1 && files.size() > 1 ? ", parsed by " + threads
+                + " threads from the largest" : ""));
+    }
+
+    /**
+     * How a file would be read: its compression and CNAI version.
+     */
+    private String describe(Path file){
+        try{
+            int compression = CompressedInput.detect(file);
+            if(compression == CompressedInput.ZIP) return "zip";
+
+            int version = CnaiVersion.detect(file);
+            String cnai = version == CnaiVersion.V1 ? "cnai v1"
+                    : version == CnaiVersion.V2 ? "cnai v2"
+                    : isVersion1 ? "cnai v1 (-v1)" : "unrecognized";
+            return compression == CompressedInput.GZIP ? cnai + ", gzip" : cnai;
+        }catch(IOException e){
+            return "unreadable: " + e.getMessage();
+        }
+    }
+
+    /**
+     * List the domains and parameters of a file or of all the files in a
+     * directory, reading only the parameter names.
+     *
+     * @param inputPath File or directory name
+     * @return ParameterDiscovery holding the domains and parameters found
+     */
+    public ParameterDiscovery discoverParameters(String inputPath) throws FileNotFoundException, IOException{
+        ParameterDiscovery discovery = new ParameterDiscovery();
+        for(File f : listInputFiles(inputPath)){
+            if(isVersion1(f.toPath())){
+                skipVersion1(f.getName());
+                continue;
+            }
+            discovery.scan(f.toPath());
+        }
+        return discovery;
+    }
+
+    /**
+     * Write the parameter configuration of a file or of all the files in a
+     * directory to the output directory, or to the standard output if there
+     * is none.
+     */
+    private void extractParameters(String inputPath) throws IOException{
+        ParameterDiscovery discovery = discoverParameters(inputPath);
+        if(outputDirectory == null){
+            Writer w = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            discovery.writeConfig(w);
+            w.flush();
+            return;
+        }
+
+        try(Writer w = Files.newBufferedWriter(Paths.get(outputDirectory, PARAMETER_CONFIG_FILE),
+                StandardCharsets.UTF_8)){
+            discovery.writeConfig(w);
+        }
+    }
+
+    /**
+     * Parse a file or all the files in a directory to the output directory.
+     * With extractParametersOnly, only their parameter configuration is
+     * written.
+     *
+     * @param inputPath File or directory name
+     */
+    public void parse(String inputPath) throws FileNotFoundException, IOException {
+        if(extractParametersOnly){
+            extractParameters(inputPath);
+            return;
+        }
+
+        if(deltaFrom != null){
+            listener.deltaStarted(deltaFrom, inputPath);
+            DumpDelta delta = new DumpDelta(this, outputDirectory, deltaMemory);
+            delta.compare(deltaFrom, inputPath);
+            listener.deltaFinished(delta);
+            return;
+        }
+
+        Path file = Paths.get(inputPath);
+        boolean isRegularExecutableFile = Files.isRegularFile(file)
+                & Files.isReadable(file);
+
+        boolean isReadableDirectory = Files.isDirectory(file)
+                & Files.isReadable(file);
+
+        if (cacheDirectory != null && (isRegularExecutableFile || isReadableDirectory)) {
+            File[] files = listInputFiles(inputPath).toArray(new File[0]);
+            new ParallelDirectoryParser(this, threads, newShardCache()).parse(files);
+            return;
+        }
+
+        if (isRegularExecutableFile && splitFiles && threads > 1) {
+            new ParallelDirectoryParser(this, threads).parse(new File[]{ file.toFile() });
+            return;
+        }
+
+        if (isRegularExecutableFile) {
+            try(DomainWriters output = newOutput(outputDirectory)){
+                String baseFileName = BodaCNAIParser.getFileBasename(inputPath);
+                listener.fileStarted(baseFileName);
+                newSession(output, baseFileName).parse(inputPath);
+                listener.fileParsed(baseFileName);
+            }
+        }
+
+        if (isReadableDirectory) {
+
+            File[] fList = listInputFiles(inputPath).toArray(new File[0]);
+
+            if(threads > 1){
+                new ParallelDirectoryParser(this, threads).parse(fList);
+                return;
+            }
+
+            try(DomainWriters output = newOutput(outputDirectory)){
+                for (File f : fList) {
+                    String baseFileName =  BodaCNAIParser.getFileBasename(f.getAbsolutePath());
+                    try {
+                        listener.fileStarted(baseFileName);
+
+                        //Parse
+                        newSession(output, baseFileName).parse(f.getAbsolutePath());
+                        listener.fileParsed(baseFileName);
+
+                    } catch (MalformedLineException e) {
+                        //Stops the run, not only the file
+                        throw e;
+                    } catch (Exception e) {
+                        listener.fileSkipped(baseFileName, e);
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Open the shard cache of an incremental run. The shards of earlier runs
+     * are only reused with the same parser version, parameter configuration
+     * and -v1 option.
+     */
+    private ShardCache newShardCache() throws IOException{
+        String configuration = BodaCNAIParser.VERSION + "\n" + canonicalParameters()
+                + (isVersion1 ? "\nv1" : "");
+        return new ShardCache(Paths.get(cacheDirectory), configuration);
+    }
+
+    /**
+     * The parameter configuration as text that does not depend on the order
+     * of its lines: a tab separated line per domain, sorted by domain, with
+     * the columns in their order.
+     */
+    String canonicalParameters(){
+        if(parameters == null) return "discovered parameters\n";
+
+        StringBuilder s = new StringBuilder("parameters\n");
+        for(String domain : new TreeSet<String>(parameters.keySet())){
+            s.append(domain);
+            for(String column : parameters.get(domain)){
+                s.append('\t').append(column);
+            }
+            s.append('\n');
+        }
+        return s.toString();
+    }
+
+    /**
+     * Extract parameter list from  parameter file
+     *
+     * @param filename
+     * @return Map of domain to the parameters to extract
+     */
+    public static Map<String, List<String>> getParametersToExtract(String filename) throws FileNotFoundException, IOException{
+        Map<String, List<String>> domainColumnHeaders = new LinkedHashMap<String, List<String>>();
+        try(BufferedReader br = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)){
+            for(String line; (line = br.readLine()) != null; ) {
+               String [] moAndParameters =  line.split(":");
+               String mo = moAndParameters[0];
+               String [] parameters = moAndParameters[1].split(",");
+
+               List<String> parameterList = new ArrayList<String>();
+               for(int i =0; i < parameters.length; i++){
+                   parameterList.add(parameters[i]);
+               }
+                domainColumnHeaders.put(mo, parameterList);
+            }
+        }
+        return Collections.unmodifiableMap(domainColumnHeaders);
+    }
+
+    /**
+     * Builds {@link CnaiParser} instances.
+     */
+    public static final class Builder {
+        private String outputDirectory;
+        private String parameterFile;
+        private boolean isVersion1 = false;
+        private int threads = 1;
+        private boolean nioReader = false;
+        private boolean pipelined = false;
+        private boolean splitFiles = false;
+        private int writeBufferSize = DomainWriters.DEFAULT_BUFFER_SIZE;
+        private OutputCompression outputCompression = OutputCompression.NONE;
+        private boolean backgroundCompression = false;
+        private OutputFormat outputFormat = OutputFormat.CSV;
+        private boolean unionColumns = false;
+        private String cacheDirectory;
+        private String deltaFrom;
+        private long deltaMemory = Runtime.getRuntime().maxMemory() / 4;
+        private ParseMetrics metrics;
+        private MalformedLines malformedLines;
+        private boolean recursive = false;
+        private final List<String> includes = new ArrayList<String>();
+        private final List<String> excludes = new ArrayList<String>();
+        private ParseListener listener = ParseListener.NONE;
+        private boolean extractParametersOnly = false;
+        private boolean extractMetaFields = false;
+
+        private Builder(){
+        }
+
+        /**
+         * Set the output directory.
+         */
+        public Builder outputDirectory(String directoryName){
+            this.outputDirectory = directoryName;
+            return this;
+        }
+
+        /**
+         * Only extract the domains and parameters listed in a parameter
+         * configuration file.
+         */
+        public Builder parameterFile(String filename){
+            this.parameterFile = filename;
+            return this;
+        }
+
+        /**
+         * Parse the files recognized as neither CNAI v1 nor v2 as CNAI v1.
+         * Files that are recognized are always parsed as their version.
+         */
+        public Builder version1(boolean v1){
+            this.isVersion1 = v1;
+            return this;
+        }
+
+        /**
+         * Number of worker threads used to parse the files in an input
+         * directory. 1 parses the files one after the other.
+         */
+        public Builder threads(int threads){
+            if(threads < 1){
+                throw new IllegalArgumentException("threads must be at least 1");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Read the files with the byte level NIO reader. The files are read
+         * as UTF-8 and only the values that are written are decoded.
+         */
+        public Builder nioReader(boolean nio){
+            this.nioReader = nio;
+            return this;
+        }
+
+        /**
+         * Read each file, collect its records and write them to the csv files
+         * on three threads connected by bounded queues. The files are read
+         * with the byte level reader.
+         */
+        public Builder pipelined(boolean pipelined){
+            this.pipelined = pipelined;
+            return this;
+        }
+
+        /**
+         * Split large uncompressed files into ranges that start with a new
+         * network entity and parse the ranges on the worker threads. The
+         * ranges are read with the byte level reader.
+         */
+        public Builder splitFiles(boolean split){
+            this.splitFiles = split;
+            return this;
+        }
+
+        /**
+         * Size in bytes of the write buffer of each domain csv file.
+         */
+        public Builder writeBufferSize(int size){
+            if(size < 1){
+                throw new IllegalArgumentException("write buffer size must be at least 1");
+            }
+            this.writeBufferSize = size;
+            return this;
+        }
+
+        /**
+         * Compress the csv files.
+         */
+        public Builder outputCompression(OutputCompression compression){
+            this.outputCompression = compression;
+            return this;
+        }
+
+        /**
+         * Compress the csv files on a background thread instead of the
+         * thread writing the records.
+         */
+        public Builder backgroundCompression(boolean background){
+            this.backgroundCompression = background;
+            return this;
+        }
+
+        /**
+         * Format of the domain files. Arrow files are written by a single
+         * thread, are not compressed and need a build with the arrow profile.
+         */
+        public Builder outputFormat(OutputFormat format){
+            this.outputFormat = format;
+            return this;
+        }
+
+        /**
+         * Give each domain csv file a column for every parameter found in the
+         * domain, in the order they were found. The rows are spilled to disk
+         * and padded when the files are closed, so the files are written by a
+         * single thread and no parameter file applies.
+         */
+        public Builder unionColumns(boolean union){
+            this.unionColumns = union;
+            return this;
+        }
+
+        /**
+         * Keep the output of each file in a cache directory and only parse
+         * the files that changed since an earlier run. The output is that of
+         * a full run. Files are not split in an incremental run.
+         */
+        public Builder cacheDirectory(String directoryName){
+            this.cacheDirectory = directoryName;
+            return this;
+        }
+
+        /**
+         * Instead of converting the input to csv, write the network entities
+         * added, removed or modified since an earlier dump.
+         *
+         * @param inputPath File or directory name of the earlier dump
+         * @see DumpDelta
+         */
+        public Builder deltaFrom(String inputPath){
+            this.deltaFrom = inputPath;
+            return this;
+        }
+
+        /**
+         * Heap in bytes the records of the earlier dump can take when
+         * comparing dumps. Larger dumps are partitioned on disk first.
+         * Defaults to a quarter of the maximum heap.
+         */
+        public Builder deltaMemory(long bytes){
+            if(bytes < 1){
+                throw new IllegalArgumentException("delta memory must be at least 1");
+            }
+            this.deltaMemory = bytes;
+            return this;
+        }
+
+        /**
+         * Count the bytes, lines and records parsed and the rows written
+         * into a {@link ParseMetrics}, which can be shared by several
+         * parsers.
+         */
+        public Builder metrics(ParseMetrics metrics){
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * What to do with the lines that are neither a directive nor a
+         * parameter: skip them, write a sample of them to an errors file or
+         * stop the run after a number of them. By default they are counted
+         * and skipped.
+         */
+        public Builder malformedLines(MalformedLines malformedLines){
+            this.malformedLines = malformedLines;
+            return this;
+        }
+
+        /**
+         * Only list the domains and their parameters, as a parameter
+         * configuration file written to the output directory or to the
+         * standard output.
+         */
+        public Builder extractParametersOnly(boolean bool){
+            this.extractParametersOnly = bool;
+            return this;
+        }
+
+        public Builder extractMetaFields(boolean bool){
+            this.extractMetaFields = bool;
+            return this;
+        }
+
+        /**
+         * Also parse the files in the subdirectories of an input directory.
+         */
+        public Builder recursive(boolean recursive){
+            this.recursive = recursive;
+            return this;
+        }
+
+        /**
+         * Only parse the files of an input directory matching a glob such as
+         * "*.txt". Can be called more than once.
+         */
+        public Builder include(String glob){
+            this.includes.add(glob);
+            return this;
+        }
+
+        /**
+         * Leave out the files and subdirectories of an input directory
+         * matching a glob. Can be called more than once.
+         */
+        public Builder exclude(String glob){
+            this.excludes.add(glob);
+            return this;
+        }
+
+        /**
+         * Tell a listener about each file of a run, for example to print
+         * the progress of a run. Nothing is told by default.
+         */
+        public Builder listener(ParseListener listener){
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Build the parser. Reads the parameter configuration file if one was
+         * given.
+         */
+        public CnaiParser build() throws FileNotFoundException, IOException{
+            if(outputFormat == OutputFormat.ARROW){
+                if(!ColumnarFileWriter.isAvailable()){
+                    throw new IllegalArgumentException(
+                            "Arrow output needs a build with the arrow profile: mvn -P arrow package");
+                }
+                if(threads > 1){
+                    throw new IllegalArgumentException(
+                            "Arrow output is written by a single thread");
+                }
+                if(outputCompression != OutputCompression.NONE){
+                    throw new IllegalArgumentException(
+                            "Output compression only applies to csv output");
+                }
+            }
+
+            if(unionColumns){
+                if(threads > 1){
+                    throw new IllegalArgumentException(
+                            "Union columns are written by a single thread");
+                }
+                if(outputFormat != OutputFormat.CSV){
+                    throw new IllegalArgumentException(
+                            "Union columns only apply to csv output");
+                }
+                if(parameterFile != null){
+                    throw new IllegalArgumentException(
+                            "Union columns do not apply with a parameter file");
+                }
+            }
+
+            if(cacheDirectory != null){
+                if(outputFormat != OutputFormat.CSV || unionColumns){
+                    throw new IllegalArgumentException(
+                            "Incremental runs only apply to csv output");
+                }
+            }
+
+            if(deltaFrom != null){
+                if(isVersion1){
+                    throw new IllegalArgumentException(
+                            "CNAI v1 files cannot be compared");
+                }
+                if(outputFormat != OutputFormat.CSV || unionColumns || cacheDirectory != null){
+                    throw new IllegalArgumentException(
+                            "Dumps are compared to delta csv files only");
+                }
+            }
+
+            Map<String, List<String>> parameters = null;
+            if(parameterFile != null && new File(parameterFile).isFile()){
+                parameters = getParametersToExtract(parameterFile);
+            }
+            return new CnaiParser(this, parameters);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The parameters of a network entity together with the context they were
+ * found in.
+ *
+ * The parameters are held in arrays in the order they were found. They can
+ * be read by index, or through a map that is built the first time it is asked
+ * for.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public final class CnaiRecord {
+
+    /**
+     * Initial number of parameters a record has room for.
+     */
+    static final int INITIAL_CAPACITY = 64;
+
+    String fileName;
+    String dateTime;
+    String capabilities;
+    String subnetwork;
+    String domain;
+    String set;
+
+    /**
+     * Names and values of the parameters in the order they were found. A
+     * name found twice is in the arrays twice.
+     */
+    String[] names;
+    String[] values;
+    int size = 0;
+
+    /**
+     * Map of the parameters. Null until it is asked for.
+     */
+    private Map<String, String> parameters;
+
+    CnaiRecord(int capacity){
+        this.names = new String[capacity];
+        this.values = new String[capacity];
+    }
+
+    /**
+     * Add a parameter.
+     */
+    void add(String name, String value){
+        if(size == names.length){
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size++] = value;
+        parameters = null;
+    }
+
+    /**
+     * Remove the parameters to reuse the record.
+     */
+    void clear(){
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        parameters = null;
+    }
+
+    /**
+     * Name of the dump file the record is from.
+     */
+    public String getFileName(){
+        return fileName;
+    }
+
+    /**
+     * Value of the .utctime directive.
+     */
+    public String getDateTime(){
+        return dateTime;
+    }
+
+    /**
+     * Value of the ..capabilities directive.
+     */
+    public String getCapabilities(){
+        return capabilities;
+    }
+
+    /**
+     * Value of the .subnetwork directive.
+     */
+    public String getSubnetwork(){
+        return subnetwork;
+    }
+
+    /**
+     * Value of the .domain directive.
+     */
+    public String getDomain(){
+        return domain;
+    }
+
+    /**
+     * The network entity identifier.
+     */
+    public String getSet(){
+        return set;
+    }
+
+    /**
+     * Number of parameters found, counting a parameter found twice twice.
+     */
+    public int getParameterCount(){
+        return size;
+    }
+
+    /**
+     * Name of the parameter found at a position.
+     *
+     * @param index From 0 to getParameterCount() - 1
+     */
+    public String getParameterName(int index){
+        if(index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+        return names[index];
+    }
+
+    /**
+     * Value of the parameter found at a position.
+     *
+     * @param index From 0 to getParameterCount() - 1
+     */
+    public String getParameterValue(int index){
+        if(index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+        return values[index];
+    }
+
+    /**
+     * The parameters and their values in the order they were found, 
+     * including USERDATA. The last value of a parameter found twice is kept.
+     */
+    public Map<String, String> getParameters(){
+        if(parameters == null){
+            parameters = new LinkedHashMap<String, String>();
+            for(int i = 0; i < size; i++){
+                parameters.put(names[i], values[i]);
+            }
+        }
+        return parameters;
+    }
+}
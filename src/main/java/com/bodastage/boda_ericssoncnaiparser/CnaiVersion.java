@@ -0,0 +1,124 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Recognizes the CNAI version of a dump by its first lines.
+ *
+ * A CNAI v2 dump starts with directives such as "..cnai v2" and
+ * "..capabilities". A CNAI v1 dump is a table whose first line, the column
+ * names, is followed by a line of dashes.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class CnaiVersion {
+
+    /**
+     * Neither version, such as an empty file or a zip archive whose entries
+     * are recognized one by one.
+     */
+    static final int UNKNOWN = 0;
+
+    static final int V1 = 1;
+
+    static final int V2 = 2;
+
+    /**
+     * Number of bytes read from the start of a dump to recognize it.
+     */
+    static final int HEAD_SIZE = CompressedInput.BUFFER_SIZE;
+
+    private CnaiVersion(){
+    }
+
+    /**
+     * Find out the version of a file, decompressing the start of a gzip
+     * file.
+     *
+     * @param file
+     * @return UNKNOWN, V1 or V2
+     */
+    static int detect(Path file) throws IOException{
+        int compression = CompressedInput.detect(file);
+        if(compression == CompressedInput.ZIP) return UNKNOWN;
+
+        try(InputStream in = compression == CompressedInput.GZIP
+                ? new GZIPInputStream(Files.newInputStream(file), CompressedInput.BUFFER_SIZE)
+                : Files.newInputStream(file)){
+            byte[] head = new byte[HEAD_SIZE];
+            return detect(head, read(in, head));
+        }
+    }
+
+    /**
+     * Find out the version of the dump a stream holds. The stream must
+     * support mark and is reset to where it was.
+     *
+     * @param in
+     * @return UNKNOWN, V1 or V2
+     * @see BufferedInputStream
+     */
+    static int detect(InputStream in) throws IOException{
+        byte[] head = new byte[HEAD_SIZE];
+        in.mark(HEAD_SIZE);
+        try{
+            return detect(head, read(in, head));
+        }finally{
+            in.reset();
+        }
+    }
+
+    private static int read(InputStream in, byte[] head) throws IOException{
+        int length = 0;
+        for(int n; length < head.length
+                && (n = in.read(head, length, head.length - length)) > 0; ){
+            length += n;
+        }
+        return length;
+    }
+
+    /**
+     * Find out the version of a dump from its first bytes.
+     *
+     * @param head
+     * @param length
+     * @return UNKNOWN, V1 or V2
+     */
+    static int detect(byte[] head, int length){
+        int pos = 0;
+
+        //UTF-8 byte order mark
+        if(length >= 3 && (head[0] & 0xff) == 0xEF && (head[1] & 0xff) == 0xBB
+                && (head[2] & 0xff) == 0xBF){
+            pos = 3;
+        }
+        if(pos == length) return UNKNOWN;
+
+        //Directives such as ..cnai and ..capabilities
+        if(head[pos] == '.') return V2;
+
+        //The line of dashes under the column names
+        while(pos < length && head[pos] != '\n' && head[pos] != '\r') pos++;
+        if(pos < length && head[pos] == '\r') pos++;
+        if(pos < length && head[pos] == '\n') pos++;
+
+        boolean dashes = false;
+        for(; pos < length && head[pos] != '\n' && head[pos] != '\r'; pos++){
+            if(head[pos] == '-'){
+                dashes = true;
+            }else if(head[pos] != ' ' && head[pos] != '\t'){
+                return UNKNOWN;
+            }
+        }
+        return dashes ? V1 : UNKNOWN;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.util.Arrays;
+
+/**
+ * Maps parameter names to the slots of their values in a row.
+ *
+ * An open addressing table that relies on the hash code cached in each
+ * String. The records of a domain mostly list the same parameters in the same
+ * order, so the table also remembers the name and slot found at each position
+ * of the last record; a record laid out like the previous one gets its slots
+ * without a single lookup.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class ColumnSlots {
+
+    /**
+     * Names in the table, kept at most half full.
+     */
+    private String[] names;
+
+    private int[] slots;
+
+    private int size = 0;
+
+    /**
+     * Name and slot found at each position of the last record.
+     */
+    private String[] positionNames = new String[CnaiRecord.INITIAL_CAPACITY];
+
+    private int[] positionSlots = new int[CnaiRecord.INITIAL_CAPACITY];
+
+    ColumnSlots(int expected){
+        int capacity = Integer.highestOneBit(Math.max(expected, 4) * 4);
+        names = new String[capacity];
+        slots = new int[capacity];
+    }
+
+    /**
+     * Slot of the parameter at a position of a record or -1 if it has none.
+     * The name is only looked up when another name was at that position in
+     * the last record.
+     *
+     * @param position Index of the parameter in the record
+     * @param name
+     */
+    int slot(int position, String name){
+        if(position >= positionNames.length){
+            int length = Math.max(position + 1, positionNames.length * 2);
+            positionNames = Arrays.copyOf(positionNames, length);
+            positionSlots = Arrays.copyOf(positionSlots, length);
+        }
+        String known = positionNames[position];
+        if(known == name || name.equals(known)) return positionSlots[position];
+
+        int slot = slot(name);
+        positionNames[position] = name;
+        positionSlots[position] = slot;
+        return slot;
+    }
+
+    /**
+     * Slot of a parameter or -1 if it has none.
+     */
+    int slot(String name){
+        int mask = names.length - 1;
+        for(int t = name.hashCode() & mask; ; t = (t + 1) & mask){
+            String n = names[t];
+            if(n == null) return -1;
+            if(n == name || n.equals(name)) return slots[t];
+        }
+    }
+
+    /**
+     * Give a parameter without a slot the next one.
+     *
+     * @return The new slot
+     */
+    int add(String name){
+        if((size + 1) * 2 > names.length) grow();
+        int slot = size++;
+        put(names, slots, name, slot);
+        //A position may remember the name without a slot
+        Arrays.fill(positionNames, null);
+        return slot;
+    }
+
+    /**
+     * Number of slots given.
+     */
+    int size(){
+        return size;
+    }
+
+    private void grow(){
+        String[] newNames = new String[names.length * 2];
+        int[] newSlots = new int[names.length * 2];
+        for(int t = 0; t < names.length; t++){
+            if(names[t] != null) put(newNames, newSlots, names[t], slots[t]);
+        }
+        names = newNames;
+        slots = newSlots;
+    }
+
+    private static void put(String[] names, int[] slots, String name, int slot){
+        int mask = names.length - 1;
+        int t = name.hashCode() & mask;
+        while(names[t] != null) t = (t + 1) & mask;
+        names[t] = name;
+        slots[t] = slot;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The domain files of a parse run as Apache Arrow IPC files.
+ *
+ * The columns of each domain are chosen like those of the csv files, from
+ * the parameter configuration or from the first record of the domain, and
+ * each domain is written to a .arrow file of utf8 columns. The values are
+ * those a csv reader gets from the csv files, with null for the parameters a
+ * network entity does not have. CNAI v1 files are still converted to csv.
+ * Needs a build with the arrow profile, see {@link ColumnarFileWriter}.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public class ColumnarDomainWriters extends DomainWriters {
+
+    /**
+     * File name extension of the Arrow files.
+     */
+    public static final String EXTENSION = ".arrow";
+
+    /**
+     * Number of rows in a record batch.
+     */
+    static final int DEFAULT_BATCH_SIZE = 1 << 12;
+
+    private final int batchSize;
+
+    /**
+     * The file of each domain. Null until the domain's first record.
+     */
+    private final Map<String, ColumnarFileWriter> domainFiles
+            = new LinkedHashMap<String, ColumnarFileWriter>();
+
+    private final Map<String, DomainColumns> fileColumns
+            = new LinkedHashMap<String, DomainColumns>();
+
+    /**
+     * @param outputDirectory Directory to write the domain files to
+     * @param parameters Parameters to extract for each domain. Null to extract
+     *                   the parameters of the first record of each domain.
+     */
+    public ColumnarDomainWriters(String outputDirectory, Map<String, List<String>> parameters){
+        this(outputDirectory, parameters, DEFAULT_BATCH_SIZE);
+    }
+
+    ColumnarDomainWriters(String outputDirectory, Map<String, List<String>> parameters,
+            int batchSize){
+        super(outputDirectory, parameters);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Note a domain. Its file is created once its columns are known.
+     *
+     * @param domain
+     */
+    @Override
+    public void openDomain(String domain){
+        if(parametersConfigured && !domainColumnHeaders.containsKey(domain)) return;
+        if(!domainFiles.containsKey(domain)) domainFiles.put(domain, null);
+    }
+
+    /**
+     * Add a network entity to its domain file.
+     *
+     * @param record
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public void write(CnaiRecord record){
+        String domain = record.domain;
+        if(parametersConfigured && !domainColumnHeaders.containsKey(domain)) return;
+
+        try{
+            ColumnarFileWriter file = domainFiles.get(domain);
+            if(file == null){
+                //Without a parameter file, the first record of the domain sets
+                //the columns
+                if(!parametersConfigured && !domainColumnHeaders.containsKey(domain)){
+                    List<String> header = new ArrayList<String>();
+                    header.add("set");
+                    for(String pName : record.getParameters().keySet()){
+                        header.add(pName);
+                    }
+                    domainColumnHeaders.put(domain, header);
+                }
+                file = newFile(domain, columns(domain));
+            }
+
+            DomainColumns columns = fileColumns.get(domain);
+            file.add(record.fileName);
+            file.add(record.dateTime);
+            if(columns.capabilities) file.add(record.capabilities);
+            if(columns.subnetwork) file.add(record.subnetwork);
+            if(columns.domain) file.add(domain);
+            if(columns.set) file.add(record.set);
+            columns.fill(record);
+            for(int i = 0; i < columns.parameters.length; i++){
+                String pValue = columns.value(i);
+                file.add(pValue != null ? CsvEscaper.unquote(pValue) : null);
+            }
+            columns.clearValues();
+            file.endRow();
+            rows++;
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ColumnarFileWriter newFile(String domain, DomainColumns columns) throws IOException{
+        ColumnarFileWriter file = ColumnarFileWriter.open(
+                outputDirectory + File.separatorChar + domain + EXTENSION,
+                columns.names, batchSize);
+        domainFiles.put(domain, file);
+        fileColumns.put(domain, columns);
+        return file;
+    }
+
+    /**
+     * Close the domain files. Domains without records get a file without
+     * columns. All the files are closed even if some of them fail, and the
+     * first failure is then thrown.
+     */
+    @Override
+    public void close() throws IOException{
+        IOException failure = null;
+        for(Map.Entry<String, ColumnarFileWriter> e : domainFiles.entrySet()){
+            try{
+                ColumnarFileWriter file = e.getValue();
+                if(file == null){
+                    file = ColumnarFileWriter.open(outputDirectory + File.separatorChar
+                            + e.getKey() + EXTENSION, new String[0], 1);
+                }
+                file.close();
+            }catch(IOException ex){
+                if(failure == null) failure = ex;
+            }
+        }
+        domainFiles.clear();
+
+        try{
+            super.close();
+        }catch(IOException e){
+            if(failure == null) failure = e;
+        }
+
+        if(failure != null) throw failure;
+    }
+}
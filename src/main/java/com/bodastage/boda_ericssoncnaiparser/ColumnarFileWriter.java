@@ -0,0 +1,86 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Writes a table of string columns to an Apache Arrow IPC file.
+ *
+ * Arrow is an optional dependency. The writer is part of the jar only when it
+ * is built with the arrow profile, mvn -P arrow package, and is looked up by
+ * name so that the parser does not need Arrow otherwise.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+interface ColumnarFileWriter extends Closeable {
+
+    /**
+     * Class of the Arrow writer, in src/arrow/java.
+     */
+    String ARROW_WRITER = "com.bodastage.boda_ericssoncnaiparser.ArrowColumnarFileWriter";
+
+    /**
+     * Set the next value of the current row.
+     *
+     * @param value Null for a missing value
+     */
+    void add(String value);
+
+    /**
+     * End the current row.
+     *
+     * @throws IOException
+     */
+    void endRow() throws IOException;
+
+    /**
+     * Whether the jar was built with Arrow.
+     */
+    static boolean isAvailable(){
+        try{
+            Class.forName(ARROW_WRITER);
+            return true;
+        }catch(ClassNotFoundException | LinkageError e){
+            return false;
+        }
+    }
+
+    /**
+     * Create an Arrow file.
+     *
+     * @param fileName
+     * @param columns Column names
+     * @param batchSize Number of rows in a record batch
+     * @return ColumnarFileWriter
+     * @throws IOException if the file cannot be created
+     * @throws IllegalStateException if the jar was built without Arrow
+     */
+    static ColumnarFileWriter open(String fileName, String[] columns, int batchSize)
+            throws IOException{
+        Constructor<?> constructor;
+        try{
+            constructor = Class.forName(ARROW_WRITER)
+                    .getDeclaredConstructor(String.class, String[].class, int.class);
+        }catch(ClassNotFoundException | NoSuchMethodException | LinkageError e){
+            throw new IllegalStateException(
+                    "Arrow output needs a build with the arrow profile: mvn -P arrow package", e);
+        }
+
+        try{
+            return (ColumnarFileWriter) constructor.newInstance(fileName, columns, batchSize);
+        }catch(InvocationTargetException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) throw (IOException) cause;
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }catch(ReflectiveOperationException e){
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Recognizes compressed input files by their first bytes.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class CompressedInput {
+
+    /**
+     * Not compressed.
+     */
+    static final int NONE = 0;
+
+    /**
+     * gzip file.
+     */
+    static final int GZIP = 1;
+
+    /**
+     * zip archive.
+     */
+    static final int ZIP = 2;
+
+    /**
+     * Size of the buffer between the file and the decompressor.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private CompressedInput(){
+    }
+
+    /**
+     * Find out how a file is compressed from its magic bytes.
+     *
+     * @param file
+     * @return NONE, GZIP or ZIP
+     */
+    static int detect(Path file) throws IOException{
+        byte[] magic = new byte[4];
+        int length = 0;
+        try(InputStream in = Files.newInputStream(file)){
+            for(int n; length < magic.length
+                    && (n = in.read(magic, length, magic.length - length)) > 0; ){
+                length += n;
+            }
+        }
+        return detect(magic, length);
+    }
+
+    /**
+     * @param magic First bytes of the file
+     * @param length Number of bytes in magic
+     * @return NONE, GZIP or ZIP
+     */
+    static int detect(byte[] magic, int length){
+        if(length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b){
+            return GZIP;
+        }
+        if(length >= 4 && magic[0] == 'P' && magic[1] == 'K'
+                && magic[2] == 3 && magic[3] == 4){
+            return ZIP;
+        }
+        return NONE;
+    }
+}
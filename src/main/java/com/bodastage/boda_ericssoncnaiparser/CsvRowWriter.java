@@ -0,0 +1,96 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Builds csv rows in a reusable buffer.
+ *
+ * The fields of a row are appended to the same buffer for every row and the
+ * row is then copied to the output writer, so the cost of a row grows
+ * linearly with its number of fields and no intermediate strings are
+ * created.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public final class CsvRowWriter {
+
+    private final StringBuilder row = new StringBuilder(1024);
+
+    private char[] chars = new char[1024];
+
+    /**
+     * Number of fields in the current row.
+     */
+    private int fields = 0;
+
+    /**
+     * Start a new row.
+     *
+     * @return this
+     */
+    public CsvRowWriter begin(){
+        row.setLength(0);
+        fields = 0;
+        return this;
+    }
+
+    /**
+     * Append a field as is.
+     *
+     * @param value
+     * @return this
+     */
+    public CsvRowWriter field(String value){
+        if(fields++ > 0) row.append(',');
+        row.append(value);
+        return this;
+    }
+
+    /**
+     * Append a parameter value, quoting it if needed.
+     *
+     * @param value
+     * @return this
+     * @see CsvEscaper
+     */
+    public CsvRowWriter csvField(String value){
+        if(fields++ > 0) row.append(',');
+        CsvEscaper.escape(value, row);
+        return this;
+    }
+
+    /**
+     * Append an empty field.
+     *
+     * @return this
+     */
+    public CsvRowWriter emptyField(){
+        if(fields++ > 0) row.append(',');
+        return this;
+    }
+
+    /**
+     * Write the row followed by a '\n'.
+     *
+     * @param w
+     */
+    public void writeTo(Writer w) throws IOException{
+        int length = row.length();
+        if(chars.length < length){
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        row.getChars(0, length, chars, 0);
+        w.write(chars, 0, length);
+        w.write('\n');
+    }
+
+    @Override
+    public String toString(){
+        return row.toString();
+    }
+}
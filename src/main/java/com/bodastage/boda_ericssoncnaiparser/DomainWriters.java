@@ -0,0 +1,522 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The domain csv files of a parse run.
+ *
+ * Holds the writer of each domain and the csv header chosen for it. The
+ * header of a domain is taken from the parameter configuration or, when there
+ * is none, from the first record of the domain in the run.
+ *
+ * The files are written as UTF-8 with '\n' line endings through buffers of
+ * a configurable size. Nothing is flushed before the buffers are full or the
+ * files are closed. The files can be compressed, optionally on a background
+ * thread shared by all the files.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public class DomainWriters implements RecordSink, Closeable {
+
+    /**
+     * Default size in bytes of the buffer of each domain csv file.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Size in characters of the buffer in front of the UTF-8 encoder.
+     */
+    private static final int CHAR_BUFFER_SIZE = 1 << 13;
+
+    /**
+     * Number of chunks that can wait for the background compressor.
+     */
+    static final int COMPRESSOR_QUEUE_SIZE = 16;
+
+    /**
+     * Output directory.
+     */
+    final String outputDirectory;
+
+    /**
+     * Whether the columns of each domain come from a parameter configuration.
+     */
+    final boolean parametersConfigured;
+
+    /**
+     * Size in bytes of the buffer of each domain csv file.
+     */
+    final int bufferSize;
+
+    /**
+     * Compression of the domain csv files.
+     */
+    final OutputCompression compression;
+
+    /**
+     * Compresses the files in the background. Null to compress on the thread
+     * writing the records.
+     */
+    private ExecutorService compressor;
+
+    /**
+     * Bounds the chunks waiting for the background compressor.
+     */
+    private Semaphore compressorPermits;
+
+    /**
+     * Domain writers.
+     */
+    final Map<String, Writer> domainPWMap
+            = new LinkedHashMap<String, Writer>();
+
+    /**
+     * Mark which domain parameter headers have been added to the csv file.
+     */
+    final Map<String, Boolean> domainHeaderAdded
+            = new LinkedHashMap<String, Boolean>();
+
+    /**
+     * The list of parameters to extract for each domain.
+     */
+    final Map<String, List<String>> domainColumnHeaders;
+
+    /**
+     * Columns of each domain's csv file, built from domainColumnHeaders the
+     * first time they are needed.
+     */
+    private final Map<String, DomainColumns> domainColumns
+            = new HashMap<String, DomainColumns>();
+
+    /**
+     * Buffer the csv rows are built in.
+     */
+    private final CsvRowWriter row = new CsvRowWriter();
+
+    /**
+     * Names of the csv files of the CNAI v1 files converted, without the
+     * .csv extension, in the order they were opened.
+     */
+    final List<String> version1Files = new ArrayList<String>();
+
+    /**
+     * Number of rows written, not counting the headers. Only read by the
+     * thread writing the records or once they are written.
+     */
+    long rows = 0;
+
+    /**
+     * @param outputDirectory Directory to write the domain csv files to
+     * @param parameters Parameters to extract for each domain. Null to extract
+     *                   the parameters of the first record of each domain.
+     */
+    public DomainWriters(String outputDirectory, Map<String, List<String>> parameters){
+        this(outputDirectory, parameters, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param outputDirectory Directory to write the domain csv files to
+     * @param parameters Parameters to extract for each domain. Null to extract
+     *                   the parameters of the first record of each domain.
+     * @param bufferSize Size in bytes of the buffer of each file
+     */
+    public DomainWriters(String outputDirectory, Map<String, List<String>> parameters,
+            int bufferSize){
+        this(outputDirectory, parameters, bufferSize, OutputCompression.NONE, false);
+    }
+
+    /**
+     * @param outputDirectory Directory to write the domain csv files to
+     * @param parameters Parameters to extract for each domain. Null to extract
+     *                   the parameters of the first record of each domain.
+     * @param bufferSize Size in bytes of the buffer of each file
+     * @param compression Compression of the files
+     * @param backgroundCompression Compress on a background thread
+     */
+    public DomainWriters(String outputDirectory, Map<String, List<String>> parameters,
+            int bufferSize, OutputCompression compression,
+            boolean backgroundCompression){
+        if(bufferSize < 1){
+            throw new IllegalArgumentException("bufferSize must be at least 1");
+        }
+        this.outputDirectory = outputDirectory;
+        this.bufferSize = bufferSize;
+        this.compression = compression;
+        if(backgroundCompression && compression != OutputCompression.NONE){
+            this.compressor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "cnai-compressor");
+                t.setDaemon(true);
+                return t;
+            });
+            this.compressorPermits = new Semaphore(COMPRESSOR_QUEUE_SIZE);
+        }
+        this.parametersConfigured = parameters != null;
+        this.domainColumnHeaders = parameters != null ? parameters
+                : new LinkedHashMap<String, List<String>>();
+    }
+
+    /**
+     * Use an already chosen csv header for a domain.
+     *
+     * @param domain
+     * @param header Parameters after the FILENAME,DATETIME,capabilities,
+     *               subnetwork and domain columns
+     */
+    void useHeader(String domain, List<String> header){
+        domainColumnHeaders.put(domain, header);
+        domainColumns.remove(domain);
+        domainHeaderAdded.put(domain, true);
+    }
+
+    /**
+     * Create the csv file of a domain if it has not been created yet.
+     *
+     * @param domain
+     * @throws UncheckedIOException if the file cannot be created
+     */
+    @Override
+    public void openDomain(String domain){
+        //Skip the rest if the domain print writer has already been added.
+        if( domainPWMap.containsKey(domain) ){
+            return;
+        }
+
+        //Create domain writer
+        String domainFile = outputDirectory + File.separatorChar + domain
+                + ".csv" + compression.suffix();
+        try {
+            if( !parametersConfigured || domainColumnHeaders.containsKey(domain)){
+                domainPWMap.put(domain, newWriter(domainFile));
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        //Mark domain header as not yet added
+        if(!domainHeaderAdded.containsKey(domain)){
+            domainHeaderAdded.put(domain, false);
+        }
+    }
+
+    /**
+     * Write a network entity to its domain csv file.
+     *
+     * @param record
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public void write(CnaiRecord record){
+        try{
+            writeRecord(record);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the parameters of a network entity to its domain csv file.
+     *
+     * @param record
+     */
+    private void writeRecord(CnaiRecord record) throws IOException{
+        String cnaiExportFile = record.fileName;
+        String creationDateTime = record.dateTime;
+        String capabilities = record.capabilities;
+        String subnetwork = record.subnetwork;
+        String domain = record.domain;
+        String set = record.set;
+
+        //Skip if domain is not in the parameter file
+        if(parametersConfigured && !domainColumnHeaders.containsKey(domain) ){
+            return;
+        }
+
+        Writer pw = domainPWMap.get(domain);
+
+        //Without a parameter file, the first record of the domain sets the
+        //columns
+        if(domainHeaderAdded.get(domain)== false && !parametersConfigured){
+            Map<String, String> domainParameterList = record.getParameters();
+            row.begin()
+                    .field("FILENAME").field("DATETIME").field("capabilities")
+                    .field("subnetwork").field("domain").field("set");
+
+            List<String> header = new ArrayList<String>();
+            header.add("set");
+            for(String pName : domainParameterList.keySet()){
+                row.field(pName);
+                header.add(pName);
+            }
+            row.writeTo(pw);
+
+            row.begin()
+                    .field(cnaiExportFile).field(creationDateTime).field(capabilities)
+                    .field(subnetwork).field(domain).field(set);
+            for(String pValue : domainParameterList.values()){
+                row.csvField(pValue);
+            }
+            row.writeTo(pw);
+
+            domainColumnHeaders.put(domain,header);
+
+            //Mark the headers as added
+            domainHeaderAdded.put(domain,true);
+            rows++;
+            return;
+        }
+
+        DomainColumns columns = columns(domain);
+
+        //Add domain csv file headers
+        if(domainHeaderAdded.get(domain)== false ){
+            pw.write(columns.header);
+            pw.write('\n');
+            domainHeaderAdded.put(domain,true);
+        }
+
+        row.begin().field(cnaiExportFile).field(creationDateTime);
+        if(columns.capabilities) row.field(capabilities);
+        if(columns.subnetwork) row.field(subnetwork);
+        if(columns.domain) row.field(domain);
+        if(columns.set) row.field(set);
+
+        columns.fill(record);
+        for(int i = 0; i < columns.parameters.length; i++){
+            String pValue = columns.value(i);
+            if(pValue != null){
+                row.csvField(pValue);
+            }else{
+                row.emptyField();
+            }
+        }
+        columns.clearValues();
+
+        //Add the parameter values
+        row.writeTo(pw);
+        rows++;
+    }
+
+    DomainColumns columns(String domain){
+        DomainColumns columns = domainColumns.get(domain);
+        if(columns == null){
+            columns = new DomainColumns(domainColumnHeaders.get(domain), parametersConfigured);
+            domainColumns.put(domain, columns);
+        }
+        return columns;
+    }
+
+    /**
+     * Open the csv file of a CNAI v1 input file, named after it. The caller
+     * closes the file.
+     *
+     * @param inputFilename
+     * @return OutputStream
+     */
+    OutputStream openVersion1File(String inputFilename) throws IOException{
+        String name = BodaCNAIParser.getFileBasename(inputFilename);
+        version1Files.add(name);
+        return newOutputStream(outputDirectory + File.separatorChar + name + ".csv"
+                + compression.suffix());
+    }
+
+    private Writer newWriter(String fileName) throws IOException{
+        return newWriter(newOutputStream(fileName));
+    }
+
+    /**
+     * Write UTF-8 text to a stream. The encoded bytes are gathered in a
+     * buffer of bufferSize bytes, so the stream gets large writes whatever
+     * the size of the encoder's own buffer.
+     */
+    Writer newWriter(OutputStream out){
+        return new BufferedWriter(new OutputStreamWriter(new BufferedOutputStream(out, bufferSize),
+                StandardCharsets.UTF_8), Math.min(bufferSize, CHAR_BUFFER_SIZE));
+    }
+
+    /**
+     * Create an output file, compressed as configured.
+     *
+     * @param fileName
+     * @return OutputStream
+     */
+    OutputStream newOutputStream(String fileName) throws IOException{
+        OutputStream file = new FileOutputStream(fileName);
+        OutputStream out;
+        try{
+            out = compression.wrap(file);
+        }catch(IOException e){
+            file.close();
+            throw e;
+        }
+
+        if(compressor != null){
+            out = new WriteBehindOutputStream(out, compressor, compressorPermits,
+                    OutputCompression.BUFFER_SIZE);
+        }
+        return out;
+    }
+
+    /**
+     * Flush and close the file writers. All the files are closed even if some
+     * of them fail to close, and the first failure is then thrown.
+     */
+    @Override
+    public void close() throws IOException{
+        IOException failure = null;
+        Iterator<Map.Entry<String, Writer>> iter
+                = domainPWMap.entrySet().iterator();
+        while (iter.hasNext()) {
+            try{
+                iter.next().getValue().close();
+            }catch(IOException e){
+                if(failure == null) failure = e;
+            }
+        }
+        domainPWMap.clear();
+
+        if(compressor != null){
+            compressor.shutdown();
+            compressor = null;
+        }
+
+        if(failure != null) throw failure;
+    }
+
+    /**
+     * The csv columns of a domain, compiled into a slot per parameter column
+     * so that the values of a record are put in their columns without looking
+     * the parameter names up, as long as the record lists its parameters like
+     * the previous one.
+     */
+    static final class DomainColumns {
+
+        /**
+         * Which of the context columns follow FILENAME and DATETIME.
+         */
+        final boolean capabilities;
+        final boolean subnetwork;
+        final boolean domain;
+        final boolean set;
+
+        /**
+         * The parameter columns.
+         */
+        final String[] parameters;
+
+        /**
+         * Value slot of each parameter column. A parameter listed twice has
+         * one slot.
+         */
+        private final int[] parameterSlots;
+
+        /**
+         * Values of the record being written, by slot.
+         */
+        private final String[] slotValues;
+
+        /**
+         * Slots of the parameter names.
+         */
+        private final ColumnSlots slots;
+
+        /**
+         * Names of all the columns.
+         */
+        final String[] names;
+
+        /**
+         * The csv header line.
+         */
+        final String header;
+
+        DomainColumns(List<String> columnHeaders, boolean parametersConfigured){
+            capabilities = !parametersConfigured || columnHeaders.contains("capabilities");
+            subnetwork = !parametersConfigured || columnHeaders.contains("subnetwork");
+            domain = !parametersConfigured || columnHeaders.contains("domain");
+            set = !parametersConfigured || columnHeaders.contains("set");
+
+            List<String> all = new ArrayList<String>();
+            all.add("FILENAME");
+            all.add("DATETIME");
+            if(capabilities) all.add("capabilities");
+            if(subnetwork) all.add("subnetwork");
+            if(domain) all.add("domain");
+            if(set) all.add("set");
+            int contextColumns = all.size();
+
+            for(int i=0; i < columnHeaders.size(); i++ ){
+                String pName = columnHeaders.get(i);
+                if(pName.equals("set") || pName.equals("domain") ||
+                    pName.equals("subnetwork") || pName.equals("capabilities") ) continue;
+                all.add(pName);
+            }
+            names = all.toArray(new String[all.size()]);
+            parameters = all.subList(contextColumns, all.size()).toArray(new String[0]);
+
+            slots = new ColumnSlots(parameters.length);
+            parameterSlots = new int[parameters.length];
+            for(int i = 0; i < parameters.length; i++){
+                int slot = slots.slot(parameters[i]);
+                parameterSlots[i] = slot >= 0 ? slot : slots.add(parameters[i]);
+            }
+            slotValues = new String[slots.size()];
+
+            CsvRowWriter row = new CsvRowWriter().begin();
+            for(String name : names){
+                row.field(name);
+            }
+            header = row.toString();
+        }
+
+        /**
+         * Put the values of a record in their slots. The last value of a
+         * parameter found twice is kept.
+         */
+        void fill(CnaiRecord record){
+            String[] recordNames = record.names;
+            String[] recordValues = record.values;
+            for(int i = 0, n = record.size; i < n; i++){
+                int slot = slots.slot(i, recordNames[i]);
+                if(slot >= 0) slotValues[slot] = recordValues[i];
+            }
+        }
+
+        /**
+         * Value of a parameter column for the record filled in.
+         *
+         * @param parameter Index in parameters
+         */
+        String value(int parameter){
+            return slotValues[parameterSlots[parameter]];
+        }
+
+        void clearValues(){
+            Arrays.fill(slotValues, null);
+        }
+    }
+}
@@ -0,0 +1,554 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Writes the network entities that were added, removed or modified between
+ * two CNAI dumps.
+ *
+ * The entities of both dumps are matched by domain and set. The records of
+ * the old dump are held in a hash table and those of the new dump are looked
+ * up in it as they are read, so neither dump is written to csv first. When
+ * the old dump is too large for the memory budget, both dumps are first
+ * split by the hash of the domain and set into at most 256 partition files in
+ * the output directory, and the partitions are joined one at a time. A
+ * partition still too large is split again with another hash.
+ *
+ * Each domain with changes gets a csv file with a row per changed parameter:
+ *
+ * <pre>
+ * CHANGE,set,PARAMETER,OLD_VALUE,NEW_VALUE
+ * MODIFIED,CELL01,BSPWRB,45,47
+ * ADDED,CELL02,BSPWRB,,45
+ * REMOVED,CELL03,BSPWRB,41,
+ * </pre>
+ *
+ * An added or removed entity has a row for each of its parameters, and a
+ * modified one for each parameter whose value differs or that only one of
+ * the dumps has. A set is expected once per domain in each dump. When it is
+ * found more than once, the first entity of each dump is compared and every
+ * later one gets DUPLICATE rows with its parameters, as old values for the
+ * old dump and new values for the new one:
+ *
+ * <pre>
+ * DUPLICATE,CELL04,BSPWRB,,46
+ * </pre>
+ *
+ * Like the domain csv files, the delta files only cover the domains and
+ * parameters of the parameter configuration when the parser has one.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public final class DumpDelta {
+
+    public static final String ADDED = "ADDED";
+    public static final String REMOVED = "REMOVED";
+    public static final String MODIFIED = "MODIFIED";
+    public static final String DUPLICATE = "DUPLICATE";
+
+    /**
+     * Estimated bytes of heap taken by the records of one byte of an
+     * uncompressed dump.
+     */
+    static final int HEAP_BYTES_PER_INPUT_BYTE = 4;
+
+    /**
+     * Estimated size of a compressed dump relative to its content.
+     */
+    static final int COMPRESSION_RATIO = 8;
+
+    /**
+     * Largest number of partition files written at once, well below the
+     * usual limit of open files.
+     */
+    static final int MAX_PARTITIONS = 1 << 8;
+
+    /**
+     * Number of times a partition can be split again. Entities whose keys
+     * hash the same are never separated, so the splitting has to stop.
+     */
+    static final int MAX_LEVELS = 4;
+
+    /**
+     * Smallest and largest buffer of a partition file.
+     */
+    static final int MIN_PARTITION_BUFFER = 1 << 12;
+    static final int MAX_PARTITION_BUFFER = 1 << 16;
+
+    private final CnaiParser parser;
+
+    private final String outputDirectory;
+
+    private final long memoryBudget;
+
+    /**
+     * Delta csv file of each domain with changes.
+     */
+    private final Map<String, Writer> domainWriters = new LinkedHashMap<String, Writer>();
+
+    private final CsvRowWriter row = new CsvRowWriter();
+
+    private long added = 0;
+    private long removed = 0;
+    private long modified = 0;
+    private long duplicates = 0;
+
+    /**
+     * @param parser Parser configuration the dumps are read with
+     * @param outputDirectory Directory to write the delta csv files to
+     * @param memoryBudget Heap in bytes the records of the old dump can take
+     */
+    public DumpDelta(CnaiParser parser, String outputDirectory, long memoryBudget){
+        this.parser = parser;
+        this.outputDirectory = outputDirectory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Compare two dump files or directories and write the changes.
+     *
+     * @param oldInput File or directory name of the earlier dump
+     * @param newInput File or directory name of the later dump
+     */
+    public void compare(String oldInput, String newInput) throws FileNotFoundException, IOException{
+        try{
+            int partitions = partitions(estimateHeap(oldInput));
+            if(partitions == 1){
+                try(RecordIterator oldRecords = parser.records(oldInput);
+                        RecordIterator newRecords = parser.records(newInput)){
+                    join(new Entities(parser, oldRecords), new Entities(parser, newRecords));
+                }
+                return;
+            }
+
+            Path spill = Files.createTempDirectory(Paths.get(outputDirectory), ".delta");
+            try{
+                Path[] oldPartitions;
+                Path[] newPartitions;
+                try(RecordIterator records = parser.records(oldInput)){
+                    oldPartitions = partition(new Entities(parser, records), spill, "old", partitions, 0);
+                }
+                try(RecordIterator records = parser.records(newInput)){
+                    newPartitions = partition(new Entities(parser, records), spill, "new", partitions, 0);
+                }
+                joinPartitions(oldPartitions, newPartitions, 1);
+            }finally{
+                deleteDirectory(spill);
+            }
+        }catch(UncheckedIOException e){
+            throw e.getCause();
+        }finally{
+            closeWriters();
+        }
+    }
+
+    /**
+     * Heap the records of the old dump would take, estimated from the size of
+     * its files.
+     */
+    private long estimateHeap(String oldInput) throws IOException{
+        long estimate = 0;
+        for(File f : parser.listInputFiles(oldInput)){
+            long size = f.length();
+            if(CompressedInput.detect(f.toPath()) != CompressedInput.NONE){
+                size *= COMPRESSION_RATIO;
+            }
+            estimate += size * HEAP_BYTES_PER_INPUT_BYTE;
+        }
+        return estimate;
+    }
+
+    /**
+     * Number of partitions for records of the given heap estimate to fit the
+     * memory budget, at most MAX_PARTITIONS.
+     */
+    private int partitions(long estimate){
+        long partitions = (estimate + memoryBudget - 1) / memoryBudget;
+        return (int) Math.max(1, Math.min(partitions, MAX_PARTITIONS));
+    }
+
+    /**
+     * Join the partitions of both dumps one pair at a time. A partition of the
+     * old dump too large for the memory budget is split again first.
+     *
+     * @param level Number of times the partitions were split
+     */
+    private void joinPartitions(Path[] oldPartitions, Path[] newPartitions, int level) throws IOException{
+        for(int p = 0; p < oldPartitions.length; p++){
+            int partitions = level < MAX_LEVELS
+                    ? partitions(Files.size(oldPartitions[p]) * HEAP_BYTES_PER_INPUT_BYTE) : 1;
+            if(partitions == 1){
+                try(PartitionReader oldEntities = new PartitionReader(oldPartitions[p]);
+                        PartitionReader newEntities = new PartitionReader(newPartitions[p])){
+                    join(oldEntities, newEntities);
+                }
+            }else{
+                Path directory = Files.createDirectory(
+                        oldPartitions[p].resolveSibling(oldPartitions[p].getFileName() + ".split"));
+                Path[] oldSplit;
+                Path[] newSplit;
+                try(PartitionReader entities = new PartitionReader(oldPartitions[p])){
+                    oldSplit = partition(entities, directory, "old", partitions, level);
+                }
+                try(PartitionReader entities = new PartitionReader(newPartitions[p])){
+                    newSplit = partition(entities, directory, "new", partitions, level);
+                }
+                Files.delete(oldPartitions[p]);
+                Files.delete(newPartitions[p]);
+                joinPartitions(oldSplit, newSplit, level + 1);
+            }
+            Files.deleteIfExists(oldPartitions[p]);
+            Files.deleteIfExists(newPartitions[p]);
+        }
+    }
+
+    /**
+     * Match the entities of the old and new dumps and write their changes.
+     */
+    private void join(Iterator<Entity> oldEntities, Iterator<Entity> newEntities) throws IOException{
+        Map<String, Entity> table = new LinkedHashMap<String, Entity>();
+        while(oldEntities.hasNext()){
+            Entity e = oldEntities.next();
+            if(table.putIfAbsent(e.key(), e) != null) duplicate(e, true);
+        }
+
+        //The sets of the new dump seen so far
+        Set<String> seen = new HashSet<String>();
+        while(newEntities.hasNext()){
+            Entity e = newEntities.next();
+            if(!seen.add(e.key())){
+                duplicate(e, false);
+                continue;
+            }
+
+            Entity old = table.remove(e.key());
+            if(old == null){
+                added++;
+                for(Map.Entry<String, String> p : e.parameters.entrySet()){
+                    write(ADDED, e, p.getKey(), null, p.getValue());
+                }
+            }else{
+                diff(old, e);
+            }
+        }
+
+        for(Entity e : table.values()){
+            removed++;
+            for(Map.Entry<String, String> p : e.parameters.entrySet()){
+                write(REMOVED, e, p.getKey(), p.getValue(), null);
+            }
+        }
+    }
+
+    /**
+     * Write an entity whose set was already found in the same dump.
+     */
+    private void duplicate(Entity e, boolean inOldDump) throws IOException{
+        duplicates++;
+        for(Map.Entry<String, String> p : e.parameters.entrySet()){
+            if(inOldDump){
+                write(DUPLICATE, e, p.getKey(), p.getValue(), null);
+            }else{
+                write(DUPLICATE, e, p.getKey(), null, p.getValue());
+            }
+        }
+    }
+
+    private void diff(Entity old, Entity e) throws IOException{
+        boolean changed = false;
+        for(Map.Entry<String, String> p : e.parameters.entrySet()){
+            String oldValue = old.parameters.get(p.getKey());
+            if(!p.getValue().equals(oldValue)){
+                write(MODIFIED, e, p.getKey(), oldValue, p.getValue());
+                changed = true;
+            }
+        }
+        for(Map.Entry<String, String> p : old.parameters.entrySet()){
+            if(!e.parameters.containsKey(p.getKey())){
+                write(MODIFIED, e, p.getKey(), p.getValue(), null);
+                changed = true;
+            }
+        }
+        if(changed) modified++;
+    }
+
+    private void write(String change, Entity e, String parameter, String oldValue,
+            String newValue) throws IOException{
+        Writer w = domainWriters.get(e.domain);
+        if(w == null){
+            w = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(
+                    Paths.get(outputDirectory, e.domain + ".csv")), StandardCharsets.UTF_8),
+                    DomainWriters.DEFAULT_BUFFER_SIZE);
+            domainWriters.put(e.domain, w);
+            row.begin().field("CHANGE").field("set").field("PARAMETER")
+                    .field("OLD_VALUE").field("NEW_VALUE").writeTo(w);
+        }
+
+        row.begin().field(change).field(e.set).field(parameter);
+        if(oldValue != null) row.csvField(oldValue); else row.emptyField();
+        if(newValue != null) row.csvField(newValue); else row.emptyField();
+        row.writeTo(w);
+    }
+
+    /**
+     * Split entities into partition files by the hash of their domain and
+     * set. The buffers of the files share the memory budget.
+     *
+     * @param level Selects the hash, so that a partition split again does not
+     *              keep all its entities together
+     */
+    private Path[] partition(Iterator<Entity> entities, Path directory, String prefix,
+            int partitions, int level) throws IOException{
+        int bufferSize = (int) Math.max(MIN_PARTITION_BUFFER,
+                Math.min(memoryBudget / partitions, MAX_PARTITION_BUFFER));
+        Path[] files = new Path[partitions];
+        DataOutputStream[] outs = new DataOutputStream[partitions];
+        try{
+            for(int p = 0; p < partitions; p++){
+                files[p] = directory.resolve(prefix + p);
+                outs[p] = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(files[p]), bufferSize));
+            }
+
+            while(entities.hasNext()){
+                Entity e = entities.next();
+                e.writeTo(outs[partition(e.key(), level, partitions)]);
+            }
+        }finally{
+            for(DataOutputStream out : outs){
+                if(out != null) out.close();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Partition of a key, from a hash of it that differs at each level.
+     */
+    static int partition(String key, int level, int partitions){
+        int h = key.hashCode() + level * 0x9E3779B9;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, partitions);
+    }
+
+    private void closeWriters() throws IOException{
+        IOException failure = null;
+        for(Writer w : domainWriters.values()){
+            try{
+                w.close();
+            }catch(IOException e){
+                if(failure == null) failure = e;
+            }
+        }
+        domainWriters.clear();
+
+        if(failure != null) throw failure;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException{
+        if(!Files.exists(directory)) return;
+        try(Stream<Path> paths = Files.walk(directory)){
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Number of entities only found in the new dump.
+     */
+    public long getAdded(){
+        return added;
+    }
+
+    /**
+     * Number of entities only found in the old dump.
+     */
+    public long getRemoved(){
+        return removed;
+    }
+
+    /**
+     * Number of entities found in both dumps with different parameters.
+     */
+    public long getModified(){
+        return modified;
+    }
+
+    /**
+     * Number of entities whose set was already found in the same dump.
+     */
+    public long getDuplicates(){
+        return duplicates;
+    }
+
+    /**
+     * A network entity of one of the dumps.
+     */
+    private static final class Entity {
+        final String domain;
+        final String set;
+
+        /**
+         * Parameters with a value, in the order they were found.
+         */
+        final Map<String, String> parameters;
+
+        Entity(String domain, String set, Map<String, String> parameters){
+            this.domain = domain;
+            this.set = set;
+            this.parameters = parameters;
+        }
+
+        String key(){
+            return domain + '\n' + set;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException{
+            writeString(out, domain);
+            writeString(out, set);
+            out.writeInt(parameters.size());
+            for(Map.Entry<String, String> p : parameters.entrySet()){
+                writeString(out, p.getKey());
+                writeString(out, p.getValue());
+            }
+        }
+
+        static Entity readFrom(DataInputStream in) throws IOException{
+            String domain = readString(in);
+            String set = readString(in);
+            int n = in.readInt();
+            Map<String, String> parameters = new LinkedHashMap<String, String>(n * 2);
+            for(int i = 0; i < n; i++){
+                parameters.put(readString(in), readString(in));
+            }
+            return new Entity(domain, set, parameters);
+        }
+
+        private static void writeString(DataOutputStream out, String s) throws IOException{
+            byte[] b = String.valueOf(s).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+
+        private static String readString(DataInputStream in) throws IOException{
+            byte[] b = new byte[in.readInt()];
+            in.readFully(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The entities of the records of a dump, with the domains and parameters
+     * written to csv files.
+     */
+    private static final class Entities implements Iterator<Entity> {
+
+        private final CnaiParser parser;
+
+        private final RecordIterator records;
+
+        private Entity next;
+
+        Entities(CnaiParser parser, RecordIterator records){
+            this.parser = parser;
+            this.records = records;
+        }
+
+        @Override
+        public boolean hasNext(){
+            while(next == null && records.hasNext()){
+                CnaiRecord record = records.next();
+                String domain = String.valueOf(record.domain);
+                if(!parser.isWritten(domain)) continue;
+
+                Map<String, String> parameters = new LinkedHashMap<String, String>(record.size * 2);
+                for(int i = 0; i < record.size; i++){
+                    //The value of a parameter found twice is the last one, as
+                    //in the csv files
+                    if(record.values[i] != null && parser.isWritten(domain, record.names[i])){
+                        parameters.put(record.names[i], record.values[i]);
+                    }
+                }
+                next = new Entity(domain, String.valueOf(record.set), parameters);
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entity next(){
+            if(!hasNext()) throw new NoSuchElementException();
+            Entity e = next;
+            next = null;
+            return e;
+        }
+    }
+
+    /**
+     * The entities of a partition file.
+     */
+    private static final class PartitionReader implements Iterator<Entity>, AutoCloseable {
+
+        private final DataInputStream in;
+
+        private Entity next;
+
+        PartitionReader(Path file) throws IOException{
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        }
+
+        @Override
+        public boolean hasNext(){
+            if(next != null) return true;
+            try{
+                next = Entity.readFrom(in);
+                return true;
+            }catch(EOFException e){
+                return false;
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Entity next(){
+            if(!hasNext()) throw new NoSuchElementException();
+            Entity e = next;
+            next = null;
+            return e;
+        }
+
+        @Override
+        public void close() throws IOException{
+            in.close();
+        }
+    }
+}
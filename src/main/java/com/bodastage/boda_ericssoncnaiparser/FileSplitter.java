@@ -0,0 +1,248 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a CNAI dump file into ranges that can be parsed independently.
+ *
+ * A range ends right after a USERDATA line that writes a network entity, so
+ * no parameters are carried over from one range to the next. The context
+ * directives in force at the start of a range are found by scanning the
+ * previous range backwards from its end.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class FileSplitter {
+
+    /**
+     * Files are not split into ranges smaller than this.
+     */
+    static final long MIN_RANGE_SIZE = 8 << 20;
+
+    /**
+     * Size of the blocks read while scanning.
+     */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    private FileSplitter(){
+    }
+
+    /**
+     * Find where to split a file into about the given number of ranges.
+     *
+     * @param channel
+     * @param ranges
+     * @return The offsets at which the ranges start followed by the size of
+     *         the file
+     */
+    static long[] split(FileChannel channel, int ranges) throws IOException{
+        long size = channel.size();
+        int n = (int) Math.min(ranges, size / MIN_RANGE_SIZE);
+
+        long[] boundaries = new long[Math.max(n, 1) + 1];
+        int count = 1;
+        for(int k = 1; k < n; k++){
+            long from = Math.max(size * k / n, boundaries[count - 1] + 1);
+            long boundary = nextBoundary(channel, from, size);
+            if(boundary < 0 || boundary >= size) break;
+            boundaries[count++] = boundary;
+        }
+        boundaries[count++] = size;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    /**
+     * Find the first point at or after an offset where a range can start.
+     *
+     * The parameters of an entity are only cleared by a USERDATA line when
+     * there is at least one other parameter, so a range starts after a
+     * USERDATA line that follows another USERDATA line and a parameter.
+     *
+     * @return The offset or -1 if there is none
+     */
+    static long nextBoundary(FileChannel channel, long from, long size) throws IOException{
+        Bytes in = new Bytes(channel, from > 0 ? from - 1 : 0, size);
+
+        //Move to the start of the next line
+        if(from > 0){
+            int c;
+            while((c = in.read()) >= 0 && c != '\n' && c != '\r');
+            if(c < 0) return -1;
+            if(c == '\r' && in.peek() == '\n') in.read();
+        }
+
+        byte[] line = new byte[256];
+        boolean userData = false;
+        boolean parameter = false;
+        while(true){
+            int length = 0;
+            int c;
+            while((c = in.read()) >= 0 && c != '\n' && c != '\r'){
+                if(length == line.length) line = Arrays.copyOf(line, length * 2);
+                line[length++] = (byte) c;
+            }
+            if(c < 0) return -1;
+            if(c == '\r' && in.peek() == '\n') in.read();
+
+            if(LineClassifier.classify(line, 0, length) != LineClassifier.PARAMETER) continue;
+
+            int separator = LineClassifier.separator(line, 0, length);
+            if(separator < 0) continue;
+
+            if(LineClassifier.isUserData(line, 0, separator)){
+                if(userData && parameter) return in.position();
+                userData = true;
+                parameter = false;
+            }else{
+                parameter = true;
+            }
+        }
+    }
+
+    /**
+     * Collect the last context directives of a range by reading it backwards.
+     * The scan stops as soon as all of them have been found.
+     *
+     * @param channel
+     * @param from Start of the range
+     * @param to End of the range. Must be the start of a line.
+     * @return The directives found
+     */
+    static RangeContext scanBackwards(FileChannel channel, long from, long to) throws IOException{
+        RangeContext found = new RangeContext();
+        int blockSize = BLOCK_SIZE;
+        byte[] buf = new byte[blockSize];
+
+        //Lines starting at or after cut have been looked at
+        long cut = to;
+        while(cut > from){
+            long blockStart = Math.max(from, cut - blockSize);
+            int n = (int) (cut - blockStart);
+            if(buf.length < n) buf = new byte[n];
+            readFully(channel, buf, n, blockStart);
+
+            int lineEnd = -1;
+            for(int i = n - 1; i >= 0; i--){
+                if(buf[i] != '\n' && buf[i] != '\r') continue;
+                if(lineEnd > i + 1 && look(found, buf, i + 1, lineEnd - i - 1)) return found;
+                lineEnd = i;
+            }
+
+            if(blockStart == from){
+                if(lineEnd > 0) look(found, buf, 0, lineEnd);
+                return found;
+            }
+
+            //The line the block starts in is looked at with the next block
+            long next = blockStart + lineEnd + 1;
+            if(next == cut){
+                blockSize *= 2;
+            }else{
+                cut = next;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Record a context directive not found yet.
+     *
+     * @return Whether all the directives have been found
+     */
+    private static boolean look(RangeContext found, byte[] line, int offset, int length){
+        int type = LineClassifier.classify(line, offset, length);
+        switch(type){
+            case LineClassifier.SET:
+                if(found.set == null){
+                    found.set = value(line, offset, length, type);
+                }else if(found.prevSet == null){
+                    found.prevSet = value(line, offset, length, type);
+                }
+                break;
+            case LineClassifier.DOMAIN:
+                if(found.domain == null) found.domain = value(line, offset, length, type);
+                break;
+            case LineClassifier.CAPABILITIES:
+                if(found.capabilities == null) found.capabilities = value(line, offset, length, type);
+                break;
+            case LineClassifier.SUBNETWORK:
+                if(found.subnetwork == null) found.subnetwork = value(line, offset, length, type);
+                break;
+            case LineClassifier.UTCTIME:
+                if(found.creationDateTime == null) found.creationDateTime = value(line, offset, length, type);
+                break;
+            default:
+                return false;
+        }
+        return found.isComplete();
+    }
+
+    private static String value(byte[] line, int offset, int length, int type){
+        int valueOffset = LineClassifier.directiveValueOffset(line, offset, length, type);
+        return new String(line, valueOffset, offset + length - valueOffset, StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(FileChannel channel, byte[] buf, int length, long position)
+            throws IOException{
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, length);
+        while(bb.hasRemaining()){
+            if(channel.read(bb, position + bb.position()) < 0) throw new EOFException();
+        }
+    }
+
+    /**
+     * Reads a file forward one byte at a time through a buffer.
+     */
+    private static final class Bytes {
+        private final FileChannel channel;
+        private final long size;
+        private final byte[] buf = new byte[BLOCK_SIZE];
+        private long base;
+        private int pos = 0;
+        private int limit = 0;
+
+        Bytes(FileChannel channel, long start, long size){
+            this.channel = channel;
+            this.base = start;
+            this.size = size;
+        }
+
+        int peek() throws IOException{
+            if(pos == limit && !fill()) return -1;
+            return buf[pos] & 0xff;
+        }
+
+        int read() throws IOException{
+            if(pos == limit && !fill()) return -1;
+            return buf[pos++] & 0xff;
+        }
+
+        /**
+         * Offset in the file of the next byte.
+         */
+        long position(){
+            return base + pos;
+        }
+
+        private boolean fill() throws IOException{
+            base += limit;
+            pos = 0;
+            limit = (int) Math.min(buf.length, size - base);
+            if(limit <= 0){
+                limit = 0;
+                return false;
+            }
+            readFully(channel, buf, limit, base);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Selects the files of an input directory to parse.
+ *
+ * Only regular files are selected, from the directory itself or, when the
+ * selection is recursive, from all its subdirectories. Include and exclude
+ * globs such as "*.txt" or "archive/**" are matched against the file name and
+ * against the path relative to the input directory. An exclude glob matching
+ * a directory name leaves out everything under it. The files are listed by
+ * their relative path, so every run sees them in the same order whatever the
+ * order of the directory entries.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class InputFileSelector {
+
+    private final boolean recursive;
+
+    private final List<PathMatcher> includes = new ArrayList<PathMatcher>();
+
+    private final List<PathMatcher> excludes = new ArrayList<PathMatcher>();
+
+    /**
+     * @param recursive Also select the files of the subdirectories
+     * @param includes Globs of the files to select. All the files when empty.
+     * @param excludes Globs of the files and directories to leave out
+     * @throws IllegalArgumentException if a glob is not valid
+     */
+    InputFileSelector(boolean recursive, List<String> includes, List<String> excludes){
+        this.recursive = recursive;
+        for(String glob : includes) this.includes.add(matcher(glob));
+        for(String glob : excludes) this.excludes.add(matcher(glob));
+    }
+
+    private static PathMatcher matcher(String glob){
+        return FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    }
+
+    /**
+     * Select the files of a directory.
+     *
+     * @param directory
+     * @return The files in the order of their relative paths
+     */
+    List<File> select(Path directory) throws IOException{
+        try(Stream<Path> paths = Files.walk(directory, recursive ? Integer.MAX_VALUE : 1)){
+            return paths.filter(Files::isRegularFile)
+                    .map(directory::relativize)
+                    .filter(this::isSelected)
+                    .sorted()
+                    .map(p -> directory.resolve(p).toFile())
+                    .collect(Collectors.toList());
+        }catch(UncheckedIOException e){
+            //A directory that cannot be read
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Whether a file is selected.
+     *
+     * @param relativePath Path of the file relative to the input directory
+     */
+    boolean isSelected(Path relativePath){
+        for(int i = 0; i < relativePath.getNameCount(); i++){
+            if(matches(excludes, relativePath.getName(i))) return false;
+        }
+        if(matches(excludes, relativePath)) return false;
+
+        return includes.isEmpty() || matches(includes, relativePath.getFileName())
+                || matches(includes, relativePath);
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path path){
+        for(PathMatcher m : matchers){
+            if(m.matches(path)) return true;
+        }
+        return false;
+    }
+}
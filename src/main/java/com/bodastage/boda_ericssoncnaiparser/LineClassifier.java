@@ -0,0 +1,245 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+/**
+ * Classifies the lines of a CNAI v2 dump.
+ *
+ * Directives are recognised from their first characters so that each line is
+ * looked at once, and parameter lines are split on the offset of the first
+ * '=' instead of building an array of parts. Lines can be given as strings or
+ * as ranges of the bytes read from the file.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public final class LineClassifier {
+
+    /**
+     * ..cnai header line
+     */
+    public static final int CNAI = 1;
+
+    /**
+     * ..end line
+     */
+    public static final int END = 2;
+
+    /**
+     * .set directive
+     */
+    public static final int SET = 3;
+
+    /**
+     * .domain directive
+     */
+    public static final int DOMAIN = 4;
+
+    /**
+     * ..capabilities directive
+     */
+    public static final int CAPABILITIES = 5;
+
+    /**
+     * .subnetwork directive
+     */
+    public static final int SUBNETWORK = 6;
+
+    /**
+     * .utctime directive
+     */
+    public static final int UTCTIME = 7;
+
+    /**
+     * Any other line. Expected to be a parameter=value pair.
+     */
+    public static final int PARAMETER = 8;
+
+    /**
+     * Name of the parameter that marks the end of a network entity.
+     */
+    private static final String USERDATA = "USERDATA";
+
+    private LineClassifier(){
+    }
+
+    /**
+     * Get the type of a line.
+     *
+     * @param line
+     * @return One of the line type constants
+     */
+    public static int classify(String line){
+        int length = line.length();
+
+        if(length > 1 && line.charAt(0) == '.'){
+            if(line.charAt(1) == '.'){
+                if(line.startsWith("..cnai")) return CNAI;
+                if(line.startsWith("..end")) return END;
+                if(line.startsWith("..capabilities")) return CAPABILITIES;
+            }else{
+                switch(line.charAt(1)){
+                    case 's':
+                        if(line.startsWith(".set ")) return SET;
+                        if(line.startsWith(".subnetwork")) return SUBNETWORK;
+                        break;
+                    case 'd':
+                        if(line.startsWith(".domain")) return DOMAIN;
+                        break;
+                    case 'u':
+                        if(line.startsWith(".utctime")) return UTCTIME;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        return PARAMETER;
+    }
+
+    /**
+     * Get the value of a directive line, that is everything after the
+     * directive name and the space that follows it.
+     *
+     * @param line
+     * @param type Line type returned by {@link #classify(String)}
+     * @return String
+     */
+    public static String directiveValue(String line, int type){
+        int nameLength = nameLength(type);
+        if(nameLength == 0) return line;
+
+        if(line.length() > nameLength && line.charAt(nameLength) == ' '){
+            nameLength++;
+        }
+        return line.substring(nameLength);
+    }
+
+    /**
+     * Length of the directive name of a line type.
+     */
+    private static int nameLength(int type){
+        switch(type){
+            case SET: return 4;
+            case DOMAIN: return 7;
+            case CAPABILITIES: return 14;
+            case SUBNETWORK: return 11;
+            case UTCTIME: return 8;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Get the offset of the '=' separating a parameter from its value.
+     *
+     * @param line
+     * @return Offset of the separator or -1 if there is none
+     */
+    public static int separator(String line){
+        return line.indexOf('=');
+    }
+
+    /**
+     * Check whether a parameter line is the USERDATA line that ends a network
+     * entity.
+     *
+     * @param line
+     * @param separator Offset returned by {@link #separator(String)}
+     * @return boolean
+     */
+    public static boolean isUserData(String line, int separator){
+        return separator == USERDATA.length() && line.startsWith(USERDATA);
+    }
+
+    /**
+     * Get the type of a line held in a byte array.
+     *
+     * @param line
+     * @param offset Offset of the first byte of the line
+     * @param length Length of the line without the line terminator
+     * @return One of the line type constants
+     */
+    public static int classify(byte[] line, int offset, int length){
+        if(length > 1 && line[offset] == '.'){
+            if(line[offset + 1] == '.'){
+                if(startsWith(line, offset, length, "..cnai")) return CNAI;
+                if(startsWith(line, offset, length, "..end")) return END;
+                if(startsWith(line, offset, length, "..capabilities")) return CAPABILITIES;
+            }else{
+                switch(line[offset + 1]){
+                    case 's':
+                        if(startsWith(line, offset, length, ".set ")) return SET;
+                        if(startsWith(line, offset, length, ".subnetwork")) return SUBNETWORK;
+                        break;
+                    case 'd':
+                        if(startsWith(line, offset, length, ".domain")) return DOMAIN;
+                        break;
+                    case 'u':
+                        if(startsWith(line, offset, length, ".utctime")) return UTCTIME;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        return PARAMETER;
+    }
+
+    /**
+     * Get the offset of the value of a directive line held in a byte array.
+     *
+     * @param line
+     * @param offset
+     * @param length
+     * @param type Line type returned by {@link #classify(byte[], int, int)}
+     * @return Offset of the first byte of the value
+     */
+    public static int directiveValueOffset(byte[] line, int offset, int length, int type){
+        int nameLength = nameLength(type);
+        if(length > nameLength && line[offset + nameLength] == ' '){
+            nameLength++;
+        }
+        return offset + nameLength;
+    }
+
+    /**
+     * Get the offset of the '=' separating a parameter from its value.
+     *
+     * @param line
+     * @param offset
+     * @param length
+     * @return Offset of the separator in the array or -1 if there is none
+     */
+    public static int separator(byte[] line, int offset, int length){
+        for(int i = offset, end = offset + length; i < end; i++){
+            if(line[i] == '=') return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether a parameter line held in a byte array is the USERDATA
+     * line that ends a network entity.
+     *
+     * @param line
+     * @param offset
+     * @param separator Offset returned by {@link #separator(byte[], int, int)}
+     * @return boolean
+     */
+    public static boolean isUserData(byte[] line, int offset, int separator){
+        return separator - offset == USERDATA.length()
+                && startsWith(line, offset, USERDATA.length(), USERDATA);
+    }
+
+    private static boolean startsWith(byte[] line, int offset, int length, String prefix){
+        int n = prefix.length();
+        if(length < n) return false;
+        for(int i = 0; i < n; i++){
+            if(line[offset + i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+/**
+ * Finds the lines in consecutive blocks of bytes.
+ *
+ * Like BufferedReader.readLine, a line ends at '\n', '\r' or "\r\n". A "\r\n"
+ * split between two blocks is handled as one line terminator.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class LineSplitter {
+
+    /**
+     * Whether the last block ended with '\r'.
+     */
+    private boolean skipLF = false;
+
+    /**
+     * Pass the complete lines of a block to a handler.
+     *
+     * @param buf
+     * @param start Offset of the first byte of the line the block continues
+     * @param from Offset of the first byte of the block
+     * @param to Offset after the last byte of the block
+     * @param handler
+     * @return Offset of the first byte of the unfinished last line
+     */
+    int split(byte[] buf, int start, int from, int to, NioLineReader.LineHandler handler){
+        for(int pos = from; pos < to; pos++){
+            byte b = buf[pos];
+            if(skipLF){
+                skipLF = false;
+                if(b == '\n'){
+                    start = pos + 1;
+                    continue;
+                }
+            }
+            if(b == '\n' || b == '\r'){
+                handler.line(buf, start, pos - start);
+                start = pos + 1;
+                skipLF = b == '\r';
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Offset after the last line terminator of a block or -1 if there is none.
+     */
+    static int lastLineEnd(byte[] buf, int from, int to){
+        for(int pos = to - 1; pos >= from; pos--){
+            if(buf[pos] == '\n' || buf[pos] == '\r') return pos + 1;
+        }
+        return -1;
+    }
+}
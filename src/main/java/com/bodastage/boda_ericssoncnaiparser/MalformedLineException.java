@@ -0,0 +1,43 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a run finds as many malformed lines as its limit allows. It
+ * stops the run rather than only the file it was found in.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ * @see MalformedLines
+ */
+public class MalformedLineException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String fileName;
+
+    private final long lineNumber;
+
+    /**
+     * @param fileName File of the last malformed line
+     * @param lineNumber Number of the last malformed line in its file
+     * @param count Number of malformed lines found
+     */
+    public MalformedLineException(String fileName, long lineNumber, long count){
+        super(count == 1 ? "Malformed line " + lineNumber + " in " + fileName
+                : count + " malformed lines, the last at line " + lineNumber + " in " + fileName);
+        this.fileName = fileName;
+        this.lineNumber = lineNumber;
+    }
+
+    public String getFileName(){
+        return fileName;
+    }
+
+    public long getLineNumber(){
+        return lineNumber;
+    }
+}
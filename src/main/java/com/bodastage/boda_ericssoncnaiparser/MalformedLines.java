@@ -0,0 +1,229 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handles the lines of a dump that are neither a directive nor a parameter.
+ *
+ * Malformed lines are counted, and the first {@link #getSampleSize()} of
+ * them are written with their file name and line number to an errors file by
+ * a background thread, so the threads parsing never wait for the file. The
+ * lines after the sample are only counted. A limit stops the run once that
+ * many malformed lines were found, 1 failing at the first one.
+ *
+ * The errors file is a csv file:
+ *
+ * <pre>
+ * FILENAME,LINE,TEXT
+ * cnai_dump.txt,1042,"garbage"
+ * </pre>
+ *
+ * One instance is shared by the sessions of a parser and must be closed to
+ * finish writing the errors file.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public final class MalformedLines implements Closeable {
+
+    /**
+     * Limit of a run that skips every malformed line.
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    /**
+     * Number of malformed lines written to the errors file by default.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 1000;
+
+    private final long limit;
+
+    private final int sampleSize;
+
+    /**
+     * Errors file. Null when the lines are only counted.
+     */
+    private final Path errorsFile;
+
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Writes the sample. Created with the first malformed line.
+     */
+    private ExecutorService errorWriter;
+
+    /**
+     * Only used by the errorWriter thread.
+     */
+    private Writer errors;
+
+    private final CsvRowWriter row = new CsvRowWriter();
+
+    /**
+     * First failure to write the errors file.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Count the malformed lines and skip them.
+     */
+    public MalformedLines(){
+        this(UNLIMITED, 0, null);
+    }
+
+    /**
+     * @param limit Number of malformed lines that stops the run, or UNLIMITED
+     * @param sampleSize Number of malformed lines to write to the errors file
+     * @param errorsFile Errors file. Null to only count the lines.
+     */
+    public MalformedLines(long limit, int sampleSize, Path errorsFile){
+        if(limit < 1){
+            throw new IllegalArgumentException("the malformed line limit must be at least 1");
+        }
+        if(sampleSize < 0){
+            throw new IllegalArgumentException("the error sample size cannot be negative");
+        }
+        this.limit = limit;
+        this.sampleSize = errorsFile == null ? 0 : sampleSize;
+        this.errorsFile = errorsFile;
+    }
+
+    /**
+     * Get the limit of a policy: skip, fail or a number of malformed lines.
+     *
+     * @param policy
+     * @return long
+     */
+    public static long limit(String policy){
+        if(policy.equalsIgnoreCase("skip")) return UNLIMITED;
+        if(policy.equalsIgnoreCase("fail")) return 1;
+        try{
+            long n = Long.parseLong(policy);
+            if(n > 0) return n;
+        }catch(NumberFormatException e){
+            //Reported below
+        }
+        throw new IllegalArgumentException("Unknown malformed line policy: " + policy
+                + ". Use skip, fail or the number of lines to stop after.");
+    }
+
+    public long getLimit(){
+        return limit;
+    }
+
+    public int getSampleSize(){
+        return sampleSize;
+    }
+
+    /**
+     * Number of malformed lines found so far.
+     *
+     * @return long
+     */
+    public long getCount(){
+        return count.get();
+    }
+
+    /**
+     * Handle a malformed line.
+     *
+     * @param fileName File the line was found in
+     * @param lineNumber Number of the line in the file, from 1
+     * @param line
+     * @throws UncheckedIOException holding a {@link MalformedLineException}
+     *         when the limit is reached
+     */
+    void report(String fileName, long lineNumber, String line){
+        long n = count.incrementAndGet();
+        if(n <= sampleSize) sample(fileName, lineNumber, line);
+        if(n >= limit){
+            throw new UncheckedIOException(new MalformedLineException(fileName, lineNumber, n));
+        }
+    }
+
+    /**
+     * Handle a malformed line held in a byte array. The line is only decoded
+     * if it is part of the sample.
+     */
+    void report(String fileName, long lineNumber, byte[] line, int offset, int length){
+        long n = count.incrementAndGet();
+        if(n <= sampleSize){
+            sample(fileName, lineNumber, new String(line, offset, length, StandardCharsets.UTF_8));
+        }
+        if(n >= limit){
+            throw new UncheckedIOException(new MalformedLineException(fileName, lineNumber, n));
+        }
+    }
+
+    private synchronized void sample(String fileName, long lineNumber, String line){
+        if(errorWriter == null){
+            errorWriter = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "cnai-errors");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        errorWriter.execute(() -> write(fileName, lineNumber, line));
+    }
+
+    private void write(String fileName, long lineNumber, String line){
+        if(failure != null) return;
+        try{
+            if(errors == null){
+                errors = Files.newBufferedWriter(errorsFile, StandardCharsets.UTF_8);
+                row.begin().field("FILENAME").field("LINE").field("TEXT").writeTo(errors);
+            }
+            row.begin().csvField(fileName).field(String.valueOf(lineNumber))
+                    .field(quote(line)).writeTo(errors);
+        }catch(IOException e){
+            failure = e;
+        }
+    }
+
+    private static String quote(String s){
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Wait for the sample to be written and close the errors file.
+     *
+     * @throws IOException if the errors file could not be written
+     */
+    @Override
+    public synchronized void close() throws IOException{
+        if(errorWriter == null) return;
+
+        errorWriter.execute(() -> {
+            try{
+                if(errors != null) errors.close();
+                errors = null;
+            }catch(IOException e){
+                if(failure == null) failure = e;
+            }
+        });
+        errorWriter.shutdown();
+        try{
+            errorWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }finally{
+            errorWriter = null;
+        }
+
+        if(failure != null) throw failure;
+    }
+}
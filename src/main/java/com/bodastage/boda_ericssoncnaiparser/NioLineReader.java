@@ -0,0 +1,98 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a file as ranges of bytes.
+ *
+ * The file is read in large chunks through a channel and the lines are found
+ * by scanning the bytes for line terminators, so no characters are decoded
+ * and no strings are created by the reader. Like BufferedReader.readLine, a
+ * line ends at '\n', '\r' or "\r\n".
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public final class NioLineReader implements Closeable {
+
+    /**
+     * Default size of the read buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Receives the lines read.
+     */
+    public interface LineHandler {
+
+        /**
+         * @param line Buffer holding the line. Only valid during the call.
+         * @param offset Offset of the first byte of the line
+         * @param length Length of the line without the line terminator
+         */
+        void line(byte[] line, int offset, int length);
+    }
+
+    private final ReadableByteChannel channel;
+
+    private byte[] buffer;
+
+    public NioLineReader(Path file) throws IOException{
+        this(FileChannel.open(file, StandardOpenOption.READ), DEFAULT_BUFFER_SIZE);
+    }
+
+    public NioLineReader(ReadableByteChannel channel, int bufferSize){
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Read all the lines.
+     *
+     * @param handler
+     */
+    public void forEachLine(LineHandler handler) throws IOException{
+        LineSplitter splitter = new LineSplitter();
+        byte[] buf = buffer;
+        int start = 0;
+        int limit = 0;
+
+        while(true){
+            //Keep the unfinished line at the start of the buffer
+            if(start > 0){
+                System.arraycopy(buf, start, buf, 0, limit - start);
+                limit -= start;
+                start = 0;
+            }
+            if(limit == buf.length){
+                buf = buffer = Arrays.copyOf(buf, buf.length * 2);
+            }
+
+            int n = channel.read(ByteBuffer.wrap(buf, limit, buf.length - limit));
+            if(n < 0) break;
+
+            start = splitter.split(buf, start, limit, limit + n, handler);
+            limit += n;
+        }
+
+        //Last line without a line terminator
+        if(start < limit){
+            handler.line(buf, start, limit - start);
+        }
+    }
+
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+}
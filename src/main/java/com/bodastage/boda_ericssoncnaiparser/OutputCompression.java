@@ -0,0 +1,95 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of the csv files written.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public enum OutputCompression {
+
+    /**
+     * Plain csv files.
+     */
+    NONE(""),
+
+    /**
+     * gzip files with a .csv.gz extension.
+     */
+    GZIP(".gz"),
+
+    /**
+     * zlib deflate streams with a .csv.deflate extension.
+     */
+    DEFLATE(".deflate");
+
+    /**
+     * Size of the compressor's output buffer.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final String suffix;
+
+    OutputCompression(String suffix){
+        this.suffix = suffix;
+    }
+
+    /**
+     * Extension added after .csv to the name of the files.
+     *
+     * @return String
+     */
+    public String suffix(){
+        return suffix;
+    }
+
+    /**
+     * Compress the data written to a stream.
+     *
+     * @param out
+     * @return OutputStream
+     */
+    OutputStream wrap(OutputStream out) throws IOException{
+        switch(this){
+            case GZIP:
+                return new GZIPOutputStream(out, BUFFER_SIZE);
+            case DEFLATE:
+                final Deflater deflater = new Deflater();
+                return new DeflaterOutputStream(out, deflater, BUFFER_SIZE){
+                    @Override
+                    public void close() throws IOException{
+                        try{
+                            super.close();
+                        }finally{
+                            deflater.end();
+                        }
+                    }
+                };
+            default:
+                return out;
+        }
+    }
+
+    /**
+     * Get the compression with the given name, ignoring case.
+     *
+     * @param name none, gzip or deflate
+     * @return OutputCompression
+     */
+    public static OutputCompression fromName(String name){
+        for(OutputCompression c : values()){
+            if(c.name().equalsIgnoreCase(name)) return c;
+        }
+        throw new IllegalArgumentException("Unknown output compression: " + name
+                + ". Use gzip or deflate.");
+    }
+}
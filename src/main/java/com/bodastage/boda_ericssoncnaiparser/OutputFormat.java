@@ -0,0 +1,38 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+/**
+ * Format of the domain files written.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public enum OutputFormat {
+
+    /**
+     * A csv file per domain.
+     */
+    CSV,
+
+    /**
+     * An Apache Arrow IPC file per domain. Needs a build with the arrow
+     * profile.
+     */
+    ARROW;
+
+    /**
+     * Get the format with the given name, ignoring case.
+     *
+     * @param name csv or arrow
+     * @return OutputFormat
+     */
+    public static OutputFormat fromName(String name){
+        for(OutputFormat f : values()){
+            if(f.name().equalsIgnoreCase(name)) return f;
+        }
+        throw new IllegalArgumentException("Unknown output format: " + name
+                + ". Use csv or arrow.");
+    }
+}
@@ -0,0 +1,656 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Parses the files of an input directory on a pool of worker threads.
+ *
+ * Each file is parsed in its own {@link ParseSession} into a shard directory
+ * holding one csv file per domain. The shards are then appended to the domain
+ * csv files in the output directory in the same order the serial parser
+ * processes the files, so the output is the same as that of a serial run.
+ * The files are handed to the workers from the largest to the smallest, so
+ * that the run does not end with a large file parsed alone on one core.
+ *
+ * The csv header of a domain is taken from the first record of the domain in
+ * the run. A shard whose header for a domain differs from the header already
+ * in the output is parsed again with the run's headers before it is merged,
+ * so the files of a directory whose domains start with different parameters
+ * are parsed about twice. A parameter configuration file fixes the headers
+ * and avoids this.
+ *
+ * A file that fails, or any of its ranges, is skipped like in a serial run:
+ * what was parsed before the failure is kept and the run goes on with the
+ * next file. Only a {@link MalformedLineException} stops the run.
+ *
+ * When files are split, a large uncompressed file is cut into ranges by
+ * {@link FileSplitter} and each range is parsed into a shard of its own. The
+ * context a range starts in is found by scanning the previous range
+ * backwards, in parallel with the parsing of the earlier ranges.
+ *
+ * In an incremental run the shards are kept in a {@link ShardCache} instead
+ * of being deleted once merged, and the shard of a file that has not changed
+ * since an earlier run is merged without parsing the file again. Files are
+ * not split in an incremental run.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public class ParallelDirectoryParser {
+
+    /**
+     * Parser holding the run configuration.
+     */
+    private final CnaiParser parser;
+
+    /**
+     * Number of worker threads.
+     */
+    private final int threads;
+
+    /**
+     * Domain csv headers already written to the output directory.
+     */
+    private final Map<String, List<String>> mergedHeaders
+            = new LinkedHashMap<String, List<String>>();
+
+    /**
+     * Number of ranges per worker thread a split file is cut into.
+     */
+    static final int RANGES_PER_THREAD = 4;
+
+    /**
+     * Output domain csv files.
+     */
+    private final Map<String, WritableByteChannel> domainChannels
+            = new LinkedHashMap<String, WritableByteChannel>();
+
+    /**
+     * Opens the compressed output files like a serial run does, on the
+     * background compressor if there is one. Null until the first compressed
+     * file is opened.
+     */
+    private DomainWriters compressedOutput;
+
+    /**
+     * Shards of earlier runs. Null when the run is not incremental.
+     */
+    private final ShardCache cache;
+
+    public ParallelDirectoryParser(CnaiParser parser, int threads){
+        this(parser, threads, null);
+    }
+
+    ParallelDirectoryParser(CnaiParser parser, int threads, ShardCache cache){
+        this.parser = parser;
+        this.threads = threads;
+        this.cache = cache;
+    }
+
+    /**
+     * Parse the files and merge the results into the output directory.
+     *
+     * @param files Files in the order they are to appear in the output
+     * @throws IOException
+     */
+    public void parse(File[] files) throws IOException{
+        final Path shardRoot = cache != null ? null :
+                Files.createTempDirectory(Paths.get(parser.getOutputDirectory()), ".shards");
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try{
+            List<List<Future<Shard>>> results = new ArrayList<List<Future<Shard>>>(
+                    Collections.<List<Future<Shard>>>nCopies(files.length, null));
+            for(int i : largestFirst(files)){
+                final File f = files[i];
+                if(cache != null){
+                    ShardCache.Entry cached = cache.find(f);
+                    if(cached != null){
+                        results.set(i, Collections.<Future<Shard>>singletonList(
+                                CompletableFuture.completedFuture(cachedShard(f, cached))));
+                        continue;
+                    }
+                }
+
+                final String workerDirectory = cache != null ?
+                        cache.newShardDirectory().toString() :
+                        shardRoot.resolve(String.valueOf(i)).toString();
+
+                long[] boundaries = cache != null ? null : split(f);
+                if(boundaries == null){
+                    results.set(i, Collections.<Future<Shard>>singletonList(pool.submit(new Callable<Shard>(){
+                        @Override
+                        public Shard call() throws Exception {
+                            if(cache == null) return parseShard(f, null, workerDirectory, null);
+
+                            //Taken before the parse, so that a file changed
+                            //meanwhile is parsed again in the next run
+                            ShardCache.Entry entry = fingerprint(f, workerDirectory);
+                            Shard shard = parseShard(f, null, workerDirectory, null);
+                            shard.entry = entry;
+                            return shard;
+                        }
+                    })));
+                }else{
+                    results.set(i, submitRanges(pool, f, boundaries, workerDirectory));
+                }
+            }
+
+            //Merge in file order while the remaining files are being parsed
+            for(int i = 0; i < files.length; i++){
+                ParseListener listener = parser.getListener();
+                String baseFileName = BodaCNAIParser.getFileBasename(files[i].getAbsolutePath());
+                listener.fileStarted(baseFileName);
+
+                //Like a serial run, stop at the first range that fails
+                Shard failed = null;
+                boolean unchanged = false;
+                for(Future<Shard> result : results.get(i)){
+                    Shard shard = get(result, files[i]);
+                    if(failed != null) continue;
+                    unchanged |= shard.cached;
+
+                    if(shard.entry != null && !shard.cached && shard.error == null){
+                        shard.entry.domains.addAll(shard.domains);
+                        shard.entry.headers.putAll(shard.headers);
+                        cache.put(shard.file, shard.entry);
+                        shard.kept = true;
+                    }
+
+                    if(!shard.direct && shard.directory != null) merge(shard);
+                    if(shard.error != null) failed = shard;
+                }
+
+                if(failed != null){
+                    //Stops the run, not only the file
+                    if(failed.error instanceof MalformedLineException){
+                        throw (MalformedLineException) failed.error;
+                    }
+                    listener.fileSkipped(baseFileName, failed.error);
+                }else if(unchanged){
+                    listener.fileUnchanged(baseFileName);
+                }else{
+                    listener.fileParsed(baseFileName);
+                }
+            }
+
+            if(cache != null) cache.save();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }finally{
+            pool.shutdownNow();
+            try{
+                //The workers may still be writing to their shard directories
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            closeDomainChannels();
+            if(shardRoot != null) deleteDirectory(shardRoot);
+        }
+    }
+
+    /**
+     * Wait for a shard. A range or a range context scan that failed gives a
+     * shard holding the error, as a file that failed does.
+     */
+    private static Shard get(Future<Shard> result, File f) throws InterruptedException{
+        try{
+            return result.get();
+        }catch(ExecutionException e){
+            Throwable cause = e.getCause();
+            while((cause instanceof UncheckedIOException || cause instanceof CompletionException)
+                    && cause.getCause() != null){
+                cause = cause.getCause();
+            }
+
+            Shard failed = new Shard();
+            failed.file = f;
+            failed.baseFileName = BodaCNAIParser.getFileBasename(f.getAbsolutePath());
+            failed.error = cause instanceof Exception ? (Exception) cause : new IOException(cause);
+            return failed;
+        }
+    }
+
+    /**
+     * Indexes of the files from the largest to the smallest, the order in
+     * which they are parsed. Files of the same size keep their order.
+     */
+    static Integer[] largestFirst(File[] files){
+        final long[] sizes = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for(int i = 0; i < files.length; i++){
+            sizes[i] = files[i].length();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>(){
+            @Override
+            public int compare(Integer a, Integer b){
+                return Long.compare(sizes[b], sizes[a]);
+            }
+        });
+        return order;
+    }
+
+    /**
+     * A shard kept in the cache from an earlier run.
+     */
+    private Shard cachedShard(File f, ShardCache.Entry entry){
+        Shard shard = new Shard();
+        shard.file = f;
+        shard.baseFileName = BodaCNAIParser.getFileBasename(f.getAbsolutePath());
+        shard.directory = cache.shardDirectory(entry);
+        shard.domains.addAll(entry.domains);
+        shard.headers.putAll(entry.headers);
+        shard.entry = entry;
+        shard.cached = true;
+        shard.kept = true;
+        return shard;
+    }
+
+    /**
+     * Cache entry for a file about to be parsed into a shard directory.
+     *
+     * @return ShardCache.Entry or null if the file cannot be read, in which
+     *         case the error is reported when the file is parsed
+     */
+    private static ShardCache.Entry fingerprint(File f, String shardDirectory){
+        try{
+            return new ShardCache.Entry(Paths.get(shardDirectory).getFileName().toString(),
+                    f.length(), f.lastModified(), ShardCache.hash(f.toPath()));
+        }catch(IOException e){
+            return null;
+        }
+    }
+
+    /**
+     * Whether a file is converted straight into the output directory. The
+     * csv file of a CNAI v1 file is its own, so there is nothing to merge,
+     * unless it is kept in the cache. The entries of a zip archive are
+     * recognized one by one, so an archive always gets a shard.
+     */
+    private boolean writesDirectly(File f){
+        if(cache != null) return false;
+        try{
+            return CompressedInput.detect(f.toPath()) != CompressedInput.ZIP && parser.isVersion1(f.toPath());
+        }catch(IOException e){
+            //The error is reported when the file is parsed
+            return false;
+        }
+    }
+
+    /**
+     * Find the ranges to split a file into.
+     *
+     * @param f
+     * @return The range boundaries or null if the file is parsed as a whole
+     */
+    private long[] split(File f){
+        if(!parser.isSplitFiles() || f.length() < 2 * FileSplitter.MIN_RANGE_SIZE) return null;
+
+        try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)){
+            if(CompressedInput.detect(f.toPath()) != CompressedInput.NONE
+                    || parser.isVersion1(f.toPath())) return null;
+
+            long[] boundaries = FileSplitter.split(channel, threads * RANGES_PER_THREAD);
+            return boundaries.length > 2 ? boundaries : null;
+        }catch(IOException e){
+            //The error is reported when the file is parsed
+            return null;
+        }
+    }
+
+    /**
+     * Parse the ranges of a file. The context at the start of each range is
+     * the context after the previous range, folded from the directives found
+     * by scanning each earlier range backwards.
+     */
+    private List<Future<Shard>> submitRanges(ForkJoinPool pool, final File f,
+            final long[] boundaries, final String workerDirectory){
+        List<Future<Shard>> shards = new ArrayList<Future<Shard>>();
+
+        CompletableFuture<RangeContext> context = CompletableFuture.completedFuture(null);
+        for(int r = 0; r + 1 < boundaries.length; r++){
+            final FileRange range = new FileRange(boundaries[r], boundaries[r + 1]);
+            if(r > 0){
+                final long from = boundaries[r - 1];
+                CompletableFuture<RangeContext> found = CompletableFuture.supplyAsync(() -> {
+                    try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)){
+                        return FileSplitter.scanBackwards(channel, from, range.start);
+                    }catch(IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                }, pool);
+                context = context.thenCombine(found, (earlier, directives) -> directives.after(earlier));
+            }
+
+            final String rangeDirectory = workerDirectory + "-" + r;
+            shards.add(context.thenApplyAsync(c -> {
+                range.context = c;
+                try{
+                    return parseShard(f, range, rangeDirectory, null);
+                }catch(IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            }, pool));
+        }
+        return shards;
+    }
+
+    /**
+     * Parse a file or a range of it into a shard directory.
+     *
+     * @param f File to parse
+     * @param range Range of the file to parse. Null to parse the whole file.
+     * @param shardDirectory Directory for the shard's domain csv files
+     * @param seedHeaders Headers to use for the domains already merged. Null
+     *                    to let the worker pick its own headers.
+     * @return Shard
+     */
+    private Shard parseShard(File f, FileRange range, String shardDirectory,
+            Map<String, List<String>> seedHeaders) throws IOException{
+        boolean direct = range == null && seedHeaders == null && writesDirectly(f);
+        if(direct) shardDirectory = parser.getOutputDirectory();
+        Files.createDirectories(Paths.get(shardDirectory));
+
+        DomainWriters output = direct ? parser.newOutput(shardDirectory)
+                : parser.newUncompressedOutput(shardDirectory);
+        if(seedHeaders != null){
+            for(Map.Entry<String, List<String>> e : seedHeaders.entrySet()){
+                output.useHeader(e.getKey(), e.getValue());
+            }
+        }
+
+        Shard shard = new Shard();
+        shard.file = f;
+        shard.direct = direct;
+        shard.range = range;
+        shard.directory = Paths.get(shardDirectory);
+        shard.baseFileName = BodaCNAIParser.getFileBasename(f.getAbsolutePath());
+        try{
+            ParseSession session = parser.newSession(output, shard.baseFileName);
+
+            //A file parsed again with other headers is counted once
+            if(seedHeaders != null) session.metrics = null;
+            if(range == null){
+                session.parse(f.getAbsolutePath());
+            }else{
+                session.parseRange(f.toPath(), range.start, range.end, range.context);
+            }
+        }catch(Exception e){
+            shard.error = e;
+        }finally{
+            shard.domains.addAll(output.domainPWMap.keySet());
+
+            //The csv file of a CNAI v1 file is merged like a domain's
+            shard.domains.addAll(output.version1Files);
+            try{
+                output.close();
+            }catch(IOException e){
+                if(shard.error == null) shard.error = e;
+            }
+        }
+
+        for(String domain : shard.domains){
+            if( (seedHeaders == null || !seedHeaders.containsKey(domain)) &&
+                    Boolean.TRUE.equals(output.domainHeaderAdded.get(domain))){
+                shard.headers.put(domain, output.domainColumnHeaders.get(domain));
+            }
+        }
+
+        return shard;
+    }
+
+    /**
+     * Append a shard to the output domain csv files.
+     *
+     * @param shard
+     */
+    private void merge(Shard shard) throws IOException{
+
+        //The headers of the shard must agree with the ones already written,
+        //also for a file that failed after some of its rows were written: it
+        //fails again at the same place and its rows get the merged columns
+        if(!parser.hasParameters()){
+            for(Map.Entry<String, List<String>> e : shard.headers.entrySet()){
+                List<String> merged = mergedHeaders.get(e.getKey());
+                if(merged != null && !merged.equals(e.getValue())){
+                    Shard reparsed = shard.kept ? reparseCached(shard)
+                            : parseShard(shard.file, shard.range, shard.directory.toString() + "r",
+                                    new LinkedHashMap<String, List<String>>(mergedHeaders));
+                    if(!shard.kept) deleteDirectory(shard.directory);
+                    shard = reparsed;
+                    break;
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        for(String domain : shard.domains){
+            WritableByteChannel out = domainChannels.get(domain);
+            if(out == null){
+                out = openDomainChannel(domain);
+                domainChannels.put(domain, out);
+            }
+
+            Path shardFile = shard.directory.resolve(domain + ".csv");
+
+            //Skip the shard's header line if the domain header is in the output
+            long offset = 0;
+            if(shard.headers.containsKey(domain)){
+                if(mergedHeaders.containsKey(domain)){
+                    offset = headerLength(shardFile);
+                }else{
+                    mergedHeaders.put(domain, shard.headers.get(domain));
+                }
+            }
+
+            try(FileChannel in = FileChannel.open(shardFile, StandardOpenOption.READ)){
+                long size = in.size();
+                while(offset < size){
+                    offset += in.transferTo(offset, size - offset, out);
+                }
+            }
+        }
+
+        ParseMetrics metrics = parser.getMetrics();
+        if(metrics != null) metrics.addStageTime(ParseMetrics.MERGE, System.nanoTime() - start);
+
+        if(!shard.kept) deleteDirectory(shard.directory);
+    }
+
+    /**
+     * Parse a file of the cache again with the headers already merged, unless
+     * it was parsed with the same headers in an earlier run. The shard is
+     * kept in the cache.
+     */
+    private Shard reparseCached(Shard shard) throws IOException{
+        ShardCache.Entry entry = shard.entry;
+        Map<String, List<String>> seeds = new LinkedHashMap<String, List<String>>();
+        for(String domain : shard.domains){
+            if(mergedHeaders.containsKey(domain)) seeds.put(domain, mergedHeaders.get(domain));
+        }
+
+        Path directory = Paths.get(shard.directory.toString() + "r");
+        if(entry.reparse != null && entry.reparse.seeds.equals(seeds)){
+            Shard reparsed = new Shard();
+            reparsed.file = shard.file;
+            reparsed.baseFileName = shard.baseFileName;
+            reparsed.directory = directory;
+            reparsed.domains.addAll(entry.reparse.domains);
+            reparsed.headers.putAll(entry.reparse.headers);
+            reparsed.kept = true;
+            return reparsed;
+        }
+
+        entry.reparse = null;
+        deleteDirectory(directory);
+        Shard reparsed = parseShard(shard.file, shard.range, directory.toString(), seeds);
+        if(reparsed.error == null){
+            entry.reparse = new ShardCache.Reparse(entry.id);
+            entry.reparse.seeds.putAll(seeds);
+            entry.reparse.domains.addAll(reparsed.domains);
+            entry.reparse.headers.putAll(reparsed.headers);
+            reparsed.kept = true;
+        }
+        return reparsed;
+    }
+
+    /**
+     * Open an output domain csv file, compressing it if the run is
+     * compressed. With background compression the merge thread only copies
+     * the shards and the compressor thread compresses them.
+     */
+    private WritableByteChannel openDomainChannel(String domain) throws IOException{
+        OutputCompression compression = parser.getOutputCompression();
+        String domainFile = parser.getOutputDirectory() + File.separatorChar
+                + domain + ".csv" + compression.suffix();
+        if(compression == OutputCompression.NONE){
+            return FileChannel.open(Paths.get(domainFile), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        if(compressedOutput == null){
+            compressedOutput = new DomainWriters(parser.getOutputDirectory(), null,
+                    parser.getWriteBufferSize(), compression, parser.isBackgroundCompression());
+        }
+        return Channels.newChannel(compressedOutput.newOutputStream(domainFile));
+    }
+
+    /**
+     * Length in bytes of the first line of a file including the line separator.
+     */
+    private static long headerLength(Path file) throws IOException{
+        try(InputStream in = Files.newInputStream(file)){
+            long length = 0;
+            byte[] buffer = new byte[8192];
+            for(int n; (n = in.read(buffer)) > 0; ){
+                for(int i = 0; i < n; i++){
+                    if(buffer[i] == '\n') return length + i + 1;
+                }
+                length += n;
+            }
+            return length;
+        }
+    }
+
+    private void closeDomainChannels() throws IOException{
+        IOException failure = null;
+        for(WritableByteChannel channel : domainChannels.values()){
+            try{
+                channel.close();
+            }catch(IOException e){
+                if(failure == null) failure = e;
+            }
+        }
+        domainChannels.clear();
+
+        if(compressedOutput != null){
+            try{
+                compressedOutput.close();
+            }catch(IOException e){
+                if(failure == null) failure = e;
+            }
+            compressedOutput = null;
+        }
+
+        if(failure != null) throw failure;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException{
+        if(!Files.exists(directory)) return;
+        try(Stream<Path> paths = Files.walk(directory)){
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Result of parsing one file.
+     */
+    private static class Shard {
+        File file;
+        FileRange range;
+        String baseFileName;
+        Path directory;
+
+        /**
+         * Domains with a csv file in the shard, in the order they were found.
+         */
+        List<String> domains = new ArrayList<String>();
+
+        /**
+         * Headers of the domain csv files that start with a header line.
+         */
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+
+        Exception error;
+
+        /**
+         * Whether the file was converted straight into the output directory.
+         */
+        boolean direct;
+
+        /**
+         * Cache entry of the shard in an incremental run.
+         */
+        ShardCache.Entry entry;
+
+        /**
+         * Whether the shard was parsed in an earlier run.
+         */
+        boolean cached;
+
+        /**
+         * Whether the shard directory is kept in the cache after the merge.
+         */
+        boolean kept;
+    }
+
+    /**
+     * Part of a file parsed into a shard of its own.
+     */
+    private static class FileRange {
+        final long start;
+        final long end;
+
+        /**
+         * Context directives at the start of the range. Null for the first
+         * range.
+         */
+        volatile RangeContext context;
+
+        FileRange(long start, long end){
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
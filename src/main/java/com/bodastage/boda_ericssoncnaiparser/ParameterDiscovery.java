@@ -0,0 +1,158 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Lists the domains of CNAI v2 dumps and the parameters found in each of
+ * them.
+ *
+ * Only the .domain directives and the names of the parameter lines are read.
+ * Values are never decoded and a name seen before is found in the domain's
+ * {@link SymbolTable} without creating a String, so a scan costs little more
+ * than reading the files. The result is written in the format of the
+ * parameter configuration files, with the context columns first, so that it
+ * can be edited and given back to the parser with -c.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public final class ParameterDiscovery {
+
+    /**
+     * Context columns listed before the parameters of each domain.
+     */
+    static final String[] CONTEXT_COLUMNS = {"capabilities", "subnetwork", "domain", "set"};
+
+    /**
+     * Parameters of each domain, in the order they were found.
+     */
+    private final Map<String, Set<String>> domainParameters
+            = new LinkedHashMap<String, Set<String>>();
+
+    private final Map<String, SymbolTable> domainSymbols
+            = new LinkedHashMap<String, SymbolTable>();
+
+    /**
+     * Parameters and symbols of the current domain. Null before the first
+     * .domain directive of a file.
+     */
+    private Set<String> parameters;
+    private SymbolTable symbols;
+
+    /**
+     * Scan a CNAI dump file, which can be compressed. Each entry of a zip
+     * archive is scanned as a separate file.
+     *
+     * @param file
+     */
+    public void scan(Path file) throws IOException{
+        switch(CompressedInput.detect(file)){
+            case CompressedInput.GZIP:
+                try(InputStream in = new GZIPInputStream(Files.newInputStream(file),
+                        CompressedInput.BUFFER_SIZE)){
+                    scan(in);
+                }
+                return;
+            case CompressedInput.ZIP:
+                try(ZipInputStream zin = new ZipInputStream(new BufferedInputStream(
+                        Files.newInputStream(file), CompressedInput.BUFFER_SIZE))){
+                    for(ZipEntry entry; (entry = zin.getNextEntry()) != null; ){
+                        if(!entry.isDirectory()) scan(zin);
+                    }
+                }
+                return;
+            default:
+                break;
+        }
+
+        parameters = null;
+        try(NioLineReader reader = new NioLineReader(file)){
+            reader.forEachLine(this::line);
+        }
+    }
+
+    /**
+     * Scan decompressed content. The stream is not closed.
+     */
+    private void scan(InputStream in) throws IOException{
+        parameters = null;
+        new NioLineReader(Channels.newChannel(in), CompressedInput.BUFFER_SIZE)
+                .forEachLine(this::line);
+    }
+
+    private void line(byte[] line, int offset, int length){
+        int type = LineClassifier.classify(line, offset, length);
+        if(type == LineClassifier.DOMAIN){
+            int valueOffset = LineClassifier.directiveValueOffset(line, offset, length, type);
+            domain(new String(line, valueOffset, offset + length - valueOffset,
+                    StandardCharsets.UTF_8));
+            return;
+        }
+        if(type != LineClassifier.PARAMETER || parameters == null) return;
+
+        int separator = LineClassifier.separator(line, offset, length);
+        if(separator < 0) return;
+
+        parameters.add(symbols.symbol(line, offset, separator - offset));
+    }
+
+    private void domain(String domain){
+        parameters = domainParameters.get(domain);
+        if(parameters == null){
+            parameters = new LinkedHashSet<String>();
+            domainParameters.put(domain, parameters);
+            domainSymbols.put(domain, new SymbolTable());
+        }
+        symbols = domainSymbols.get(domain);
+    }
+
+    /**
+     * The domains found and their parameters, in the order they were found.
+     *
+     * @return Map of domain to parameter names
+     */
+    public Map<String, Set<String>> getParameters(){
+        return domainParameters;
+    }
+
+    /**
+     * Write a parameter configuration listing the context columns and all
+     * the parameters of each domain found.
+     *
+     * @param w
+     * @see CnaiParser#getParametersToExtract(String)
+     */
+    public void writeConfig(Writer w) throws IOException{
+        StringBuilder line = new StringBuilder();
+        for(Map.Entry<String, Set<String>> e : domainParameters.entrySet()){
+            line.setLength(0);
+            line.append(e.getKey()).append(':');
+            for(int i = 0; i < CONTEXT_COLUMNS.length; i++){
+                if(i > 0) line.append(',');
+                line.append(CONTEXT_COLUMNS[i]);
+            }
+            for(String pName : e.getValue()){
+                line.append(',').append(pName);
+            }
+            line.append('\n');
+            w.write(line.toString());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+/**
+ * Follows the files of a run of {@link CnaiParser#parse(String)}.
+ *
+ * The parser itself prints nothing. The command line gives it a listener
+ * that prints a line per file; an application embedding the parser can log
+ * the files or ignore them. The calls come from the thread that called
+ * parse, in the order of the files in the output, and every method does
+ * nothing by default.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public interface ParseListener {
+
+    /**
+     * A listener that ignores every file.
+     */
+    ParseListener NONE = new ParseListener(){
+    };
+
+    /**
+     * Called before a file is parsed, or before its output is merged in a
+     * parallel run.
+     *
+     * @param fileName File name without its directory
+     */
+    default void fileStarted(String fileName){
+    }
+
+    /**
+     * Called once a file was parsed.
+     *
+     * @param fileName
+     */
+    default void fileParsed(String fileName){
+    }
+
+    /**
+     * Called in an incremental run for a file whose earlier output is
+     * reused.
+     *
+     * @param fileName
+     */
+    default void fileUnchanged(String fileName){
+    }
+
+    /**
+     * Called for a file that failed and is skipped. What was parsed before
+     * the failure is kept and the run goes on with the next file.
+     *
+     * @param fileName
+     * @param error
+     */
+    default void fileSkipped(String fileName, Exception error){
+    }
+
+    /**
+     * Called before two dumps are compared.
+     *
+     * @param oldInput Earlier dump file or directory
+     * @param newInput Later dump file or directory
+     */
+    default void deltaStarted(String oldInput, String newInput){
+    }
+
+    /**
+     * Called once the changes between two dumps were written.
+     *
+     * @param delta
+     */
+    default void deltaFinished(DumpDelta delta){
+    }
+}
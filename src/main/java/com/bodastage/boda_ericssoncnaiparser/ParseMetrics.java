@@ -0,0 +1,355 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timings of the parse runs of a parser.
+ *
+ * Each {@link ParseSession} counts the bytes, lines, records and malformed
+ * lines of its file in plain fields and adds them here every
+ * {@link #FLUSH_LINES} lines and when the file is done, so the counters cost
+ * next to nothing while parsing and can be shared by the worker threads of a
+ * parallel run. Progress of the files being parsed can be printed
+ * periodically with an estimate of the time left, and a JSON report of the
+ * run can be written at the end.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public final class ParseMetrics {
+
+    /**
+     * Number of lines after which a session adds its counts.
+     */
+    static final int FLUSH_LINES = 1 << 16;
+
+    /**
+     * Stage names.
+     */
+    public static final String PARSE = "parse";
+    public static final String MERGE = "merge";
+
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong malformedLines = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+
+    private final Map<String, LongAdder> domainRecords = new ConcurrentHashMap<String, LongAdder>();
+
+    /**
+     * Nanoseconds spent in each stage, summed over the threads.
+     */
+    private final Map<String, LongAdder> stageNanos = new ConcurrentHashMap<String, LongAdder>();
+
+    /**
+     * Files being parsed.
+     */
+    private final Map<FileProgress, Boolean> active = new ConcurrentHashMap<FileProgress, Boolean>();
+
+    /**
+     * Files parsed, in the order they were done.
+     */
+    private final ConcurrentLinkedQueue<FileProgress> done = new ConcurrentLinkedQueue<FileProgress>();
+
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Start tracking a file.
+     *
+     * @param name File name
+     * @param size Bytes to read from the file, compressed or not. -1 if
+     *             unknown.
+     * @return FileProgress to add the file's counts to
+     */
+    FileProgress startFile(String name, long size){
+        FileProgress file = new FileProgress(name, size);
+        active.put(file, Boolean.TRUE);
+        return file;
+    }
+
+    void addRows(long n){
+        rows.addAndGet(n);
+    }
+
+    void addRecords(String domain, long n){
+        LongAdder count = domainRecords.get(domain);
+        if(count == null){
+            count = domainRecords.computeIfAbsent(domain, d -> new LongAdder());
+        }
+        count.add(n);
+    }
+
+    void addStageTime(String stage, long nanos){
+        stageNanos.computeIfAbsent(stage, s -> new LongAdder()).add(nanos);
+    }
+
+    public long getBytes(){
+        return bytes.get();
+    }
+
+    public long getLines(){
+        return lines.get();
+    }
+
+    public long getMalformedLines(){
+        return malformedLines.get();
+    }
+
+    public long getRows(){
+        return rows.get();
+    }
+
+    /**
+     * Records found, over all domains.
+     *
+     * @return long
+     */
+    public long getRecords(){
+        long n = 0;
+        for(LongAdder count : domainRecords.values()){
+            n += count.sum();
+        }
+        return n;
+    }
+
+    /**
+     * Records found in each domain, by domain name.
+     *
+     * @return Map of domain to record count
+     */
+    public Map<String, Long> getDomainRecords(){
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for(Map.Entry<String, LongAdder> e : domainRecords.entrySet()){
+            counts.put(e.getKey(), e.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Milliseconds spent in a stage, summed over the threads.
+     *
+     * @param stage
+     * @return long
+     */
+    public long getStageMillis(String stage){
+        LongAdder nanos = stageNanos.get(stage);
+        return nanos == null ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+    }
+
+    public long getElapsedMillis(){
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Megabytes read per second since the start.
+     *
+     * @return double
+     */
+    public double getThroughput(){
+        long nanos = Math.max(1, System.nanoTime() - startNanos);
+        return bytes.get() / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    /**
+     * Print the progress of the files being parsed at a fixed interval,
+     * until {@link #stopProgress()}.
+     *
+     * @param out Where to print, usually the standard error so the standard
+     *            output is unchanged
+     * @param intervalSeconds
+     */
+    public synchronized void startProgress(PrintStream out, long intervalSeconds){
+        if(reporter != null) return;
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cnai-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(() -> printProgress(out), intervalSeconds,
+                intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopProgress(){
+        if(reporter != null){
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    void printProgress(PrintStream out){
+        for(FileProgress file : active.keySet()){
+            out.println(file.progress());
+        }
+        out.println("Total: " + summary());
+    }
+
+    /**
+     * A one line summary of the counts.
+     *
+     * @return String
+     */
+    public String summary(){
+        return String.format(Locale.ROOT,
+                "%d lines, %d records, %d rows, %d malformed lines, %.1f MB/s",
+                getLines(), getRecords(), getRows(), getMalformedLines(), getThroughput());
+    }
+
+    /**
+     * Write a JSON report of the run.
+     *
+     * @param reportFile
+     */
+    public void writeReport(Path reportFile) throws IOException{
+        long elapsed = getElapsedMillis();
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"startTime\": ").append(startMillis).append(",\n");
+        json.append("  \"elapsedMillis\": ").append(elapsed).append(",\n");
+        json.append("  \"bytes\": ").append(getBytes()).append(",\n");
+        json.append("  \"lines\": ").append(getLines()).append(",\n");
+        json.append("  \"records\": ").append(getRecords()).append(",\n");
+        json.append("  \"rows\": ").append(getRows()).append(",\n");
+        json.append("  \"malformedLines\": ").append(getMalformedLines()).append(",\n");
+        json.append("  \"megabytesPerSecond\": ")
+                .append(String.format(Locale.ROOT, "%.3f", getThroughput())).append(",\n");
+        json.append("  \"linesPerSecond\": ")
+                .append(elapsed == 0 ? 0 : getLines() * 1000 / elapsed).append(",\n");
+
+        json.append("  \"stageMillis\": {");
+        List<String> stages = new ArrayList<String>(new TreeMap<String, LongAdder>(stageNanos).keySet());
+        for(int i = 0; i < stages.size(); i++){
+            json.append(i == 0 ? "" : ",").append("\n    ");
+            string(json, stages.get(i)).append(": ").append(getStageMillis(stages.get(i)));
+        }
+        json.append(stages.isEmpty() ? "},\n" : "\n  },\n");
+
+        json.append("  \"domainRecords\": {");
+        int i = 0;
+        for(Map.Entry<String, Long> e : getDomainRecords().entrySet()){
+            json.append(i++ == 0 ? "" : ",").append("\n    ");
+            string(json, e.getKey()).append(": ").append(e.getValue());
+        }
+        json.append(i == 0 ? "},\n" : "\n  },\n");
+
+        json.append("  \"files\": [");
+        i = 0;
+        for(FileProgress file : done){
+            json.append(i++ == 0 ? "" : ",").append("\n    {\"name\": ");
+            string(json, file.name)
+                    .append(", \"bytes\": ").append(file.bytes.get())
+                    .append(", \"lines\": ").append(file.lines.get())
+                    .append(", \"records\": ").append(file.records.get())
+                    .append(", \"millis\": ").append(file.millis).append("}");
+        }
+        json.append(i == 0 ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+
+        try(Writer w = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)){
+            w.write(json.toString());
+        }
+    }
+
+    private static StringBuilder string(StringBuilder json, String s){
+        json.append('"');
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if(c == '"' || c == '\\'){
+                json.append('\\').append(c);
+            }else if(c < 0x20){
+                json.append(String.format("\\u%04x", (int) c));
+            }else{
+                json.append(c);
+            }
+        }
+        return json.append('"');
+    }
+
+    /**
+     * Counts of a file being parsed.
+     */
+    final class FileProgress {
+
+        final String name;
+
+        /**
+         * Bytes to read or -1 if unknown.
+         */
+        final long size;
+
+        final long startNanos = System.nanoTime();
+
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong lines = new AtomicLong();
+        final AtomicLong records = new AtomicLong();
+
+        volatile long millis;
+
+        FileProgress(String name, long size){
+            this.name = name;
+            this.size = size;
+        }
+
+        /**
+         * Add counts of the file and of the run.
+         */
+        void add(long byteCount, long lineCount, long recordCount, long malformed){
+            bytes.addAndGet(byteCount);
+            lines.addAndGet(lineCount);
+            records.addAndGet(recordCount);
+            ParseMetrics.this.bytes.addAndGet(byteCount);
+            ParseMetrics.this.lines.addAndGet(lineCount);
+            if(malformed > 0) malformedLines.addAndGet(malformed);
+        }
+
+        void finish(){
+            millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            active.remove(this);
+            done.add(this);
+        }
+
+        /**
+         * Progress line: percentage, throughput and time left when the size
+         * is known.
+         */
+        String progress(){
+            long read = bytes.get();
+            double seconds = Math.max(1, System.nanoTime() - startNanos) / 1e9;
+            double rate = read / seconds;
+            StringBuilder s = new StringBuilder(name).append(": ");
+            if(size > 0){
+                s.append(String.format(Locale.ROOT, "%d%% ", Math.min(100, read * 100 / size)));
+            }
+            s.append(String.format(Locale.ROOT, "%d lines, %.1f MB/s",
+                    lines.get(), rate / (1024 * 1024)));
+            if(size > 0 && rate > 0){
+                long left = (long) (Math.max(0, size - read) / rate);
+                s.append(String.format(Locale.ROOT, ", ETA %d:%02d:%02d",
+                        left / 3600, (left / 60) % 60, left % 60));
+            }
+            return s.toString();
+        }
+    }
+}
@@ -0,0 +1,599 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Parsing state of one CNAI dump file.
+ *
+ * A session keeps the context directives (.domain, .set, .subnetwork, ...)
+ * read so far and the parameters of the network entity being collected. The
+ * collected records are handed to a {@link RecordSink}, usually the domain
+ * csv files of the run the session belongs to.
+ *
+ * gzip files and zip archives are recognized by their first bytes and
+ * decompressed while they are parsed, on a thread of their own. Each entry of
+ * a zip archive is parsed as a separate file named after the entry.
+ *
+ * Parameter names and short values are taken from a {@link SymbolTable} per
+ * domain, so that the Strings of those that repeat are shared.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public class ParseSession {
+
+    /**
+     * Parser configuration.
+     */
+    private final CnaiParser parser;
+
+    /**
+     * Domain csv files of the run. Null when the records go to another sink.
+     */
+    private final DomainWriters output;
+
+    /**
+     * Name of the CNAI dump file. Written to the FILENAME column.
+     */
+    String cnaiExportFile;
+
+    /**
+     * The capabilities value in the CNAI dump file.
+     */
+    String capabilities;
+
+    /**
+     * The time and date the file was generated.
+     */
+    String creationDateTime;
+
+    /**
+     * The subnetwork value.
+     */
+    String subnetwork;
+
+    /**
+     * The entity identifier.
+     */
+    String set;
+
+    /**
+     * The previous set value
+     */
+    String prevSet;
+
+    /**
+     * The domain value.
+     */
+    String domain;
+
+    /**
+     * Symbol table of each domain.
+     */
+    private final Map<String, SymbolTable> domainSymbols
+            = new HashMap<String, SymbolTable>();
+
+    /**
+     * Symbol table of the current domain.
+     */
+    private SymbolTable symbols = new SymbolTable();
+
+    /**
+     * The parameters collected for the current network entity, handed to the
+     * sink.
+     */
+    private CnaiRecord record = new CnaiRecord(CnaiRecord.INITIAL_CAPACITY);
+
+    /**
+     * Whether the parameters collected have more than one name.
+     */
+    private boolean severalNames = false;
+
+    /**
+     * Where the domains and records found are sent.
+     */
+    RecordSink sink;
+
+    /**
+     * Whether the sink keeps the records it is given, so that each record
+     * needs its own parameter map.
+     */
+    boolean sinkRetainsRecords = false;
+
+    /**
+     * Counters of the run. Null when the session is not counted.
+     */
+    ParseMetrics metrics;
+
+    /**
+     * Counts of the file being parsed. Null outside parse and parseRange.
+     */
+    private ParseMetrics.FileProgress progress;
+
+    /**
+     * Bytes read from the file or range. Null when the session is not
+     * counted.
+     */
+    private ReadCounter readCounter;
+
+    /**
+     * Lines, malformed lines and records of the current domain not yet
+     * added to the metrics.
+     */
+    private int lineCount = 0;
+    private long malformedCount = 0;
+    private long recordCount = 0;
+
+    /**
+     * Name of the file or range being parsed, for the malformed lines.
+     */
+    private String sourceName;
+
+    /**
+     * Number of the current line in the file or range.
+     */
+    private long lineNumber = 0;
+
+    /**
+     * Rows of the output when the file was started.
+     */
+    private long rowsAtStart;
+
+    private long startNanos;
+
+    ParseSession(CnaiParser parser, RecordSink sink, String cnaiExportFile){
+        this.parser = parser;
+        this.output = sink instanceof DomainWriters ? (DomainWriters) sink : null;
+        this.sink = sink;
+        this.cnaiExportFile = cnaiExportFile;
+        this.metrics = parser.getMetrics();
+        this.sourceName = cnaiExportFile;
+
+        //Other sinks are free to keep the records
+        this.sinkRetainsRecords = output == null;
+    }
+
+    /**
+     * Parse a CNAI dump file, which can be compressed.
+     *
+     * @param inputFilename
+     */
+    public void parse(String inputFilename) throws FileNotFoundException, IOException{
+        try{
+            parseFile(inputFilename);
+        }catch(UncheckedIOException e){
+            //Failure to write a domain csv file
+            throw e.getCause();
+        }finally{
+            finishMetrics();
+        }
+    }
+
+    private void parseFile(String inputFilename) throws IOException{
+        Path file = Paths.get(inputFilename);
+        int compression = CompressedInput.detect(file);
+        //The progress of compressed files is that of the compressed bytes,
+        //their decompressed size is not known
+        if(metrics != null) startMetrics(sourceName, Files.size(file));
+
+        switch(compression){
+            case CompressedInput.GZIP:
+                try(InputStream in = new GZIPInputStream(counted(Files.newInputStream(file)),
+                        CompressedInput.BUFFER_SIZE)){
+                    parseStream(in, inputFilename);
+                }
+                return;
+            case CompressedInput.ZIP:
+                parseZip(file);
+                return;
+            default:
+                break;
+        }
+
+        //Parse CNAIV1
+        if(parser.isVersion1(CnaiVersion.detect(file))){
+            parseCNAIVersion1File(inputFilename);
+            return;
+        }
+
+        if(parser.isPipelined()){
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+                new PipelinedParse(this, sink).parse(counted(channel));
+            }
+            return;
+        }
+
+        if(parser.isNioReader()){
+            try(NioLineReader reader = new NioLineReader(
+                    counted(FileChannel.open(file, StandardOpenOption.READ)),
+                    NioLineReader.DEFAULT_BUFFER_SIZE)){
+                reader.forEachLine(this::processLine);
+            }
+            return;
+        }
+
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(
+                counted(Files.newInputStream(file)), StandardCharsets.UTF_8))){
+            for(String line; (line = br.readLine()) != null; ) {
+                processLine(line);
+            }
+        }
+    }
+
+    /**
+     * Parse a range of a CNAI dump file that starts with a new network
+     * entity. The range is read with the byte level reader.
+     *
+     * @param file
+     * @param start Offset of the first line of the range
+     * @param end Offset after the last line of the range
+     * @param context Context directives in force at the start of the range.
+     *                Null at the start of the file.
+     */
+    void parseRange(Path file, long start, long end, RangeContext context) throws IOException{
+        //Line numbers start at the start of the range
+        sourceName = cnaiExportFile + "@" + start;
+        startMetrics(sourceName, end - start);
+        if(context != null){
+            capabilities = context.capabilities;
+            creationDateTime = context.creationDateTime;
+            subnetwork = context.subnetwork;
+            set = context.set;
+            prevSet = context.prevSet;
+            domain = context.domain;
+            if(domain != null){
+                symbols = symbols(domain);
+                sink.openDomain(domain);
+            }
+        }
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            channel.position(start);
+            ReadableByteChannel range = new ReadableByteChannel(){
+                long remaining = end - start;
+
+                @Override
+                public int read(ByteBuffer dst) throws IOException{
+                    if(remaining <= 0) return -1;
+                    int limit = dst.limit();
+                    if(dst.remaining() > remaining){
+                        dst.limit(dst.position() + (int) remaining);
+                    }
+                    int n = channel.read(dst);
+                    dst.limit(limit);
+                    if(n > 0) remaining -= n;
+                    return n;
+                }
+
+                @Override
+                public boolean isOpen(){
+                    return channel.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException{
+                    channel.close();
+                }
+            };
+            new NioLineReader(counted(range), NioLineReader.DEFAULT_BUFFER_SIZE).forEachLine(this::processLine);
+        }catch(UncheckedIOException e){
+            //Failure to write a domain csv file
+            throw e.getCause();
+        }finally{
+            finishMetrics();
+        }
+    }
+
+    /**
+     * Parse each entry of a zip archive in a session of its own.
+     */
+    private void parseZip(Path file) throws IOException{
+        try(ZipInputStream zin = new ZipInputStream(new BufferedInputStream(
+                counted(Files.newInputStream(file)), CompressedInput.BUFFER_SIZE))){
+            for(ZipEntry entry; (entry = zin.getNextEntry()) != null; ){
+                if(entry.isDirectory()) continue;
+
+                String entryName = BodaCNAIParser.getFileBasename(entry.getName());
+                ParseSession entrySession = new ParseSession(parser, sink, entryName);
+                entrySession.progress = progress;
+                entrySession.readCounter = readCounter;
+                try{
+                    entrySession.parseStream(zin, entryName);
+                }finally{
+                    entrySession.flushMetrics();
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse decompressed content. The stream is not closed.
+     *
+     * @param in
+     * @param inputFilename Name of the decompressed file
+     */
+    private void parseStream(InputStream in, String inputFilename) throws IOException{
+        in = new BufferedInputStream(in, CompressedInput.BUFFER_SIZE);
+        boolean version1 = parser.isVersion1(CnaiVersion.detect(in));
+
+        //The pipeline decompresses on its reader thread
+        if(parser.isPipelined() && !version1){
+            new PipelinedParse(this, sink).parse(Channels.newChannel(in));
+            return;
+        }
+
+        try(ReadAheadInputStream ahead = new ReadAheadInputStream(in)){
+            if(version1){
+                parseVersion1(Channels.newChannel(ahead), inputFilename);
+                return;
+            }
+
+            if(parser.isNioReader()){
+                new NioLineReader(Channels.newChannel(ahead),
+                        NioLineReader.DEFAULT_BUFFER_SIZE).forEachLine(this::processLine);
+                return;
+            }
+
+            BufferedReader br = new BufferedReader(new InputStreamReader(ahead,
+                    StandardCharsets.UTF_8));
+            for(String line; (line = br.readLine()) != null; ) {
+                processLine(line);
+            }
+        }
+    }
+
+    public void parseCNAIVersion1File(String inputFilename) throws FileNotFoundException, IOException{
+        try(ReadableByteChannel channel = counted(
+                FileChannel.open(Paths.get(inputFilename), StandardOpenOption.READ))){
+            parseVersion1(channel, inputFilename);
+        }
+    }
+
+    /**
+     * Convert a CNAI v1 file to a csv file of the same name. The file is
+     * skipped when the records go to another sink. The channel is not
+     * closed.
+     */
+    private void parseVersion1(ReadableByteChannel in, String inputFilename) throws IOException{
+        if(output == null){
+            parser.skipVersion1(BodaCNAIParser.getFileBasename(inputFilename));
+            return;
+        }
+
+        try(OutputStream out = output.openVersion1File(inputFilename)){
+            Version1Converter converter = new Version1Converter(out);
+            new NioLineReader(in, NioLineReader.DEFAULT_BUFFER_SIZE).forEachLine((line, offset, length) -> {
+                countLine();
+                converter.line(line, offset, length);
+            });
+            converter.flush();
+        }
+    }
+
+    /**
+     * Holds the parser logic.
+     *
+     * @param line  String
+     */
+    public void processLine(String line){
+        countLine();
+        int type = LineClassifier.classify(line);
+        if(type != LineClassifier.PARAMETER){
+            processDirective(type, LineClassifier.directiveValue(line, type));
+            return;
+        }
+
+        //Start collecting parameters and their values
+        int separator = LineClassifier.separator(line);
+
+        if ( separator < 0 ){
+            malformedCount++;
+            parser.getMalformedLines().report(sourceName, lineNumber, line);
+            return;
+        }
+
+        int length = line.length();
+        String name = symbols.symbol(line, 0, separator);
+        String value = symbols.value(line, separator + 1, length);
+        processParameter(name, value, LineClassifier.isUserData(line, separator));
+    }
+
+    /**
+     * Holds the parser logic for a line held in a byte array.
+     *
+     * When the records go to the domain csv files, only the values that can
+     * be written are decoded. Other sinks get every value, as on the String
+     * path.
+     *
+     * @param line
+     * @param offset Offset of the first byte of the line
+     * @param length Length of the line
+     */
+    public void processLine(byte[] line, int offset, int length){
+        countLine();
+        int type = LineClassifier.classify(line, offset, length);
+        if(type != LineClassifier.PARAMETER){
+            if(type == LineClassifier.CNAI || type == LineClassifier.END) return;
+
+            int valueOffset = LineClassifier.directiveValueOffset(line, offset, length, type);
+            processDirective(type, decode(line, valueOffset, offset + length - valueOffset));
+            return;
+        }
+
+        //Start collecting parameters and their values
+        int separator = LineClassifier.separator(line, offset, length);
+
+        if ( separator < 0 ){
+            malformedCount++;
+            parser.getMalformedLines().report(sourceName, lineNumber, line, offset, length);
+            return;
+        }
+
+        String name = symbols.symbol(line, offset, separator - offset);
+        String value = null;
+        if(output == null || parser.isWritten(domain, name)){
+            value = symbols.value(line, separator + 1, offset + length - separator - 1);
+        }
+        processParameter(name, value, LineClassifier.isUserData(line, offset, separator));
+    }
+
+    private void countLine(){
+        lineNumber++;
+        if(++lineCount == ParseMetrics.FLUSH_LINES) flushMetrics();
+    }
+
+    /**
+     * Start counting a file or range if the run is counted.
+     *
+     * @param name
+     * @param size Bytes to read, -1 if unknown
+     */
+    private void startMetrics(String name, long size){
+        if(metrics == null) return;
+        progress = metrics.startFile(name, size);
+        readCounter = new ReadCounter();
+        rowsAtStart = output != null ? output.rows : 0;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Add the counts not yet added to the metrics.
+     */
+    private void flushMetrics(){
+        if(progress != null){
+            progress.add(readCounter.take(), lineCount, recordCount, malformedCount);
+            if(recordCount > 0) metrics.addRecords(String.valueOf(domain), recordCount);
+        }
+        lineCount = 0;
+        malformedCount = 0;
+        recordCount = 0;
+    }
+
+    /**
+     * Count the bytes read from a file if the session is counted.
+     */
+    private InputStream counted(InputStream in){
+        return readCounter != null ? readCounter.count(in) : in;
+    }
+
+    private ReadableByteChannel counted(ReadableByteChannel channel){
+        return readCounter != null ? readCounter.count(channel) : channel;
+    }
+
+    private void finishMetrics(){
+        if(progress == null) return;
+        flushMetrics();
+        if(output != null) metrics.addRows(output.rows - rowsAtStart);
+        metrics.addStageTime(ParseMetrics.PARSE, System.nanoTime() - startNanos);
+        progress.finish();
+        progress = null;
+    }
+
+    private static String decode(byte[] bytes, int offset, int length){
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private void processDirective(int type, String value){
+        switch(type){
+            //If a ".set " is encounted,
+            case LineClassifier.SET:
+                prevSet = set;
+                set = value;
+                return;
+
+            //Get domain
+            case LineClassifier.DOMAIN:
+                //The records counted so far belong to the previous domain
+                if(recordCount > 0) flushMetrics();
+                domain = value;
+                symbols = symbols(domain);
+                sink.openDomain(domain);
+                return;
+
+            //Get capabilities
+            case LineClassifier.CAPABILITIES:
+                capabilities = value;
+                return;
+
+            //Get subnetwork
+            case LineClassifier.SUBNETWORK:
+                subnetwork = value;
+                return;
+
+            //Get generation date and time
+            case LineClassifier.UTCTIME:
+                creationDateTime = value;
+                return;
+
+            //Handle first and last line
+            default:
+                return;
+        }
+    }
+
+    private SymbolTable symbols(String domain){
+        SymbolTable table = domainSymbols.get(domain);
+        if(table == null){
+            table = new SymbolTable();
+            domainSymbols.put(domain, table);
+        }
+        return table;
+    }
+
+    private void processParameter(String name, String value, boolean userData){
+        //Get parameter value
+        if(!severalNames && record.size > 0 && !name.equals(record.names[0])){
+            severalNames = true;
+        }
+        record.add(name, value);
+
+        //USERDATA make end of section
+        if(userData){
+
+            //Write parameter s from previous network entity to domain csv file.
+            if( severalNames ){
+                record.fileName = cnaiExportFile;
+                record.dateTime = creationDateTime;
+                record.capabilities = capabilities;
+                record.subnetwork = subnetwork;
+                record.domain = domain;
+                record.set = prevSet;
+                sink.write(record);
+                recordCount++;
+
+                //clear the parameters
+                if(sinkRetainsRecords){
+                    record = new CnaiRecord(record.names.length);
+                }else{
+                    record.clear();
+                }
+                severalNames = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a file in three stages running on their own threads.
+ *
+ * A reader thread reads the file in chunks that end at a line boundary. The
+ * calling thread splits the chunks into lines and collects the records in the
+ * session. A writer thread formats the records and writes them to the domain
+ * csv files. The stages are connected by bounded queues so that at most a few
+ * chunks and record batches are held in memory at a time, and the chunk
+ * buffers go back to the reader once they are parsed.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class PipelinedParse {
+
+    /**
+     * Size of the chunks read from the file.
+     */
+    static final int CHUNK_SIZE = 1 << 20;
+
+    /**
+     * Number of chunks that can wait to be parsed.
+     */
+    static final int CHUNK_QUEUE_SIZE = 4;
+
+    /**
+     * Number of domains and records sent to the writer at a time.
+     */
+    static final int BATCH_SIZE = 256;
+
+    /**
+     * Number of batches that can wait to be written.
+     */
+    static final int BATCH_QUEUE_SIZE = 16;
+
+    /**
+     * Marks the end of the file in the chunk queue.
+     */
+    private static final Chunk END_OF_FILE = new Chunk(new byte[0], 0);
+
+    /**
+     * Marks the end of the records in the batch queue.
+     */
+    private static final List<Object> END_OF_RECORDS = new ArrayList<Object>();
+
+    private final ParseSession session;
+
+    private final RecordSink output;
+
+    private final BlockingQueue<Chunk> chunks
+            = new ArrayBlockingQueue<Chunk>(CHUNK_QUEUE_SIZE);
+
+    private final BlockingQueue<List<Object>> batches
+            = new ArrayBlockingQueue<List<Object>>(BATCH_QUEUE_SIZE);
+
+    /**
+     * Chunk buffers that were parsed, for the reader to fill again. One more
+     * than the queue can hold is being parsed and one is being read.
+     */
+    private final BlockingQueue<byte[]> freeBuffers
+            = new ArrayBlockingQueue<byte[]>(CHUNK_QUEUE_SIZE + 2);
+
+    /**
+     * First error raised by the reader or the writer.
+     */
+    private volatile Throwable failure;
+
+    PipelinedParse(ParseSession session, RecordSink output){
+        this.session = session;
+        this.output = output;
+    }
+
+    /**
+     * Parse the content of a channel. The channel is not closed.
+     *
+     * @param channel
+     */
+    void parse(final ReadableByteChannel channel) throws IOException{
+        Thread reader = new Thread(new Runnable(){
+            @Override
+            public void run(){
+                read(channel);
+            }
+        }, "cnai-reader");
+
+        Thread writer = new Thread(new Runnable(){
+            @Override
+            public void run(){
+                write();
+            }
+        }, "cnai-writer");
+
+        RecordSink sessionSink = session.sink;
+        boolean sessionRetains = session.sinkRetainsRecords;
+        BatchSink batchSink = new BatchSink();
+        session.sink = batchSink;
+        session.sinkRetainsRecords = true;
+
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+
+        boolean done = false;
+        try{
+            LineSplitter splitter = new LineSplitter();
+            for(Chunk chunk = take(); chunk != END_OF_FILE; chunk = take()){
+                int start = splitter.split(chunk.data, 0, 0, chunk.length, session::processLine);
+
+                //Only the last chunk can end without a line terminator
+                if(start < chunk.length){
+                    session.processLine(chunk.data, start, chunk.length - start);
+                }
+                freeBuffers.offer(chunk.data);
+            }
+
+            batchSink.flush();
+            put(END_OF_RECORDS);
+            writer.join();
+            done = true;
+        }catch(PipelineException e){
+            throw (IOException) e.getCause();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }finally{
+            session.sink = sessionSink;
+            session.sinkRetainsRecords = sessionRetains;
+            if(!done){
+                reader.interrupt();
+                writer.interrupt();
+            }
+
+            //The output must not be written once the caller goes on to close it
+            joinUninterruptibly(writer);
+            joinUninterruptibly(reader);
+        }
+
+        if(failure != null) throw asIOException(failure);
+    }
+
+    private static void joinUninterruptibly(Thread t){
+        boolean interrupted = false;
+        while(true){
+            try{
+                t.join();
+                break;
+            }catch(InterruptedException e){
+                interrupted = true;
+            }
+        }
+        if(interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * A buffer of at least the given size, reusing a parsed chunk's buffer
+     * when there is one.
+     */
+    private byte[] buffer(int size){
+        byte[] buf = freeBuffers.poll();
+        return buf != null && buf.length >= size ? buf : new byte[size];
+    }
+
+    /**
+     * Reader stage.
+     */
+    private void read(ReadableByteChannel channel){
+        try{
+            byte[] buf = buffer(CHUNK_SIZE);
+            int limit = 0;
+            while(true){
+                boolean endOfFile = false;
+                while(limit < buf.length){
+                    int n = channel.read(ByteBuffer.wrap(buf, limit, buf.length - limit));
+                    if(n < 0){
+                        endOfFile = true;
+                        break;
+                    }
+                    limit += n;
+                }
+
+                if(endOfFile){
+                    if(limit > 0) chunks.put(new Chunk(buf, limit));
+                    chunks.put(END_OF_FILE);
+                    return;
+                }
+
+                //A line longer than the buffer
+                int end = LineSplitter.lastLineEnd(buf, 0, limit);
+                if(end < 0){
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                    continue;
+                }
+
+                //Hand over the complete lines and start the next chunk with
+                //the rest
+                byte[] next = buffer(Math.max(CHUNK_SIZE, (limit - end) * 2));
+                System.arraycopy(buf, end, next, 0, limit - end);
+                chunks.put(new Chunk(buf, end));
+                buf = next;
+                limit -= end;
+            }
+        }catch(InterruptedException e){
+            //The parse has been stopped
+        }catch(Throwable t){
+            fail(t);
+        }
+    }
+
+    /**
+     * Writer stage.
+     */
+    private void write(){
+        try{
+            for(List<Object> batch = batches.take(); batch != END_OF_RECORDS; batch = batches.take()){
+                for(Object o : batch){
+                    if(o instanceof CnaiRecord){
+                        output.write((CnaiRecord) o);
+                    }else{
+                        output.openDomain((String) o);
+                    }
+                }
+            }
+        }catch(InterruptedException e){
+            //The parse has been stopped
+        }catch(Throwable t){
+            fail(t);
+        }
+    }
+
+    private void fail(Throwable t){
+        if(failure == null) failure = t;
+    }
+
+    /**
+     * Take the next chunk, giving up if the reader or writer failed.
+     */
+    private Chunk take() throws IOException, InterruptedException{
+        while(true){
+            Chunk chunk = chunks.poll(100, TimeUnit.MILLISECONDS);
+            if(chunk != null) return chunk;
+            if(failure != null) throw asIOException(failure);
+        }
+    }
+
+    /**
+     * Queue a batch for the writer, giving up if the reader or writer failed.
+     */
+    private void put(List<Object> batch) throws IOException{
+        try{
+            while(!batches.offer(batch, 100, TimeUnit.MILLISECONDS)){
+                if(failure != null) throw asIOException(failure);
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static IOException asIOException(Throwable t){
+        if(t instanceof UncheckedIOException) return ((UncheckedIOException) t).getCause();
+        return t instanceof IOException ? (IOException) t : new IOException(t);
+    }
+
+    /**
+     * Block of complete lines.
+     */
+    private static final class Chunk {
+        final byte[] data;
+        final int length;
+
+        Chunk(byte[] data, int length){
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Collects the session's domains and records in batches for the writer.
+     */
+    private final class BatchSink implements RecordSink {
+        private List<Object> batch = new ArrayList<Object>(BATCH_SIZE);
+
+        @Override
+        public void openDomain(String domain){
+            add(domain);
+        }
+
+        @Override
+        public void write(CnaiRecord record){
+            add(record);
+        }
+
+        private void add(Object o){
+            batch.add(o);
+            if(batch.size() == BATCH_SIZE){
+                flush();
+            }
+        }
+
+        void flush(){
+            if(batch.isEmpty()) return;
+            try{
+                put(batch);
+            }catch(IOException e){
+                throw new PipelineException(e);
+            }
+            batch = new ArrayList<Object>(BATCH_SIZE);
+        }
+    }
+
+    /**
+     * Carries a failure of a later stage out of the session.
+     */
+    private static final class PipelineException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        PipelineException(IOException cause){
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+/**
+ * The context directives in force at some point of a CNAI dump file.
+ *
+ * Also used for the directives found in a part of a file, in which case a
+ * null value means the directive was not found there.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class RangeContext {
+
+    String capabilities;
+
+    String creationDateTime;
+
+    String subnetwork;
+
+    String domain;
+
+    /**
+     * The last .set value.
+     */
+    String set;
+
+    /**
+     * The .set value before the last one.
+     */
+    String prevSet;
+
+    /**
+     * Whether all the directives have been found.
+     */
+    boolean isComplete(){
+        return capabilities != null && creationDateTime != null && subnetwork != null
+                && domain != null && set != null && prevSet != null;
+    }
+
+    /**
+     * The context after the part of the file these directives were found in.
+     *
+     * @param earlier Context at the start of the part. Null at the start of
+     *                the file.
+     * @return RangeContext
+     */
+    RangeContext after(RangeContext earlier){
+        if(earlier == null) return this;
+
+        RangeContext c = new RangeContext();
+        c.capabilities = capabilities != null ? capabilities : earlier.capabilities;
+        c.creationDateTime = creationDateTime != null ? creationDateTime : earlier.creationDateTime;
+        c.subnetwork = subnetwork != null ? subnetwork : earlier.subnetwork;
+        c.domain = domain != null ? domain : earlier.domain;
+        if(set != null){
+            c.set = set;
+            c.prevSet = prevSet != null ? prevSet : earlier.set;
+        }else{
+            c.set = earlier.set;
+            c.prevSet = earlier.prevSet;
+        }
+        return c;
+    }
+}
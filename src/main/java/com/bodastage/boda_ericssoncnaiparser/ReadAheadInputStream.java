@@ -0,0 +1,184 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads an input stream on a background thread.
+ *
+ * The source is read in chunks that are handed over through a bounded queue,
+ * so that the work done by the source, such as inflating a compressed file,
+ * overlaps with the work done by the reader of this stream. The chunk
+ * buffers that were read are handed back to be filled again.
+ *
+ * Closing this stream stops the background thread but does not close the
+ * source.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class ReadAheadInputStream extends InputStream {
+
+    /**
+     * Size of the chunks read from the source.
+     */
+    static final int CHUNK_SIZE = 1 << 18;
+
+    /**
+     * Number of chunks that can be read ahead.
+     */
+    static final int QUEUE_SIZE = 4;
+
+    /**
+     * Marks the end of the source in the queue.
+     */
+    private static final Chunk END = new Chunk(new byte[0], 0);
+
+    private final BlockingQueue<Chunk> chunks
+            = new ArrayBlockingQueue<Chunk>(QUEUE_SIZE);
+
+    /**
+     * Chunk buffers that were read, for the background thread to fill
+     * again. One more than the queue can hold is being read and one is
+     * being filled.
+     */
+    private final BlockingQueue<byte[]> freeBuffers
+            = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE + 2);
+
+    private final Thread thread;
+
+    /**
+     * Error raised while reading the source.
+     */
+    private volatile IOException failure;
+
+    private volatile boolean closed = false;
+
+    private Chunk chunk = null;
+
+    private int position = 0;
+
+    /**
+     * Start reading a source.
+     *
+     * @param source
+     */
+    ReadAheadInputStream(final InputStream source){
+        thread = new Thread(new Runnable(){
+            @Override
+            public void run(){
+                readAhead(source);
+            }
+        }, "cnai-read-ahead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void readAhead(InputStream source){
+        try{
+            while(true){
+                byte[] buf = freeBuffers.poll();
+                if(buf == null) buf = new byte[CHUNK_SIZE];
+                int length = 0;
+                for(int n; length < buf.length
+                        && (n = source.read(buf, length, buf.length - length)) >= 0; ){
+                    length += n;
+                }
+
+                if(length == 0){
+                    put(END);
+                    return;
+                }
+                put(new Chunk(buf, length));
+            }
+        }catch(InterruptedException e){
+            //The stream has been closed
+        }catch(IOException e){
+            failure = e;
+            try{
+                put(END);
+            }catch(InterruptedException ie){
+                //The stream has been closed
+            }
+        }
+    }
+
+    private void put(Chunk data) throws InterruptedException{
+        while(!chunks.offer(data, 100, TimeUnit.MILLISECONDS)){
+            if(closed) throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Make the next chunk current. Returns false at the end of the source.
+     */
+    private boolean next() throws IOException{
+        if(chunk == END) return false;
+        if(chunk != null && position < chunk.length) return true;
+
+        if(chunk != null){
+            freeBuffers.offer(chunk.data);
+            chunk = null;
+        }
+        try{
+            chunk = chunks.take();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        position = 0;
+
+        if(chunk == END){
+            if(failure != null) throw failure;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException{
+        if(!next()) return -1;
+        return chunk.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException{
+        if(len == 0) return 0;
+        if(!next()) return -1;
+
+        int n = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk.data, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available(){
+        return chunk == null || chunk == END ? 0 : chunk.length - position;
+    }
+
+    @Override
+    public void close(){
+        closed = true;
+        thread.interrupt();
+    }
+
+    /**
+     * Bytes read from the source into a buffer.
+     */
+    private static final class Chunk {
+        final byte[] data;
+        final int length;
+
+        Chunk(byte[] data, int length){
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
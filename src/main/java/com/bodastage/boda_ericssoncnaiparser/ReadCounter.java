@@ -0,0 +1,104 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Counts the bytes read from an input file, before any decompression, for
+ * the progress of a parse session.
+ *
+ * The bytes are counted by the thread reading the file, which can be a
+ * read-ahead or pipeline thread, and taken by the parsing thread when it
+ * adds its counts to the metrics.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class ReadCounter {
+
+    /**
+     * Bytes read. Only written by the reading thread.
+     */
+    private volatile long count = 0;
+
+    /**
+     * Bytes already taken.
+     */
+    private long taken = 0;
+
+    /**
+     * Get the bytes read since the last call.
+     *
+     * @return long
+     */
+    long take(){
+        long c = count;
+        long n = c - taken;
+        taken = c;
+        return n;
+    }
+
+    /**
+     * Count the bytes read from a stream.
+     *
+     * @param in
+     * @return InputStream
+     */
+    InputStream count(InputStream in){
+        return new FilterInputStream(in){
+            @Override
+            public int read() throws IOException{
+                int b = super.read();
+                if(b >= 0) count++;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException{
+                int n = super.read(b, off, len);
+                if(n > 0) count += n;
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException{
+                long skipped = super.skip(n);
+                if(skipped > 0) count += skipped;
+                return skipped;
+            }
+        };
+    }
+
+    /**
+     * Count the bytes read from a channel.
+     *
+     * @param channel
+     * @return ReadableByteChannel
+     */
+    ReadableByteChannel count(final ReadableByteChannel channel){
+        return new ReadableByteChannel(){
+            @Override
+            public int read(ByteBuffer dst) throws IOException{
+                int n = channel.read(dst);
+                if(n > 0) count += n;
+                return n;
+            }
+
+            @Override
+            public boolean isOpen(){
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException{
+                channel.close();
+            }
+        };
+    }
+}
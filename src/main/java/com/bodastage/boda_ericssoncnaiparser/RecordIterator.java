@@ -0,0 +1,187 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Iterates over the records of one or more CNAI dump files.
+ *
+ * The files are read a line at a time as the records are asked for, so only
+ * the records of the network entity being read are held in memory. gzip files
+ * and the entries of zip archives are read like plain files. Each record is
+ * new and can be kept. CNAI v1 files have no records and are skipped, as the
+ * parser's listener is told.
+ *
+ * <pre>
+ * try(RecordIterator records = parser.records("input_folder")){
+ *     while(records.hasNext()){
+ *         CnaiRecord record = records.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * Failures to read a file are thrown as {@link UncheckedIOException}.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public final class RecordIterator implements Iterator<CnaiRecord>, Closeable {
+
+    private final CnaiParser parser;
+
+    /**
+     * Files still to be read.
+     */
+    private final Deque<File> files;
+
+    /**
+     * Records collected and not yet returned.
+     */
+    private final Deque<CnaiRecord> ready = new ArrayDeque<CnaiRecord>();
+
+    /**
+     * Archive whose entries are being read.
+     */
+    private ZipInputStream zip;
+
+    /**
+     * Lines of the file or archive entry being read.
+     */
+    private BufferedReader reader;
+
+    private ParseSession session;
+
+    RecordIterator(CnaiParser parser, List<File> files){
+        this.parser = parser;
+        this.files = new ArrayDeque<File>(files);
+    }
+
+    @Override
+    public boolean hasNext(){
+        try{
+            while(ready.isEmpty()){
+                if(reader == null && !openNext()) return false;
+
+                String line = reader.readLine();
+                if(line == null){
+                    closeReader();
+                    continue;
+                }
+                session.processLine(line);
+            }
+            return true;
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public CnaiRecord next(){
+        if(!hasNext()) throw new NoSuchElementException();
+        return ready.poll();
+    }
+
+    /**
+     * Start reading the next file or archive entry.
+     *
+     * @return false when there is nothing left to read
+     */
+    private boolean openNext() throws IOException{
+        while(true){
+            if(zip != null){
+                for(ZipEntry entry; (entry = zip.getNextEntry()) != null; ){
+                    if(entry.isDirectory()) continue;
+
+                    String name = BodaCNAIParser.getFileBasename(entry.getName());
+                    InputStream in = new BufferedInputStream(zip, CompressedInput.BUFFER_SIZE);
+                    if(parser.isVersion1(CnaiVersion.detect(in))){
+                        parser.skipVersion1(name);
+                        continue;
+                    }
+
+                    //Closing the archive closes the entry's reader
+                    reader = new BufferedReader(new InputStreamReader(in,
+                            StandardCharsets.UTF_8));
+                    startSession(name);
+                    return true;
+                }
+                zip.close();
+                zip = null;
+            }
+
+            File file = files.poll();
+            if(file == null) return false;
+
+            Path path = file.toPath();
+            int compression = CompressedInput.detect(path);
+            if(compression != CompressedInput.ZIP && parser.isVersion1(path)){
+                parser.skipVersion1(file.getName());
+                continue;
+            }
+
+            switch(compression){
+                case CompressedInput.GZIP:
+                    reader = new BufferedReader(new InputStreamReader(
+                            new GZIPInputStream(Files.newInputStream(path), CompressedInput.BUFFER_SIZE),
+                            StandardCharsets.UTF_8));
+                    break;
+                case CompressedInput.ZIP:
+                    zip = new ZipInputStream(new BufferedInputStream(
+                            Files.newInputStream(path), CompressedInput.BUFFER_SIZE));
+                    continue;
+                default:
+                    //Malformed bytes are replaced, as by the byte readers
+                    reader = new BufferedReader(new InputStreamReader(
+                            Files.newInputStream(path), StandardCharsets.UTF_8));
+                    break;
+            }
+            startSession(file.getName());
+            return true;
+        }
+    }
+
+    private void startSession(String fileName){
+        session = parser.newSession(ready::add, fileName);
+    }
+
+    private void closeReader() throws IOException{
+        if(zip == null) reader.close();
+        reader = null;
+    }
+
+    /**
+     * Close the file being read.
+     */
+    @Override
+    public void close() throws IOException{
+        files.clear();
+        try{
+            if(reader != null && zip == null) reader.close();
+        }finally{
+            reader = null;
+            if(zip != null) zip.close();
+            zip = null;
+        }
+    }
+}
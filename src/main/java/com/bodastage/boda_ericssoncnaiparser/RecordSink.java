@@ -0,0 +1,45 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+/**
+ * Receives what a {@link ParseSession} collects from a dump.
+ *
+ * {@link DomainWriters} writes the records to the domain csv files. Any other
+ * sink can be given to {@link CnaiParser#parse(String, RecordSink)} or
+ * {@link CnaiParser#newSession(RecordSink, String)} to consume the records
+ * directly, for example to load them into a database.
+ *
+ * <pre>
+ * parser.parse("input_folder", record -&gt; load(record));
+ * </pre>
+ *
+ * Such sinks get a new record for each network entity and can keep it. A
+ * record holds every parameter of the entity whatever the reader: the
+ * parameter configuration given with -c only selects the columns of the csv
+ * files, including the delta csv files of {@link DumpDelta}. A
+ * sink is never called by two threads at the same time, but with the
+ * pipelined reader it is called from the writer thread.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+@FunctionalInterface
+public interface RecordSink {
+
+    /**
+     * Called for every .domain directive. Does nothing by default.
+     *
+     * @param domain
+     */
+    default void openDomain(String domain){
+    }
+
+    /**
+     * Called for every network entity.
+     *
+     * @param record
+     */
+    void write(CnaiRecord record);
+}
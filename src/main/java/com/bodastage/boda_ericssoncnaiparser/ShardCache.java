@@ -0,0 +1,404 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * The domain csv shards of the files parsed in earlier runs, kept so that an
+ * incremental run only parses the files that changed.
+ *
+ * Each file parsed is kept in a directory of its own, the same shard the
+ * parallel parser merges into the output. A manifest records, for each input
+ * file, its size, modification time and SHA-256 hash, and the domains and
+ * csv headers of its shard. A file whose headers differ from those of the
+ * files merged before it is parsed again with their headers; that shard is
+ * kept too, with the headers it was parsed with. A file is unchanged if its
+ * size and modification time are those in the manifest, or if only its
+ * modification time changed and its content hashes the same. The manifest
+ * also holds a hash of the parser version and parameter configuration, and
+ * the cache is emptied when they change.
+ *
+ * <pre>
+ * cnai-shard-cache 1
+ * configuration HASH
+ * file ID SIZE MTIME HASH PATH
+ * domain NAME
+ * header NAME COLUMN...
+ * reparse
+ * seed NAME COLUMN...
+ * domain NAME
+ * header NAME COLUMN...
+ * </pre>
+ *
+ * The fields of a line are separated by tabs. Each file line is followed by
+ * the domains of its shard in the order they were found and their headers,
+ * then by those of the shard parsed again if there is one.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class ShardCache {
+
+    /**
+     * File name of the manifest in the cache directory.
+     */
+    static final String MANIFEST = "manifest";
+
+    private static final String FORMAT = "cnai-shard-cache 1";
+
+    private final Path directory;
+
+    private final String configuration;
+
+    /**
+     * Entries by absolute path of the input file.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * Input files of the current run.
+     */
+    private final Set<String> used = new HashSet<String>();
+
+    private int nextId = 0;
+
+    /**
+     * Open a cache directory, creating it if needed.
+     *
+     * @param directory
+     * @param configuration Parser settings the shards depend on
+     */
+    ShardCache(Path directory, String configuration) throws IOException{
+        this.directory = directory;
+        this.configuration = hash(configuration.getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(directory);
+        load();
+    }
+
+    /**
+     * Find the shard of a file parsed in an earlier run.
+     *
+     * @param f Input file
+     * @return The cache entry or null if the file changed or is new
+     */
+    Entry find(File f) throws IOException{
+        String path = f.getAbsolutePath();
+        used.add(path);
+
+        Entry e = entries.get(path);
+        if(e == null || e.size != f.length()) return null;
+        if(e.modified == f.lastModified()) return e;
+
+        //Touched but maybe not changed
+        if(!e.hash.equals(hash(f.toPath()))) return null;
+        e.modified = f.lastModified();
+        return e;
+    }
+
+    /**
+     * Directory for the shard of a file to parse.
+     *
+     * @return Path
+     */
+    Path newShardDirectory(){
+        return directory.resolve(String.valueOf(nextId++));
+    }
+
+    /**
+     * Record the shard of a file parsed in this run.
+     *
+     * @param f Input file
+     * @param e Entry describing the file and its shard
+     */
+    void put(File f, Entry e) throws IOException{
+        String path = f.getAbsolutePath();
+        used.add(path);
+        Entry old = entries.put(path, e);
+        if(old != null && !old.id.equals(e.id)) deleteDirectory(directory.resolve(old.id));
+    }
+
+    /**
+     * Directory holding the shard of an entry.
+     *
+     * @param e
+     * @return Path
+     */
+    Path shardDirectory(Entry e){
+        return directory.resolve(e.id);
+    }
+
+    /**
+     * Write the manifest. Files that were not part of this run are dropped
+     * from the cache, and so are shard directories the manifest does not
+     * list, such as those of files that failed.
+     */
+    void save() throws IOException{
+        entries.keySet().retainAll(used);
+        deleteUnlisted();
+
+        Path manifest = directory.resolve(MANIFEST);
+        Path temporary = Files.createTempFile(directory, MANIFEST, ".tmp");
+        try(Writer w = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)){
+            w.write(FORMAT + "\n");
+            w.write("configuration\t" + configuration + "\n");
+            for(Map.Entry<String, Entry> me : entries.entrySet()){
+                Entry e = me.getValue();
+                w.write("file\t" + e.id + "\t" + e.size + "\t" + e.modified + "\t"
+                        + e.hash + "\t" + me.getKey() + "\n");
+                writeShard(w, e.domains, e.headers);
+                if(e.reparse != null){
+                    w.write("reparse\n");
+                    writeHeaders(w, "seed", e.reparse.seeds);
+                    writeShard(w, e.reparse.domains, e.reparse.headers);
+                }
+            }
+        }
+        Files.move(temporary, manifest, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeShard(Writer w, List<String> domains,
+            Map<String, List<String>> headers) throws IOException{
+        for(String domain : domains){
+            w.write("domain\t" + domain + "\n");
+        }
+        writeHeaders(w, "header", headers);
+    }
+
+    private static void writeHeaders(Writer w, String type,
+            Map<String, List<String>> headers) throws IOException{
+        for(Map.Entry<String, List<String>> h : headers.entrySet()){
+            w.write(type + "\t" + h.getKey());
+            for(String column : h.getValue()){
+                w.write("\t" + column);
+            }
+            w.write("\n");
+        }
+    }
+
+    /**
+     * Delete the shard directories and temporary files of the cache that the
+     * manifest does not list. Other files in the directory are left alone.
+     */
+    private void deleteUnlisted() throws IOException{
+        Set<String> listed = new HashSet<String>();
+        listed.add(MANIFEST);
+        for(Entry e : entries.values()){
+            listed.add(e.id);
+            if(e.reparse != null) listed.add(e.reparse.id);
+        }
+        try(DirectoryStream<Path> paths = Files.newDirectoryStream(directory)){
+            for(Path p : paths){
+                String name = p.getFileName().toString();
+                boolean ours = name.matches("[0-9]+r?")
+                        || (name.startsWith(MANIFEST) && name.endsWith(".tmp"));
+                if(ours && !listed.contains(name)) deleteDirectory(p);
+            }
+        }
+    }
+
+    /**
+     * Read the manifest. A manifest of another format or configuration, or
+     * one that cannot be read, empties the cache.
+     */
+    private void load() throws IOException{
+        Path manifest = directory.resolve(MANIFEST);
+        if(Files.isRegularFile(manifest)){
+            try(BufferedReader br = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)){
+                if(!FORMAT.equals(br.readLine())
+                        || !("configuration\t" + configuration).equals(br.readLine())
+                        || !read(br)){
+                    entries.clear();
+                }
+            }
+        }
+        deleteUnlisted();
+
+        for(Entry e : entries.values()){
+            nextId = Math.max(nextId, Integer.parseInt(e.id) + 1);
+        }
+    }
+
+    /**
+     * Read the file entries of the manifest.
+     *
+     * @return false if the manifest is not valid
+     */
+    private boolean read(BufferedReader br) throws IOException{
+        Entry e = null;
+
+        //Where the domain and header lines go
+        List<String> domains = null;
+        Map<String, List<String>> headers = null;
+
+        for(String line; (line = br.readLine()) != null; ){
+            String[] fields = line.split("\t");
+            try{
+                if(fields[0].equals("file") && fields.length == 6){
+                    Integer.parseInt(fields[1]);
+                    e = new Entry(fields[1], Long.parseLong(fields[2]),
+                            Long.parseLong(fields[3]), fields[4]);
+                    entries.put(fields[5], e);
+                    domains = e.domains;
+                    headers = e.headers;
+                }else if(fields[0].equals("reparse") && e != null && e.reparse == null){
+                    e.reparse = new Reparse(e.id);
+                    domains = e.reparse.domains;
+                    headers = e.reparse.headers;
+                }else if(fields[0].equals("domain") && fields.length == 2 && e != null){
+                    domains.add(fields[1]);
+                }else if(fields[0].equals("header") && fields.length > 1 && e != null){
+                    headers.put(fields[1], columns(fields));
+                }else if(fields[0].equals("seed") && fields.length > 1 && e != null
+                        && e.reparse != null){
+                    e.reparse.seeds.put(fields[1], columns(fields));
+                }else{
+                    return false;
+                }
+            }catch(NumberFormatException ex){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> columns(String[] fields){
+        List<String> columns = new ArrayList<String>();
+        for(int i = 2; i < fields.length; i++){
+            columns.add(fields[i]);
+        }
+        return columns;
+    }
+
+    /**
+     * SHA-256 hash of a file's content.
+     *
+     * @param file
+     * @return Hexadecimal hash
+     */
+    static String hash(Path file) throws IOException{
+        MessageDigest digest = sha256();
+        try(InputStream in = Files.newInputStream(file)){
+            byte[] buffer = new byte[CompressedInput.BUFFER_SIZE];
+            for(int n; (n = in.read(buffer)) > 0; ){
+                digest.update(buffer, 0, n);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static String hash(byte[] bytes){
+        return hex(sha256().digest(bytes));
+    }
+
+    private static MessageDigest sha256(){
+        try{
+            return MessageDigest.getInstance("SHA-256");
+        }catch(NoSuchAlgorithmException e){
+            //Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes){
+        StringBuilder s = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes){
+            s.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return s.toString();
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException{
+        if(!Files.exists(directory)) return;
+        try(Stream<Path> paths = Files.walk(directory)){
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * An input file and its shard.
+     */
+    static final class Entry {
+
+        /**
+         * Name of the shard directory.
+         */
+        final String id;
+
+        final long size;
+
+        long modified;
+
+        final String hash;
+
+        /**
+         * Domains with a csv file in the shard, in the order they were found.
+         */
+        final List<String> domains = new ArrayList<String>();
+
+        /**
+         * Headers of the shard's domain csv files that start with one.
+         */
+        final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+
+        /**
+         * Shard of the file parsed again with the headers of the files
+         * before it. Null if there is none.
+         */
+        Reparse reparse;
+
+        Entry(String id, long size, long modified, String hash){
+            this.id = id;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Shard of a file parsed again with the headers already merged.
+     */
+    static final class Reparse {
+
+        /**
+         * Name of the shard directory.
+         */
+        final String id;
+
+        /**
+         * Headers of the file's domains the shard was parsed with.
+         */
+        final Map<String, List<String>> seeds = new LinkedHashMap<String, List<String>>();
+
+        final List<String> domains = new ArrayList<String>();
+
+        final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+
+        /**
+         * @param entryId Name of the shard directory of the file's entry
+         */
+        Reparse(String entryId){
+            this.id = entryId + "r";
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Bounded table of the parameter names and short values of a domain.
+ *
+ * The same few hundred parameter names and a handful of values such as
+ * ACTIVE, 0 or NO make up most of a dump. Looking them up here returns the
+ * String created the first time they were seen, and a lookup by byte range
+ * creates no String at all when it finds one. Once the table is full, or for
+ * longer values, a new String is returned as before. Values are no longer
+ * looked up if less than a quarter of the first values of the domain were
+ * found, as is the case when they are mostly unique.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class SymbolTable {
+
+    /**
+     * Most symbols a table holds.
+     */
+    static final int MAX_SIZE = 1 << 12;
+
+    /**
+     * Longest value, in bytes or characters, that is worth keeping.
+     */
+    static final int MAX_VALUE_LENGTH = 16;
+
+    /**
+     * Number of value lookups after which the share found is checked.
+     */
+    static final int VALUE_SAMPLE_SIZE = 1 << 10;
+
+    /**
+     * Initial number of slots.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Open addressing table, kept at most half full. Grows up to twice
+     * MAX_SIZE slots.
+     */
+    private String[] symbols = new String[INITIAL_CAPACITY];
+
+    /**
+     * UTF-8 bytes of each symbol.
+     */
+    private byte[][] bytes = new byte[INITIAL_CAPACITY][];
+
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    /**
+     * Whether the last lookup found its symbol.
+     */
+    private boolean found;
+
+    /**
+     * Values looked up and found, until the share found is checked.
+     */
+    private int valueLookups = 0;
+    private int valuesFound = 0;
+
+    private boolean valuesShared = true;
+
+    /**
+     * Get a parameter value held in a UTF-8 byte range, shared if it is short
+     * and values repeat.
+     *
+     * @param b
+     * @param offset
+     * @param length
+     * @return String
+     */
+    String value(byte[] b, int offset, int length){
+        if(!valuesShared || length > MAX_VALUE_LENGTH){
+            return new String(b, offset, length, StandardCharsets.UTF_8);
+        }
+        String s = symbol(b, offset, length);
+        sampleValue();
+        return s;
+    }
+
+    /**
+     * Get a parameter value held in a part of a string, shared if it is short
+     * and values repeat.
+     *
+     * @param line
+     * @param begin Index of the first character
+     * @param end Index after the last character
+     * @return String
+     */
+    String value(String line, int begin, int end){
+        if(!valuesShared || end - begin > MAX_VALUE_LENGTH){
+            return line.substring(begin, end);
+        }
+        String s = symbol(line, begin, end);
+        sampleValue();
+        return s;
+    }
+
+    private void sampleValue(){
+        if(valueLookups == VALUE_SAMPLE_SIZE) return;
+        if(found) valuesFound++;
+        if(++valueLookups == VALUE_SAMPLE_SIZE){
+            valuesShared = valuesFound * 4 >= VALUE_SAMPLE_SIZE;
+        }
+    }
+
+    /**
+     * Get the symbol for a UTF-8 byte range.
+     *
+     * @param b
+     * @param offset
+     * @param length
+     * @return String
+     */
+    String symbol(byte[] b, int offset, int length){
+        int h = 0;
+        for(int i = offset, end = offset + length; i < end; i++){
+            h = 31 * h + (b[i] & 0xFF);
+        }
+
+        int mask = symbols.length - 1;
+        for(int i = spread(h) & mask; ; i = (i + 1) & mask){
+            String s = symbols[i];
+            if(s == null){
+                found = false;
+                s = new String(b, offset, length, StandardCharsets.UTF_8);
+                if(size < MAX_SIZE){
+                    add(i, s, Arrays.copyOfRange(b, offset, offset + length), h);
+                }
+                return s;
+            }
+            if(hashes[i] == h && equals(bytes[i], b, offset, length)){
+                found = true;
+                return s;
+            }
+        }
+    }
+
+    /**
+     * Get the symbol for a part of a string.
+     *
+     * @param line
+     * @param begin Index of the first character
+     * @param end Index after the last character
+     * @return String
+     */
+    String symbol(String line, int begin, int end){
+        int h = 0;
+        for(int i = begin; i < end; i++){
+            h = 31 * h + line.charAt(i);
+        }
+
+        int mask = symbols.length - 1;
+        int length = end - begin;
+        for(int i = spread(h) & mask; ; i = (i + 1) & mask){
+            String s = symbols[i];
+            if(s == null){
+                found = false;
+                s = line.substring(begin, end);
+                if(size < MAX_SIZE){
+                    add(i, s, s.getBytes(StandardCharsets.UTF_8), h);
+                }
+                return s;
+            }
+            if(hashes[i] == h && s.length() == length && line.regionMatches(begin, s, 0, length)){
+                found = true;
+                return s;
+            }
+        }
+    }
+
+    int size(){
+        return size;
+    }
+
+    private void add(int slot, String s, byte[] b, int h){
+        symbols[slot] = s;
+        bytes[slot] = b;
+        hashes[slot] = h;
+        if(++size * 2 >= symbols.length && size < MAX_SIZE) grow();
+    }
+
+    private void grow(){
+        String[] oldSymbols = symbols;
+        byte[][] oldBytes = bytes;
+        int[] oldHashes = hashes;
+
+        int capacity = oldSymbols.length * 2;
+        symbols = new String[capacity];
+        bytes = new byte[capacity][];
+        hashes = new int[capacity];
+
+        int mask = capacity - 1;
+        for(int j = 0; j < oldSymbols.length; j++){
+            if(oldSymbols[j] == null) continue;
+            int i = spread(oldHashes[j]) & mask;
+            while(symbols[i] != null) i = (i + 1) & mask;
+            symbols[i] = oldSymbols[j];
+            bytes[i] = oldBytes[j];
+            hashes[i] = oldHashes[j];
+        }
+    }
+
+    private static int spread(int h){
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(byte[] a, byte[] b, int offset, int length){
+        if(a.length != length) return false;
+        for(int i = 0; i < length; i++){
+            if(a[i] != b[offset + i]) return false;
+        }
+        return true;
+    }
+}
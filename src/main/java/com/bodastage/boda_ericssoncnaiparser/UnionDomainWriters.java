@@ -0,0 +1,251 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Domain csv files with a column for every parameter found in the domain.
+ *
+ * The columns of a domain start with the parameters of its first record, as
+ * in the other csv files, and each parameter found later in the run is added
+ * as a new column at the end. The rows are written to a spill file next to
+ * the csv file with the columns known at the time. When the files are closed
+ * the final header is written and the rows are copied after it, with empty
+ * fields added to the rows written before the last columns were found.
+ *
+ * The files are thus written twice, but the dumps are parsed once.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+public class UnionDomainWriters extends DomainWriters {
+
+    /**
+     * Size of the buffer used to copy the spill files.
+     */
+    static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    private final Map<String, UnionDomain> domains
+            = new LinkedHashMap<String, UnionDomain>();
+
+    /**
+     * Buffer the csv rows are built in.
+     */
+    private final CsvRowWriter row = new CsvRowWriter();
+
+    /**
+     * @param outputDirectory Directory to write the domain csv files to
+     * @param bufferSize Size in bytes of the buffer of each file
+     * @param compression Compression of the files
+     * @param backgroundCompression Compress on a background thread
+     */
+    public UnionDomainWriters(String outputDirectory, int bufferSize,
+            OutputCompression compression, boolean backgroundCompression){
+        super(outputDirectory, null, bufferSize, compression, backgroundCompression);
+    }
+
+    /**
+     * Note a domain. Its csv file is written when the files are closed.
+     *
+     * @param domain
+     */
+    @Override
+    public void openDomain(String domain){
+        if(!domains.containsKey(domain)) domains.put(domain, new UnionDomain(domain));
+    }
+
+    /**
+     * Write a network entity to its domain's spill file.
+     *
+     * @param record
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public void write(CnaiRecord record){
+        openDomain(record.domain);
+        try{
+            domains.get(record.domain).write(record);
+            rows++;
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the domain csv files and delete the spill files. All the files
+     * are written even if some of them fail, and the first failure is then
+     * thrown.
+     */
+    @Override
+    public void close() throws IOException{
+        IOException failure = null;
+        for(UnionDomain domain : domains.values()){
+            try{
+                domain.finish();
+            }catch(IOException e){
+                if(failure == null) failure = e;
+            }
+        }
+        domains.clear();
+
+        try{
+            super.close();
+        }catch(IOException e){
+            if(failure == null) failure = e;
+        }
+
+        if(failure != null) throw failure;
+    }
+
+    /**
+     * The columns and spilled rows of a domain.
+     */
+    private final class UnionDomain {
+
+        final String domain;
+
+        /**
+         * Parameter columns in the order they were found.
+         */
+        final List<String> parameters = new ArrayList<String>();
+
+        final ColumnSlots slots = new ColumnSlots(CnaiRecord.INITIAL_CAPACITY);
+
+        /**
+         * Values of the record being written, by column.
+         */
+        String[] values = new String[CnaiRecord.INITIAL_CAPACITY];
+
+        Path spillFile;
+
+        Writer spill;
+
+        /**
+         * Number of rows and number of parameter columns of each run of rows
+         * written with the same columns.
+         */
+        final List<int[]> segments = new ArrayList<int[]>();
+
+        UnionDomain(String domain){
+            this.domain = domain;
+        }
+
+        void write(CnaiRecord record) throws IOException{
+            if(spill == null){
+                spillFile = Files.createTempFile(Paths.get(outputDirectory), domain + ".", ".spill");
+                spill = newWriter(Files.newOutputStream(spillFile));
+            }
+
+            for(int i = 0, n = record.size; i < n; i++){
+                String name = record.names[i];
+                int slot = slots.slot(i, name);
+                if(slot < 0){
+                    slot = slots.add(name);
+                    parameters.add(name);
+                    if(slot == values.length) values = Arrays.copyOf(values, slot * 2);
+                }
+                values[slot] = record.values[i];
+            }
+
+            int width = parameters.size();
+            row.begin()
+                    .field(record.fileName).field(record.dateTime).field(record.capabilities)
+                    .field(record.subnetwork).field(domain).field(record.set);
+            for(int c = 0; c < width; c++){
+                if(values[c] != null){
+                    row.csvField(values[c]);
+                    values[c] = null;
+                }else{
+                    row.emptyField();
+                }
+            }
+            row.writeTo(spill);
+
+            int[] last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if(last != null && last[1] == width){
+                last[0]++;
+            }else{
+                segments.add(new int[]{1, width});
+            }
+        }
+
+        /**
+         * Write the csv file: the header and the spilled rows, padded to the
+         * final number of columns.
+         */
+        void finish() throws IOException{
+            try{
+                if(spill != null) spill.close();
+
+                String fileName = outputDirectory + File.separatorChar + domain
+                        + ".csv" + compression.suffix();
+                try(OutputStream out = new BufferedOutputStream(newOutputStream(fileName),
+                        COPY_BUFFER_SIZE)){
+                    //Domains without records get an empty file
+                    if(spillFile == null) return;
+
+                    row.begin()
+                            .field("FILENAME").field("DATETIME").field("capabilities")
+                            .field("subnetwork").field("domain").field("set");
+                    for(String pName : parameters){
+                        row.field(pName);
+                    }
+                    out.write((row.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+
+                    try(InputStream in = Files.newInputStream(spillFile)){
+                        copy(in, out);
+                    }
+                }
+            }finally{
+                spill = null;
+                if(spillFile != null) Files.deleteIfExists(spillFile);
+            }
+        }
+
+        private void copy(InputStream in, OutputStream out) throws IOException{
+            int width = parameters.size();
+            byte[] padding = new byte[width];
+            Arrays.fill(padding, (byte) ',');
+
+            int segment = 0;
+            int rows = segments.get(0)[0];
+            int pad = width - segments.get(0)[1];
+
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            for(int n; (n = in.read(buffer)) > 0; ){
+                int from = 0;
+                for(int i = 0; i < n; i++){
+                    if(buffer[i] != '\n') continue;
+
+                    if(pad > 0){
+                        out.write(buffer, from, i - from);
+                        out.write(padding, 0, pad);
+                        from = i;
+                    }
+                    if(--rows == 0 && ++segment < segments.size()){
+                        rows = segments.get(segment)[0];
+                        pad = width - segments.get(segment)[1];
+                    }
+                }
+                out.write(buffer, from, n - from);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Converts CNAI v1 files to csv.
+ *
+ * A CNAI v1 file is a table: a line of column names, a line of dashes under
+ * them and a line of whitespace separated values per network entity. Each
+ * whitespace character becomes a comma and the line of dashes is dropped. A
+ * value in double quotes is kept as it is, whitespace included, and other
+ * values with a comma or a double quote are quoted.
+ *
+ * The lines are converted byte by byte into a large output buffer, so no
+ * characters are decoded and nothing is allocated per line. CNAI v1 files
+ * are recognized with {@link CnaiVersion}.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class Version1Converter implements NioLineReader.LineHandler {
+
+    /**
+     * Size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int size = 0;
+
+    private long lineCount = 0;
+
+    /**
+     * @param out Where the csv lines are written
+     */
+    Version1Converter(OutputStream out){
+        this.out = out;
+    }
+
+    /**
+     * Convert a line.
+     *
+     * @throws UncheckedIOException if the csv file cannot be written
+     */
+    @Override
+    public void line(byte[] line, int offset, int length){
+        //Skip the line of dashes
+        if(++lineCount == 2) return;
+
+        //Every byte doubled in quotes in the worst case
+        int needed = 3 * length + 1;
+        if(buffer.length - size < needed){
+            flush();
+            if(buffer.length < needed) buffer = new byte[needed];
+        }
+
+        byte[] buf = buffer;
+        int n = size;
+        int end = offset + length;
+        int pos = offset;
+        while(pos < end){
+            byte b = line[pos];
+            if(isWhitespace(b)){
+                buf[n++] = ',';
+                pos++;
+                continue;
+            }
+
+            //A quoted value is already a csv field
+            if(b == '"'){
+                int close = closingQuote(line, pos, end);
+                if(close >= 0){
+                    System.arraycopy(line, pos, buf, n, close + 1 - pos);
+                    n += close + 1 - pos;
+                    pos = close + 1;
+                    continue;
+                }
+            }
+
+            int valueEnd = pos;
+            boolean quote = false;
+            for(; valueEnd < end && !isWhitespace(line[valueEnd]); valueEnd++){
+                if(line[valueEnd] == ',' || line[valueEnd] == '"') quote = true;
+            }
+
+            if(!quote){
+                System.arraycopy(line, pos, buf, n, valueEnd - pos);
+                n += valueEnd - pos;
+            }else{
+                buf[n++] = '"';
+                for(int i = pos; i < valueEnd; i++){
+                    if(line[i] == '"') buf[n++] = '"';
+                    buf[n++] = line[i];
+                }
+                buf[n++] = '"';
+            }
+            pos = valueEnd;
+        }
+        buf[n++] = '\n';
+        size = n;
+    }
+
+    /**
+     * Write the converted lines held in the buffer.
+     *
+     * @throws UncheckedIOException if the csv file cannot be written
+     */
+    void flush(){
+        if(size == 0) return;
+        try{
+            out.write(buffer, 0, size);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        size = 0;
+    }
+
+    /**
+     * The whitespace characters of the regular expression \s, but for the
+     * line terminators.
+     */
+    private static boolean isWhitespace(byte b){
+        return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+    }
+
+    /**
+     * Offset of the quote that closes the value starting at a quote, or -1 if
+     * the value does not end with one.
+     */
+    private static int closingQuote(byte[] line, int start, int end){
+        for(int i = start + 1; i < end; i++){
+            if(line[i] != '"') continue;
+            if(i + 1 == end || isWhitespace(line[i + 1])) return i;
+            if(line[i + 1] != '"') return -1;
+
+            //Escaped quote
+            i++;
+        }
+        return -1;
+    }
+}
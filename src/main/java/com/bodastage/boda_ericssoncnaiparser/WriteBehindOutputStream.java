@@ -0,0 +1,154 @@
+/*
+ *
+ */
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes to an output stream on a background executor.
+ *
+ * The data is collected in chunks that are written to the target stream by a
+ * task on the executor, so the work done by the target, such as compressing,
+ * does not hold up the writer of this stream. With a single thread executor
+ * the chunks of each stream are written in order. The streams sharing an
+ * executor also share a number of permits that bounds the chunks waiting to
+ * be written.
+ *
+ * @author Bodastage<info@bodastage.com>
+ * @since 2.4.0
+ */
+final class WriteBehindOutputStream extends OutputStream {
+
+    private final OutputStream out;
+
+    private final ExecutorService executor;
+
+    private final Semaphore permits;
+
+    private final int chunkSize;
+
+    private byte[] buffer;
+
+    private int count = 0;
+
+    /**
+     * First error raised by the target stream.
+     */
+    private volatile IOException failure;
+
+    /**
+     * @param out Target stream, closed when this stream is closed
+     * @param executor Single thread executor writing to the target
+     * @param permits Bounds the chunks waiting to be written
+     * @param chunkSize
+     */
+    WriteBehindOutputStream(OutputStream out, ExecutorService executor,
+            Semaphore permits, int chunkSize){
+        this.out = out;
+        this.executor = executor;
+        this.permits = permits;
+        this.chunkSize = chunkSize;
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException{
+        if(count == buffer.length) handOver();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException{
+        while(len > 0){
+            if(count == buffer.length) handOver();
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Queue the collected data to be written.
+     */
+    private void handOver() throws IOException{
+        if(failure != null) throw failure;
+        if(count == 0) return;
+
+        try{
+            permits.acquire();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        final byte[] chunk = buffer;
+        final int length = count;
+        try{
+            executor.execute(new Runnable(){
+                @Override
+                public void run(){
+                    try{
+                        if(failure == null) out.write(chunk, 0, length);
+                    }catch(IOException e){
+                        failure = e;
+                    }finally{
+                        permits.release();
+                    }
+                }
+            });
+        }catch(RuntimeException e){
+            permits.release();
+            throw e;
+        }
+
+        buffer = new byte[chunkSize];
+        count = 0;
+    }
+
+    /**
+     * Queue the collected data. The target stream is not flushed.
+     */
+    @Override
+    public void flush() throws IOException{
+        handOver();
+    }
+
+    /**
+     * Write the remaining data, close the target stream and wait for it.
+     */
+    @Override
+    public void close() throws IOException{
+        try{
+            handOver();
+        }finally{
+            Future<?> closed = executor.submit(new Runnable(){
+                @Override
+                public void run(){
+                    try{
+                        out.close();
+                    }catch(IOException e){
+                        if(failure == null) failure = e;
+                    }
+                }
+            });
+            try{
+                closed.get();
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }catch(ExecutionException e){
+                throw new IOException(e.getCause());
+            }
+        }
+        if(failure != null) throw failure;
+    }
+}
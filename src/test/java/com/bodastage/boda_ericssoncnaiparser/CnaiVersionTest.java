@@ -0,0 +1,42 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks the recognition of the CNAI version of a dump.
+ */
+public class CnaiVersionTest extends TestCase
+{
+    public void testDetect()
+    {
+        assertEquals(CnaiVersion.V1, detect("CELL BSC\n---- ---\nC1 B1\n"));
+        assertEquals(CnaiVersion.V1, detect("CELL BSC\r\n---- ---"));
+        assertEquals(CnaiVersion.V1, detect("\uFEFFCELL BSC\n----\t---\n"));
+        assertEquals(CnaiVersion.V2, detect("..cnai v2\n..capabilities\n.domain CELL\n"));
+        assertEquals(CnaiVersion.V2, detect("\uFEFF..cnai v2\n"));
+        assertEquals(CnaiVersion.UNKNOWN, detect("CELL BSC\nC1 B1\n"));
+        assertEquals(CnaiVersion.UNKNOWN, detect("CELL BSC"));
+        assertEquals(CnaiVersion.UNKNOWN, detect(""));
+    }
+
+    public void testDetectGzip() throws IOException
+    {
+        Path file = Files.createTempFile("cnai", ".gz");
+        try(OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))){
+            out.write("CELL BSC\n---- ---\nC1 B1\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(CnaiVersion.V1, CnaiVersion.detect(file));
+    }
+
+    private static int detect(String head)
+    {
+        byte[] bytes = head.getBytes(StandardCharsets.UTF_8);
+        return CnaiVersion.detect(bytes, bytes.length);
+    }
+}
@@ -0,0 +1,47 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the slots remembered by position follow the records' layouts.
+ */
+public class ColumnSlotsTest extends TestCase
+{
+    public void testSlotByPosition()
+    {
+        ColumnSlots slots = new ColumnSlots(2);
+        slots.add("A");
+        slots.add("B");
+
+        assertEquals(0, slots.slot(0, "A"));
+        assertEquals(1, slots.slot(1, "B"));
+        assertEquals(-1, slots.slot(2, "C"));
+
+        //Same layout
+        assertEquals(0, slots.slot(0, "A"));
+        assertEquals(1, slots.slot(1, "B"));
+        assertEquals(-1, slots.slot(2, "C"));
+
+        //Another layout, with a name equal to but not the same as a known one
+        assertEquals(1, slots.slot(0, new String("B")));
+        assertEquals(-1, slots.slot(1, "C"));
+        assertEquals(0, slots.slot(2, "A"));
+
+        //A name given a slot is no longer remembered without one
+        assertEquals(2, slots.add("C"));
+        assertEquals(2, slots.slot(1, "C"));
+        assertEquals(3, slots.size());
+    }
+
+    public void testLongRecord()
+    {
+        ColumnSlots slots = new ColumnSlots(1);
+        int n = CnaiRecord.INITIAL_CAPACITY * 3;
+        for(int i = 0; i < n; i++){
+            assertEquals(i, slots.add("P" + i));
+        }
+        for(int i = 0; i < n; i++){
+            assertEquals(i, slots.slot(i, "P" + i));
+        }
+    }
+}
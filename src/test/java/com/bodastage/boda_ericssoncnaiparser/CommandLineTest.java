@@ -0,0 +1,50 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the parsing of the numeric command line values.
+ */
+public class CommandLineTest extends TestCase
+{
+    public void testParseSize()
+    {
+        assertEquals(512, BodaCNAIParser.parseSize("write-buffer", "512"));
+        assertEquals(64 << 10, BodaCNAIParser.parseSize("write-buffer", "64k"));
+        assertEquals(1 << 20, BodaCNAIParser.parseSize("write-buffer", " 1M "));
+        assertEquals(3L << 30, BodaCNAIParser.parseSize("delta-memory", "3G"));
+        for(String invalid : new String[]{ "12Q", "", "0", "-1K", "9999999999G" }){
+            try{
+                BodaCNAIParser.parseSize("write-buffer", invalid);
+                fail(invalid);
+            }catch(IllegalArgumentException e){
+                assertTrue(e.getMessage().startsWith("Invalid --write-buffer size"));
+            }
+        }
+    }
+
+    public void testParseBufferSize()
+    {
+        assertEquals(64 << 10, BodaCNAIParser.parseBufferSize("write-buffer", "64K"));
+        assertEquals(2047 << 20, BodaCNAIParser.parseBufferSize("write-buffer", "2047M"));
+        try{
+            BodaCNAIParser.parseBufferSize("write-buffer", "2G");
+            fail();
+        }catch(IllegalArgumentException e){
+            assertTrue(e.getMessage().startsWith("Invalid --write-buffer size: 2G"));
+        }
+    }
+
+    public void testParseCount()
+    {
+        assertEquals(4, BodaCNAIParser.parseCount("threads", "4"));
+        for(String invalid : new String[]{ "x", "0", "1.5" }){
+            try{
+                BodaCNAIParser.parseCount("threads", invalid);
+                fail(invalid);
+            }catch(IllegalArgumentException e){
+                assertTrue(e.getMessage().startsWith("Invalid --threads value"));
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks that gzip files and zip archives are parsed like the files they
+ * contain.
+ */
+public class CompressedInputTest extends TestCase
+{
+    private static final String DUMP = "..cnai v2\n"
+            + "..capabilities CAP\n"
+            + ".subnetwork NET\n"
+            + ".utctime 2020-01-01 00:00\n"
+            + ".domain CELL\n"
+            + ".set CELL1\n"
+            + "P0=\"a, b\"\n"
+            + "P1=1\n"
+            + ".set CELL1\n"
+            + "USERDATA=\"x\"\n"
+            + "..end\n";
+
+    private File inputDirectory;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        inputDirectory = Files.createTempDirectory("cnai-in").toFile();
+    }
+
+    public void testGzipFileIsParsed() throws IOException
+    {
+        try(OutputStream out = new GZIPOutputStream(
+                new FileOutputStream(new File(inputDirectory, "dump.txt")))){
+            out.write(DUMP.getBytes(StandardCharsets.UTF_8));
+        }
+
+        for(boolean nio : new boolean[]{false, true}){
+            assertEquals("FILENAME,DATETIME,capabilities,subnetwork,domain,set,P0,P1,USERDATA\n"
+                    + "dump.txt,2020-01-01 00:00,CAP,NET,CELL,CELL1,\"a, b\",1,x\n",
+                    parse(nio, false));
+        }
+    }
+
+    public void testEachZipEntryIsParsed() throws IOException
+    {
+        try(ZipOutputStream out = new ZipOutputStream(
+                new FileOutputStream(new File(inputDirectory, "dumps.zip")))){
+            for(String name : new String[]{"a/dump1.txt", "a/dump2.txt"}){
+                out.putNextEntry(new ZipEntry(name));
+                out.write(DUMP.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+
+        for(boolean pipelined : new boolean[]{false, true}){
+            assertEquals("FILENAME,DATETIME,capabilities,subnetwork,domain,set,P0,P1,USERDATA\n"
+                    + "dump1.txt,2020-01-01 00:00,CAP,NET,CELL,CELL1,\"a, b\",1,x\n"
+                    + "dump2.txt,2020-01-01 00:00,CAP,NET,CELL,CELL1,\"a, b\",1,x\n",
+                    parse(false, pipelined));
+        }
+    }
+
+    public void testReadAheadHandsOverEveryByte() throws IOException
+    {
+        //Enough chunks for the buffers to be filled again several times
+        byte[] data = new byte[ReadAheadInputStream.CHUNK_SIZE * 11 + 123];
+        new Random(7).nextBytes(data);
+
+        //A source returning odd amounts, read in amounts of all sizes
+        ByteArrayOutputStream read = new ByteArrayOutputStream(data.length);
+        try(ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data){
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len){
+                        return super.read(b, off, Math.min(len, 1000));
+                    }
+                })){
+            byte[] buf = new byte[ReadAheadInputStream.CHUNK_SIZE * 2];
+            for(int i = 0, n; ; i++){
+                if(i % 3 == 0){
+                    int c = in.read();
+                    if(c < 0) break;
+                    read.write(c);
+                    continue;
+                }
+                n = in.read(buf, 0, 1 + (i * 7919) % buf.length);
+                if(n < 0) break;
+                read.write(buf, 0, n);
+            }
+        }
+        assertTrue(Arrays.equals(data, read.toByteArray()));
+    }
+
+    private String parse(boolean nio, boolean pipelined) throws IOException
+    {
+        File outputDirectory = Files.createTempDirectory("cnai-out").toFile();
+
+        CnaiParser.builder()
+                .outputDirectory(outputDirectory.getAbsolutePath())
+                .nioReader(nio)
+                .pipelined(pipelined)
+                .build()
+                .parse(inputDirectory.getAbsolutePath());
+
+        return new String(Files.readAllBytes(new File(outputDirectory, "CELL.csv").toPath()),
+                StandardCharsets.UTF_8);
+    }
+}
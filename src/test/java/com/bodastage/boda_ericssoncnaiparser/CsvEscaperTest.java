@@ -0,0 +1,78 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import junit.framework.TestCase;
+
+/**
+ * Checks that {@link CsvEscaper} formats values the same way toCSVFormat did 
+ * before 2.4.0.
+ */
+public class CsvEscaperTest extends TestCase
+{
+    /**
+     * toCSVFormat as it was up to 2.3.0.
+     */
+    private static String legacyToCSVFormat(String s) {
+        s = s.replaceAll("^\"","").replaceAll("\"$","");
+        
+        String csvValue = s;
+        
+        //Check if value contains comma
+        if (s.contains(",")) {
+            csvValue = "\"" + s + "\"";
+        }
+
+        if (s.contains("\"")) {
+            csvValue = "\"" + s.replace("\"", "\"\"") + "\"";
+        }
+
+        return csvValue;
+    }
+    
+    public void testExamples() throws IOException
+    {
+        String[] values = {
+            "", "ACTIVE", "\"plain\"", "\"", "\"\"", "\"\"\"", "a,b", "\"a, b\"",
+            "a\"b", "\"a\"b\"", "a\"\"", "say \"hi\", bye", "line1\nline2",
+            "\"quoted\"\n", "\"quoted\"\r\n", "a\r\"\n", "x\"\r", "x\"\u2028",
+            "x\"\u0085", "x\"\n\n", ",", "\",\"", "\"\n", "\"\r\n"
+        };
+        for(String value : values){
+            assertEscapesLikeRegex(value, legacyToCSVFormat(value));
+        }
+    }
+    
+    /**
+     * Compare all the strings of up to 5 characters made of the characters 
+     * that matter to the format.
+     */
+    public void testAllShortStrings() throws IOException
+    {
+        char[] alphabet = {'a', ',', '"', '\n', '\r', '\u0085', '\u2028', ' '};
+        char[] chars = new char[5];
+        for(int length = 0; length <= chars.length; length++){
+            int combinations = (int) Math.pow(alphabet.length, length);
+            for(int n = 0; n < combinations; n++){
+                for(int i = 0, m = n; i < length; i++, m /= alphabet.length){
+                    chars[i] = alphabet[m % alphabet.length];
+                }
+                String value = new String(chars, 0, length);
+                assertEscapesLikeRegex(value, legacyToCSVFormat(value));
+            }
+        }
+    }
+    
+    private static void assertEscapesLikeRegex(String value, String expected) throws IOException
+    {
+        assertEquals(value, expected, CsvEscaper.escape(value));
+        
+        StringBuilder sb = new StringBuilder("x");
+        CsvEscaper.escape(value, sb);
+        assertEquals(value, "x" + expected, sb.toString());
+        
+        StringWriter w = new StringWriter();
+        CsvEscaper.escape(value, w);
+        assertEquals(value, expected, w.toString());
+    }
+}
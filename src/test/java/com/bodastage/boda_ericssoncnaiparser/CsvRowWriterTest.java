@@ -0,0 +1,55 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Checks the rows built by {@link CsvRowWriter}.
+ */
+public class CsvRowWriterTest extends TestCase
+{
+    public void testEmptyFields() throws IOException
+    {
+        StringWriter w = new StringWriter();
+        CsvRowWriter row = new CsvRowWriter();
+
+        row.begin().emptyField().writeTo(w);
+        row.begin().emptyField().emptyField().emptyField().writeTo(w);
+        row.begin().field("a").emptyField().csvField("").field("").writeTo(w);
+        row.begin().writeTo(w);
+        assertEquals("\n,,\na,,,\n\n", w.toString());
+    }
+
+    public void testQuotedFields() throws IOException
+    {
+        StringWriter w = new StringWriter();
+        new CsvRowWriter().begin()
+                .field("set")
+                .csvField("\"a, b\"")
+                .csvField("say \"hi\" now")
+                .csvField("\"plain\"")
+                .field("\"as is\"")
+                .writeTo(w);
+        assertEquals("set,\"a, b\",\"say \"\"hi\"\" now\",plain,\"as is\"\n", w.toString());
+    }
+
+    public void testReuseAcrossRows() throws IOException
+    {
+        StringWriter w = new StringWriter();
+        CsvRowWriter row = new CsvRowWriter();
+
+        //A row longer than the buffers, then shorter ones that must not keep
+        //any of its characters
+        char[] c = new char[5000];
+        Arrays.fill(c, 'x');
+        String longValue = new String(c);
+        row.begin().field("1").csvField(longValue + ",").writeTo(w);
+        row.begin().field("2").csvField("b").writeTo(w);
+        assertEquals("2,b", row.toString());
+        row.begin().field("3").writeTo(w);
+
+        assertEquals("1,\"" + longValue + ",\"\n2,b\n3\n", w.toString());
+    }
+}
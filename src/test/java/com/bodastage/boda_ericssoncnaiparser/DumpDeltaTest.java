@@ -0,0 +1,208 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Checks the changes written between two dumps.
+ */
+public class DumpDeltaTest extends TestCase
+{
+    private Path oldDump;
+    private Path newDump;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        oldDump = Files.createTempFile("cnai-old", ".txt");
+        try(PrintWriter pw = new PrintWriter(oldDump.toFile())){
+            pw.print("..cnai v2\n.domain CELL\n");
+            entity(pw, "A", "P0=1", "P1=2");
+            entity(pw, "B", "P0=1", "P1=2");
+            entity(pw, "C", "P0=1", "P1=\"x, y\"");
+            pw.print("..end\n");
+        }
+
+        newDump = Files.createTempFile("cnai-new", ".txt");
+        try(PrintWriter pw = new PrintWriter(newDump.toFile())){
+            pw.print("..cnai v2\n.domain CELL\n");
+            entity(pw, "C", "P0=1", "P2=3");
+            entity(pw, "A", "P0=1", "P1=2");
+            entity(pw, "D", "P0=5", "P1=6");
+            pw.print("..end\n");
+        }
+    }
+
+    public void testChanges() throws IOException
+    {
+        List<String> expected = Arrays.asList(
+                "CHANGE,set,PARAMETER,OLD_VALUE,NEW_VALUE",
+                "MODIFIED,C,P2,,3",
+                "MODIFIED,C,P1,\"x, y\",",
+                "ADDED,D,P0,,5",
+                "ADDED,D,P1,,6",
+                "ADDED,D,USERDATA,,u",
+                "REMOVED,B,P0,1,",
+                "REMOVED,B,P1,2,",
+                "REMOVED,B,USERDATA,u,");
+
+        File out = Files.createTempDirectory("cnai-delta").toFile();
+        DumpDelta delta = new DumpDelta(CnaiParser.builder().build(), out.getAbsolutePath(), 1L << 30);
+        delta.compare(oldDump.toString(), newDump.toString());
+        assertEquals(expected, Files.readAllLines(new File(out, "CELL.csv").toPath(), StandardCharsets.UTF_8));
+        assertEquals(1, delta.getAdded());
+        assertEquals(1, delta.getRemoved());
+        assertEquals(1, delta.getModified());
+
+        //Partitioned on disk, the same rows in another order
+        File partitioned = Files.createTempDirectory("cnai-delta").toFile();
+        new DumpDelta(CnaiParser.builder().build(), partitioned.getAbsolutePath(), 16)
+                .compare(oldDump.toString(), newDump.toString());
+        List<String> rows = Files.readAllLines(new File(partitioned, "CELL.csv").toPath(), StandardCharsets.UTF_8);
+        assertEquals(expected.get(0), rows.get(0));
+        assertEquals(sorted(expected), sorted(rows));
+        assertEquals(Arrays.asList("CELL.csv"), Arrays.asList(partitioned.list()));
+    }
+
+    public void testDuplicateSets() throws IOException
+    {
+        Path older = Files.createTempFile("cnai-old", ".txt");
+        Path newer = Files.createTempFile("cnai-new", ".txt");
+        try(PrintWriter o = new PrintWriter(older.toFile());
+                PrintWriter n = new PrintWriter(newer.toFile())){
+            o.print("..cnai v2\n.domain CELL\n");
+            entity(o, "A", "P0=1");
+            entity(o, "B", "P0=1");
+            entity(o, "B", "P0=2");
+            o.print("..end\n");
+
+            n.print("..cnai v2\n.domain CELL\n");
+            entity(n, "A", "P0=1");
+            entity(n, "A", "P0=3");
+            entity(n, "C", "P0=4");
+            entity(n, "C", "P0=4");
+            entity(n, "B", "P0=1");
+            n.print("..end\n");
+        }
+
+        List<String> expected = Arrays.asList(
+                "CHANGE,set,PARAMETER,OLD_VALUE,NEW_VALUE",
+                "DUPLICATE,B,P0,2,",
+                "DUPLICATE,B,USERDATA,u,",
+                "DUPLICATE,A,P0,,3",
+                "DUPLICATE,A,USERDATA,,u",
+                "ADDED,C,P0,,4",
+                "ADDED,C,USERDATA,,u",
+                "DUPLICATE,C,P0,,4",
+                "DUPLICATE,C,USERDATA,,u");
+
+        for(long memory : new long[]{ 1L << 30, 16 }){
+            File out = Files.createTempDirectory("cnai-delta").toFile();
+            DumpDelta delta = new DumpDelta(CnaiParser.builder().build(), out.getAbsolutePath(), memory);
+            delta.compare(older.toString(), newer.toString());
+            List<String> rows = Files.readAllLines(new File(out, "CELL.csv").toPath(), StandardCharsets.UTF_8);
+            if(memory > 16){
+                assertEquals(expected, rows);
+            }else{
+                assertEquals(sorted(expected), sorted(rows));
+            }
+            assertEquals(1, delta.getAdded());
+            assertEquals(0, delta.getRemoved());
+            assertEquals(0, delta.getModified());
+            assertEquals(3, delta.getDuplicates());
+        }
+    }
+
+    public void testParameterFile() throws IOException
+    {
+        //Only P1 of CELL is compared, and the SITE domain not at all
+        try(PrintWriter pw = new PrintWriter(new FileWriter(newDump.toFile(), true))){
+            pw.print("..cnai v2\n.domain SITE\n");
+            entity(pw, "S", "S0=1");
+            pw.print("..end\n");
+        }
+        Path parameters = Files.createTempFile("cnai", ".cfg");
+        Files.write(parameters, Arrays.asList("CELL:P1"));
+
+        File out = Files.createTempDirectory("cnai-delta").toFile();
+        DumpDelta delta = new DumpDelta(CnaiParser.builder().parameterFile(parameters.toString()).build(),
+                out.getAbsolutePath(), 1L << 30);
+        delta.compare(oldDump.toString(), newDump.toString());
+        assertEquals(Arrays.asList(
+                "CHANGE,set,PARAMETER,OLD_VALUE,NEW_VALUE",
+                "MODIFIED,C,P1,\"x, y\",",
+                "ADDED,D,P1,,6",
+                "REMOVED,B,P1,2,"),
+                Files.readAllLines(new File(out, "CELL.csv").toPath(), StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("CELL.csv"), Arrays.asList(out.list()));
+    }
+
+    public void testPartitionsSplitAgain() throws IOException
+    {
+        Path older = Files.createTempFile("cnai-old", ".txt");
+        Path newer = Files.createTempFile("cnai-new", ".txt");
+        try(PrintWriter o = new PrintWriter(older.toFile());
+                PrintWriter n = new PrintWriter(newer.toFile())){
+            o.print("..cnai v2\n.domain CELL\n");
+            n.print("..cnai v2\n.domain CELL\n");
+            for(int e = 0; e < 3000; e++){
+                if(e % 7 != 0) entity(o, "E" + e, "P0=" + e, "P1=x");
+                if(e % 11 != 0) entity(n, "E" + e, "P0=" + (e % 5 == 0 ? -e : e), "P1=x");
+            }
+            o.print("..end\n");
+            n.print("..end\n");
+        }
+
+        File out = Files.createTempDirectory("cnai-delta").toFile();
+        DumpDelta delta = new DumpDelta(CnaiParser.builder().build(), out.getAbsolutePath(), 1L << 30);
+        delta.compare(older.toString(), newer.toString());
+
+        //More than MAX_PARTITIONS partitions are needed
+        File partitioned = Files.createTempDirectory("cnai-delta").toFile();
+        DumpDelta split = new DumpDelta(CnaiParser.builder().build(), partitioned.getAbsolutePath(), 64);
+        split.compare(older.toString(), newer.toString());
+
+        assertEquals(sorted(Files.readAllLines(new File(out, "CELL.csv").toPath(), StandardCharsets.UTF_8)),
+                sorted(Files.readAllLines(new File(partitioned, "CELL.csv").toPath(), StandardCharsets.UTF_8)));
+        assertEquals(delta.getAdded(), split.getAdded());
+        assertEquals(delta.getRemoved(), split.getRemoved());
+        assertEquals(delta.getModified(), split.getModified());
+        assertEquals(Arrays.asList("CELL.csv"), Arrays.asList(partitioned.list()));
+    }
+
+    public void testPartitionHashDiffersByLevel()
+    {
+        //The keys of one partition are spread again at the next level
+        boolean[] used = new boolean[4];
+        for(int i = 0; i < 10000; i++){
+            String key = "CELL\nE" + i;
+            if(DumpDelta.partition(key, 0, 4) == 0) used[DumpDelta.partition(key, 1, 4)] = true;
+        }
+        assertTrue(Arrays.toString(used), used[0] && used[1] && used[2] && used[3]);
+    }
+
+    private static void entity(PrintWriter pw, String set, String... parameters)
+    {
+        pw.print(".set " + set + "\n");
+        for(String p : parameters){
+            pw.print(p + "\n");
+        }
+        pw.print(".set " + set + "\n");
+        pw.print("USERDATA=\"u\"\n");
+    }
+
+    private static List<String> sorted(List<String> rows)
+    {
+        String[] a = rows.toArray(new String[0]);
+        Arrays.sort(a);
+        return Arrays.asList(a);
+    }
+}
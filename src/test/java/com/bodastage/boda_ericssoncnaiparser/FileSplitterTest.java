@@ -0,0 +1,91 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Checks that parsing a file range by range, each range starting in the
+ * context found by scanning backwards, gives the same csv files as parsing
+ * the whole file.
+ */
+public class FileSplitterTest extends TestCase
+{
+    private Path dump;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        dump = Files.createTempFile("cnai", ".txt");
+        try(PrintWriter pw = new PrintWriter(dump.toFile())){
+            pw.print("..cnai v2\r\n");
+            pw.print("..capabilities CAP\r\n");
+            pw.print(".subnetwork NET0\r\n");
+            pw.print(".utctime 2020-01-01 00:00\r\n");
+            for(int r = 0; r < 60; r++){
+                if(r % 20 == 0) pw.print(".domain D" + r + "\r\n");
+                if(r % 25 == 7) pw.print(".subnetwork NET" + r + "\r\n");
+                pw.print(".set E" + r + "\r\n");
+                for(int p = 0; p < 2 + r % 3; p++){
+                    pw.print("P" + p + "=\"v, " + r + "\"\r\n");
+                }
+                if(r % 11 == 0) pw.print("no separator\r\n");
+                pw.print(".set E" + r + "\r\n");
+                pw.print("USERDATA=\"u\"\r\n");
+
+                //A USERDATA line on its own does not end a network entity
+                if(r % 13 == 0) pw.print("USERDATA=\"again\"\r\n");
+            }
+            pw.print("..end\r\n");
+        }
+    }
+
+    public void testRangesParseLikeTheWholeFile() throws IOException
+    {
+        File whole = Files.createTempDirectory("cnai-out").toFile();
+        CnaiParser parser = CnaiParser.builder()
+                .outputDirectory(whole.getAbsolutePath())
+                .build();
+        parser.parse(dump.toString());
+
+        //Split at every possible point
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(0L);
+        try(FileChannel channel = FileChannel.open(dump)){
+            long size = channel.size();
+            for(long b = FileSplitter.nextBoundary(channel, 1, size); b > 0 && b < size;
+                    b = FileSplitter.nextBoundary(channel, b + 1, size)){
+                boundaries.add(b);
+            }
+            boundaries.add(size);
+            assertTrue(boundaries.size() > 20);
+
+            File ranges = Files.createTempDirectory("cnai-out").toFile();
+            RangeContext context = null;
+            try(DomainWriters output = parser.newOutput(ranges.getAbsolutePath())){
+                for(int r = 0; r + 1 < boundaries.size(); r++){
+                    if(r > 0){
+                        context = FileSplitter.scanBackwards(channel,
+                                boundaries.get(r - 1), boundaries.get(r)).after(context);
+                    }
+                    parser.newSession(output, dump.getFileName().toString())
+                            .parseRange(dump, boundaries.get(r), boundaries.get(r + 1), context);
+                }
+            }
+
+            String[] files = whole.list();
+            assertEquals(3, files.length);
+            for(String name : files){
+                assertEquals(name,
+                        new String(Files.readAllBytes(new File(whole, name).toPath()), "UTF-8"),
+                        new String(Files.readAllBytes(new File(ranges, name).toPath()), "UTF-8"));
+            }
+        }
+    }
+}
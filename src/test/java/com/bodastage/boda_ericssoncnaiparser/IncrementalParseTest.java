@@ -0,0 +1,97 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Checks that an incremental run writes the same files as a full run.
+ */
+public class IncrementalParseTest extends TestCase
+{
+    private Path input;
+    private Path cache;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        input = Files.createTempDirectory("cnai-in");
+        cache = Files.createTempDirectory("cnai-cache");
+        for(int f = 0; f < 3; f++){
+            writeDump(input.resolve("dump" + f + ".txt"), f, "P" + f);
+        }
+    }
+
+    public void testUnchangedFilesAreReused() throws IOException
+    {
+        assertSameAsFullRun();
+        String manifest = new String(Files.readAllBytes(cache.resolve(ShardCache.MANIFEST)), "UTF-8");
+
+        //Nothing changed
+        assertSameAsFullRun();
+        assertEquals(manifest, new String(Files.readAllBytes(cache.resolve(ShardCache.MANIFEST)), "UTF-8"));
+
+        //A changed file with a header of its own, a new file and a removed one
+        writeDump(input.resolve("dump1.txt"), 1, "Q");
+        writeDump(input.resolve("dump3.txt"), 3, "P3");
+        Files.delete(input.resolve("dump0.txt"));
+        assertSameAsFullRun();
+        assertFalse(new String(Files.readAllBytes(cache.resolve(ShardCache.MANIFEST)), "UTF-8")
+                .contains("dump0.txt"));
+    }
+
+    public void testConfigurationKeyIgnoresLineOrder() throws IOException
+    {
+        Path a = Files.createTempFile("cnai", ".cfg");
+        Files.write(a, Arrays.asList("CELL:set,P0,P1", "BSC:set,Q"));
+        Path b = Files.createTempFile("cnai", ".cfg");
+        Files.write(b, Arrays.asList("BSC:set,Q", "CELL:set,P0,P1"));
+        Path c = Files.createTempFile("cnai", ".cfg");
+        Files.write(c, Arrays.asList("BSC:set,Q", "CELL:set,P1,P0"));
+
+        String key = CnaiParser.builder().parameterFile(a.toString()).build().canonicalParameters();
+        assertEquals(key, CnaiParser.builder().parameterFile(b.toString()).build().canonicalParameters());
+        assertFalse(key.equals(CnaiParser.builder().parameterFile(c.toString()).build().canonicalParameters()));
+        assertFalse(key.equals(CnaiParser.builder().build().canonicalParameters()));
+    }
+
+    private void assertSameAsFullRun() throws IOException
+    {
+        File full = Files.createTempDirectory("cnai-out").toFile();
+        CnaiParser.builder().outputDirectory(full.getAbsolutePath()).threads(2)
+                .build().parse(input.toString());
+
+        File incremental = Files.createTempDirectory("cnai-out").toFile();
+        CnaiParser.builder().outputDirectory(incremental.getAbsolutePath())
+                .cacheDirectory(cache.toString()).build().parse(input.toString());
+
+        String[] names = full.list();
+        assertEquals(names.length, incremental.list().length);
+        for(String name : names){
+            assertTrue(name, Arrays.equals(
+                    Files.readAllBytes(new File(full, name).toPath()),
+                    Files.readAllBytes(new File(incremental, name).toPath())));
+        }
+    }
+
+    private static void writeDump(Path file, int n, String extraParameter) throws IOException
+    {
+        try(PrintWriter pw = new PrintWriter(file.toFile())){
+            pw.print("..cnai v2\n");
+            pw.print(".utctime 2020-01-0" + (n + 1) + " 00:00\n");
+            pw.print(".domain CELL\n");
+            for(int r = 0; r < 10; r++){
+                pw.print(".set E" + r + "\n");
+                pw.print("P=" + r + "\n");
+                pw.print(extraParameter + "=" + n + "\n");
+                pw.print(".set E" + r + "\n");
+                pw.print("USERDATA=\"u\"\n");
+            }
+            pw.print("..end\n");
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Checks the selection of the files of an input directory.
+ */
+public class InputFileSelectorTest extends TestCase
+{
+    private Path input;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        input = Files.createTempDirectory("cnai-in");
+        for(String name : new String[]{ "b.txt", "a.txt", "notes.md", "x/c.txt", "x/d.gz",
+                "x/archive/e.txt", "x/y/f.txt" }){
+            Path file = input.resolve(name);
+            Files.createDirectories(file.getParent());
+            Files.write(file, new byte[0]);
+        }
+    }
+
+    public void testTopLevel() throws IOException
+    {
+        assertEquals(Arrays.asList("a.txt", "b.txt", "notes.md"), select(false,
+                Collections.<String>emptyList(), Collections.<String>emptyList()));
+    }
+
+    public void testRecursiveWithGlobs() throws IOException
+    {
+        assertEquals(Arrays.asList("a.txt", "b.txt", "x/c.txt", "x/d.gz", "x/y/f.txt"),
+                select(true, Arrays.asList("*.txt", "*.gz"), Arrays.asList("archive")));
+        assertEquals(Arrays.asList("x/c.txt", "x/d.gz"),
+                select(true, Arrays.asList("x/*"), Collections.<String>emptyList()));
+        assertEquals(Arrays.asList("a.txt", "b.txt", "notes.md"),
+                select(true, Collections.<String>emptyList(), Arrays.asList("x")));
+    }
+
+    public void testParseRecursive() throws IOException
+    {
+        Files.write(input.resolve("x/y/f.txt"),
+                "..cnai v2\n.domain CELL\n.set A\nP=1\n.set A\nUSERDATA=\"u\"\n..end\n".getBytes("UTF-8"));
+        File out = Files.createTempDirectory("cnai-out").toFile();
+        CnaiParser.builder().outputDirectory(out.getAbsolutePath()).recursive(true)
+                .include("f.txt").build().parse(input.toString());
+
+        List<String> lines = Files.readAllLines(new File(out, "CELL.csv").toPath());
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).startsWith("f.txt,"));
+    }
+
+    private List<String> select(boolean recursive, List<String> includes, List<String> excludes) throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        for(File f : new InputFileSelector(recursive, includes, excludes).select(input)){
+            names.add(input.relativize(f.toPath()).toString().replace(File.separatorChar, '/'));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,103 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.nio.charset.StandardCharsets;
+import junit.framework.TestCase;
+
+/**
+ * Checks the line types and the parameter lines found by the classifier, for
+ * lines given as strings and as bytes.
+ */
+public class LineClassifierTest extends TestCase
+{
+    public void testDirectives()
+    {
+        assertType(LineClassifier.CNAI, "..cnai v2");
+        assertType(LineClassifier.END, "..end");
+        assertType(LineClassifier.CAPABILITIES, "..capabilities BASIC");
+        assertType(LineClassifier.SET, ".set CELL1");
+        assertType(LineClassifier.SUBNETWORK, ".subnetwork NET");
+        assertType(LineClassifier.DOMAIN, ".domain CELL");
+        assertType(LineClassifier.UTCTIME, ".utctime 2020-01-01 00:00");
+
+        assertValue("CELL1", ".set CELL1", LineClassifier.SET);
+        assertValue("CELL", ".domain CELL", LineClassifier.DOMAIN);
+        assertValue("BASIC", "..capabilities BASIC", LineClassifier.CAPABILITIES);
+        assertValue("NET", ".subnetwork NET", LineClassifier.SUBNETWORK);
+        assertValue("2020-01-01 00:00", ".utctime 2020-01-01 00:00", LineClassifier.UTCTIME);
+        assertValue("", ".domain", LineClassifier.DOMAIN);
+    }
+
+    public void testOtherLinesAreParameters()
+    {
+        assertType(LineClassifier.PARAMETER, "P=1");
+        assertType(LineClassifier.PARAMETER, ".");
+        assertType(LineClassifier.PARAMETER, "");
+        assertType(LineClassifier.PARAMETER, ".setting=1");
+        assertType(LineClassifier.PARAMETER, "..other");
+
+        //Up to 2.3 a directive found anywhere in a line was taken, so these
+        //were a .set, a .domain and a ..end line
+        assertType(LineClassifier.PARAMETER, " .set CELL1");
+        assertType(LineClassifier.PARAMETER, "\t.domain CELL");
+        assertType(LineClassifier.PARAMETER, "NAME=\"see .set X and ..end\"");
+    }
+
+    public void testSeparator()
+    {
+        assertSeparator(1, "P=1");
+        assertSeparator(1, "P=a=b");
+        assertSeparator(4, "NAME=\"x=y\"");
+        assertSeparator(2, " P=1");
+        assertSeparator(1, "P==");
+        assertSeparator(-1, "P");
+        assertSeparator(-1, "");
+    }
+
+    public void testUserData()
+    {
+        assertUserData(true, "USERDATA=\"u\"");
+        assertUserData(true, "USERDATA=");
+        assertUserData(true, "USERDATA=a=b");
+        assertUserData(false, "USERDATAX=1");
+        assertUserData(false, "USER=1");
+        assertUserData(false, " USERDATA=1");
+        assertUserData(false, "P=USERDATA=1");
+        assertUserData(false, "USERDATA");
+    }
+
+    private static void assertType(int type, String line)
+    {
+        assertEquals(line, type, LineClassifier.classify(line));
+
+        //The same line in the middle of a larger array
+        byte[] bytes = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);
+        assertEquals(line, type, LineClassifier.classify(bytes, 2, bytes.length - 4));
+    }
+
+    private static void assertValue(String value, String line, int type)
+    {
+        assertEquals(value, LineClassifier.directiveValue(line, type));
+
+        byte[] bytes = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);
+        int offset = LineClassifier.directiveValueOffset(bytes, 2, bytes.length - 4, type);
+        assertEquals(value, new String(bytes, offset, bytes.length - 2 - offset, StandardCharsets.UTF_8));
+    }
+
+    private static void assertSeparator(int separator, String line)
+    {
+        assertEquals(line, separator, LineClassifier.separator(line));
+
+        byte[] bytes = ("xx" + line + "=y").getBytes(StandardCharsets.UTF_8);
+        assertEquals(line, separator < 0 ? -1 : separator + 2,
+                LineClassifier.separator(bytes, 2, bytes.length - 4));
+    }
+
+    private static void assertUserData(boolean userData, String line)
+    {
+        assertEquals(line, userData, LineClassifier.isUserData(line, LineClassifier.separator(line)));
+
+        byte[] bytes = ("xx" + line).getBytes(StandardCharsets.UTF_8);
+        assertEquals(line, userData, LineClassifier.isUserData(bytes, 2,
+                LineClassifier.separator(bytes, 2, bytes.length - 2)));
+    }
+}
@@ -0,0 +1,70 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Checks the malformed line policies and the errors file.
+ */
+public class MalformedLinesTest extends TestCase
+{
+    private Path input;
+    private File out;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        input = Files.createTempDirectory("cnai-in");
+        out = Files.createTempDirectory("cnai-out").toFile();
+        try(PrintWriter pw = new PrintWriter(input.resolve("dump.txt").toFile())){
+            pw.print("..cnai v2\n.domain CELL\n");
+            pw.print(".set A\nP=1\nbad \"one\"\n.set A\nUSERDATA=\"u\"\n");
+            pw.print("bad two\nbad three\n");
+            pw.print("..end\n");
+        }
+    }
+
+    public void testSkip() throws IOException
+    {
+        Path errors = Files.createTempFile("cnai-errors", ".csv");
+        MalformedLines malformed = new MalformedLines(MalformedLines.UNLIMITED, 2, errors);
+        try{
+            CnaiParser.builder().outputDirectory(out.getAbsolutePath()).malformedLines(malformed)
+                    .build().parse(input.toString());
+        }finally{
+            malformed.close();
+        }
+
+        assertEquals(3, malformed.getCount());
+        assertEquals(Arrays.asList(
+                "FILENAME,LINE,TEXT",
+                "dump.txt,5,\"bad \"\"one\"\"\"",
+                "dump.txt,8,\"bad two\""),
+                Files.readAllLines(errors, StandardCharsets.UTF_8));
+        assertTrue(new File(out, "CELL.csv").isFile());
+    }
+
+    public void testStopAfter() throws IOException
+    {
+        for(boolean nio : new boolean[]{ false, true }){
+            MalformedLines malformed = new MalformedLines(MalformedLines.limit("2"), 0, null);
+            try{
+                CnaiParser.builder().outputDirectory(out.getAbsolutePath()).nioReader(nio)
+                        .malformedLines(malformed).build().parse(input.toString());
+                fail("The run should stop at the second malformed line");
+            }catch(MalformedLineException e){
+                assertEquals("dump.txt", e.getFileName());
+                assertEquals(8, e.getLineNumber());
+            }
+        }
+
+        assertEquals(1, MalformedLines.limit("fail"));
+        assertEquals(MalformedLines.UNLIMITED, MalformedLines.limit("skip"));
+    }
+}
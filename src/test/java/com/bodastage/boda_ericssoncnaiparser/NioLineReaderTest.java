@@ -0,0 +1,114 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Checks that the lines read as bytes are the lines of BufferedReader.
+ */
+public class NioLineReaderTest extends TestCase
+{
+    public void testLoneCR() throws IOException
+    {
+        assertLines("a\rb\r\rc\n", "a", "b", "", "c");
+    }
+
+    public void testCRLFAcrossBlocks() throws IOException
+    {
+        //Every read ends between the '\r' and the '\n' once
+        assertLines("ab\r\ncd\r\n\r\nef\r\n", "ab", "cd", "", "ef");
+    }
+
+    public void testLineLongerThanBuffer() throws IOException
+    {
+        char[] c = new char[100];
+        Arrays.fill(c, 'x');
+        String longLine = new String(c);
+        assertLines("a\n" + longLine + "\nb\n", "a", longLine, "b");
+    }
+
+    public void testLastLineWithoutTerminator() throws IOException
+    {
+        assertLines("a\nb", "a", "b");
+        assertLines("a\r\nlast", "a", "last");
+    }
+
+    public void testMultibyteCharacterAcrossBlocks() throws IOException
+    {
+        //Two, three and four byte characters
+        assertLines("P=\u00e9t\u00e9\nQ=\u20ac\u20ac\r\nR=\ud83d\udce1\n",
+                "P=\u00e9t\u00e9", "Q=\u20ac\u20ac", "R=\ud83d\udce1");
+    }
+
+    /**
+     * Read the text with small buffers and reads of every size up to twice
+     * the buffer, so that each byte is at a block boundary once.
+     */
+    private static void assertLines(String text, String... expected) throws IOException
+    {
+        List<String> reference = new ArrayList<String>();
+        try(BufferedReader br = new BufferedReader(new StringReader(text))){
+            String line;
+            while((line = br.readLine()) != null) reference.add(line);
+        }
+        assertEquals(Arrays.asList(expected), reference);
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for(int bufferSize = 1; bufferSize <= 8; bufferSize++){
+            for(int readSize = 1; readSize <= 2 * bufferSize; readSize++){
+                final List<String> lines = new ArrayList<String>();
+                try(NioLineReader reader = new NioLineReader(
+                        new SlowChannel(bytes, readSize), bufferSize)){
+                    reader.forEachLine((line, offset, length) ->
+                            lines.add(new String(line, offset, length, StandardCharsets.UTF_8)));
+                }
+                assertEquals("buffer " + bufferSize + ", read " + readSize, reference, lines);
+            }
+        }
+    }
+
+    /**
+     * A channel returning at most a given number of bytes per read.
+     */
+    private static final class SlowChannel implements ReadableByteChannel
+    {
+        private final byte[] bytes;
+        private final int readSize;
+        private int position = 0;
+
+        SlowChannel(byte[] bytes, int readSize)
+        {
+            this.bytes = bytes;
+            this.readSize = readSize;
+        }
+
+        @Override
+        public int read(ByteBuffer dst)
+        {
+            if(position == bytes.length) return -1;
+            int n = Math.min(Math.min(readSize, dst.remaining()), bytes.length - position);
+            dst.put(bytes, position, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
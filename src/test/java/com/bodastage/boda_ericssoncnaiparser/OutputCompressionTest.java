@@ -0,0 +1,89 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks that the compressed csv files hold the uncompressed output.
+ */
+public class OutputCompressionTest extends TestCase
+{
+    private Path input;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        //Several files with headers of their own, so that a parallel run
+        //merges the shards, and enough rows for many compressor chunks
+        input = Files.createTempDirectory("cnai-in");
+        for(int f = 0; f < 3; f++){
+            try(PrintWriter pw = new PrintWriter(input.resolve("dump" + f + ".txt").toFile())){
+                pw.print("..cnai v2\n.domain CELL\n");
+                for(int r = 0; r < 20000; r++){
+                    pw.print(".set E" + f + "_" + r + "\n");
+                    pw.print("P=" + r + "\n");
+                    pw.print("Q" + f + "=" + Integer.toHexString(r * 31 + f) + "\n");
+                    pw.print(".set E" + f + "_" + r + "\n");
+                    pw.print("USERDATA=\"u\"\n");
+                }
+                pw.print(".domain SITE\n.set S" + f + "\nS=" + f + "\n.set S" + f + "\nUSERDATA=\"s\"\n");
+                pw.print("..end\n");
+            }
+        }
+    }
+
+    public void testRoundTrip() throws IOException
+    {
+        File plain = Files.createTempDirectory("cnai-out").toFile();
+        CnaiParser.builder().outputDirectory(plain.getAbsolutePath()).build().parse(input.toString());
+        String[] names = plain.list();
+        Arrays.sort(names);
+        assertEquals(Arrays.asList("CELL.csv", "SITE.csv"), Arrays.asList(names));
+
+        for(OutputCompression compression : new OutputCompression[]{
+                OutputCompression.GZIP, OutputCompression.DEFLATE }){
+            for(int threads = 1; threads <= 3; threads += 2){
+                for(boolean background : new boolean[]{ false, true }){
+                    String run = compression + ", " + threads + " threads, background " + background;
+                    File out = Files.createTempDirectory("cnai-out").toFile();
+                    CnaiParser.builder().outputDirectory(out.getAbsolutePath()).threads(threads)
+                            .outputCompression(compression).backgroundCompression(background)
+                            .build().parse(input.toString());
+
+                    assertEquals(run, names.length, out.list().length);
+                    for(String name : names){
+                        File compressed = new File(out, name + compression.suffix());
+                        assertTrue(run + ": " + name, Arrays.equals(
+                                Files.readAllBytes(new File(plain, name).toPath()),
+                                decompress(compression, compressed)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] decompress(OutputCompression compression, File file) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(InputStream in = compression == OutputCompression.GZIP
+                ? new GZIPInputStream(new FileInputStream(file))
+                : new InflaterInputStream(new FileInputStream(file))){
+            byte[] buffer = new byte[8192];
+            int n;
+            while((n = in.read(buffer)) > 0){
+                bytes.write(buffer, 0, n);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
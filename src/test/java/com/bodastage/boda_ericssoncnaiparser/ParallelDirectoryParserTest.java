@@ -0,0 +1,135 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks that parsing a directory in parallel gives the same csv files as a 
+ * serial run.
+ */
+public class ParallelDirectoryParserTest extends TestCase
+{
+    private File inputDirectory;
+    
+    @Override
+    protected void setUp() throws IOException
+    {
+        inputDirectory = Files.createTempDirectory("cnai-in").toFile();
+        
+        //The first record of each file has a different set of parameters so 
+        //that the later files have to be reparsed with the first file's header
+        for(int f = 0; f < 5; f++){
+            try(PrintWriter pw = new PrintWriter(new File(inputDirectory, "dump" + f + ".txt"))){
+                pw.println("..cnai v2");
+                pw.println("..capabilities CAP");
+                pw.println(".subnetwork NET" + f);
+                pw.println(".utctime 2020-01-01 00:0" + f);
+                for(String domain : new String[]{"BSC", "CELL"}){
+                    pw.println(".domain " + domain);
+                    for(int r = 0; r < 20; r++){
+                        pw.println(".set " + domain + r);
+                        for(int p = 0; p < 3 + (r + f) % 4; p++){
+                            pw.println("P" + p + "=" + (p % 2 == 0 ? "\"a, b\"" : "v" + r));
+                        }
+                        pw.println(".set " + domain + r);
+                        pw.println("USERDATA=\"x\"");
+                    }
+                }
+                pw.println("..end");
+            }
+        }
+    }
+    
+    public void testParallelOutputMatchesSerialOutput() throws IOException
+    {
+        File serial = parse(1);
+        File parallel = parse(3);
+        
+        String[] files = serial.list();
+        assertEquals(2, files.length);
+        assertEquals(files.length, parallel.list().length);
+        for(String name : files){
+            assertTrue(name, java.util.Arrays.equals(
+                    Files.readAllBytes(new File(serial, name).toPath()), 
+                    Files.readAllBytes(new File(parallel, name).toPath())));
+        }
+    }
+    
+    public void testFailedFileIsSkipped() throws IOException
+    {
+        //A gzip header followed by garbage
+        Files.write(new File(inputDirectory, "dump2.txt").toPath(),
+                new byte[]{ 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3 });
+        
+        File serial = parse(1);
+        File parallel = parse(3);
+        for(String name : serial.list()){
+            assertTrue(name, java.util.Arrays.equals(
+                    Files.readAllBytes(new File(serial, name).toPath()), 
+                    Files.readAllBytes(new File(parallel, name).toPath())));
+        }
+    }
+    
+    public void testFailedFileWithOtherColumns() throws IOException
+    {
+        //A gzip dump with the parameters in another order, cut short so that
+        //it fails after some of its records were written
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(PrintWriter pw = new PrintWriter(new GZIPOutputStream(bytes))){
+            pw.println("..cnai v2");
+            pw.println(".domain CELL");
+            for(int r = 0; r < 20000; r++){
+                pw.println(".set FAILED" + r);
+                for(int p = 3; p >= 0; p--){
+                    pw.println("P" + p + "=" + Integer.toHexString(r * 7919 + p));
+                }
+                pw.println(".set FAILED" + r);
+                pw.println("USERDATA=\"x\"");
+            }
+            pw.println("..end");
+        }
+        byte[] gzip = bytes.toByteArray();
+        Files.write(new File(inputDirectory, "dump3b.txt").toPath(),
+                Arrays.copyOf(gzip, gzip.length / 2));
+
+        File serial = parse(1);
+        File parallel = parse(3);
+        assertTrue(new String(Files.readAllBytes(new File(serial, "CELL.csv").toPath()), "UTF-8")
+                .contains("FAILED0,"));
+        for(String name : serial.list()){
+            assertEquals(name,
+                    new String(Files.readAllBytes(new File(serial, name).toPath()), "UTF-8"),
+                    new String(Files.readAllBytes(new File(parallel, name).toPath()), "UTF-8"));
+        }
+    }
+
+    public void testLargestFirst() throws IOException
+    {
+        File[] files = new File[3];
+        for(int f = 0; f < files.length; f++){
+            files[f] = new File(inputDirectory, "size" + f + ".txt");
+            Files.write(files[f].toPath(), new byte[f == 0 ? 10 : 20]);
+        }
+        assertTrue(java.util.Arrays.equals(new Integer[]{ 1, 2, 0 },
+                ParallelDirectoryParser.largestFirst(files)));
+    }
+    
+    private File parse(int threads) throws IOException
+    {
+        File outputDirectory = Files.createTempDirectory("cnai-out").toFile();
+        
+        CnaiParser.builder()
+                .outputDirectory(outputDirectory.getAbsolutePath())
+                .threads(threads)
+                .build()
+                .parse(inputDirectory.getAbsolutePath());
+        
+        return outputDirectory;
+    }
+}
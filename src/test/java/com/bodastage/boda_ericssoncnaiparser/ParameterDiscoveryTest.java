@@ -0,0 +1,60 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks the parameter configuration written by the parameter extraction.
+ */
+public class ParameterDiscoveryTest extends TestCase
+{
+    public void testConfigListsAllParameters() throws IOException
+    {
+        Path dir = Files.createTempDirectory("cnai-in");
+        try(PrintWriter pw = new PrintWriter(dir.resolve("a.txt").toFile())){
+            pw.print("..cnai v2\n");
+            pw.print(".domain CELL\n");
+            pw.print(".set A\nP0=1\nP1=2\n.set A\nUSERDATA=\"u\"\n");
+            pw.print("no separator\n");
+            pw.print(".domain EMPTY\n");
+            pw.print("..end\n");
+        }
+        try(OutputStream out = new GZIPOutputStream(Files.newOutputStream(dir.resolve("b.txt.gz")));
+                PrintWriter pw = new PrintWriter(out)){
+            pw.print("..cnai v2\n");
+            pw.print(".domain CELL\n");
+            pw.print(".set B\nP2=1\nP0=2\n.set B\nUSERDATA=\"u\"\n");
+            pw.print("..end\n");
+        }
+
+        CnaiParser parser = CnaiParser.builder().extractParametersOnly(true).build();
+        ParameterDiscovery discovery = parser.discoverParameters(dir.toString());
+        assertEquals(Arrays.asList("CELL", "EMPTY"),
+                Arrays.asList(discovery.getParameters().keySet().toArray()));
+        assertTrue(discovery.getParameters().get("CELL").containsAll(
+                Arrays.asList("P0", "P1", "P2", "USERDATA")));
+        assertEquals(4, discovery.getParameters().get("CELL").size());
+
+        Path out = Files.createTempDirectory("cnai-out");
+        CnaiParser.builder().extractParametersOnly(true).outputDirectory(out.toString())
+                .build().parse(dir.toString());
+        Map<String, List<String>> config = CnaiParser.getParametersToExtract(
+                out.resolve(CnaiParser.PARAMETER_CONFIG_FILE).toString());
+        assertEquals(Arrays.asList("capabilities", "subnetwork", "domain", "set"),
+                config.get("EMPTY"));
+        assertEquals(8, config.get("CELL").size());
+
+        StringWriter w = new StringWriter();
+        discovery.writeConfig(w);
+        assertTrue(w.toString().endsWith("EMPTY:capabilities,subnetwork,domain,set\n"));
+    }
+}
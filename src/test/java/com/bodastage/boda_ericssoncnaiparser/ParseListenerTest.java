@@ -0,0 +1,108 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Checks the events of a run and the deprecated static API.
+ */
+public class ParseListenerTest extends TestCase
+{
+    private Path input;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        input = Files.createTempDirectory("cnai-in");
+        try(PrintWriter pw = new PrintWriter(input.resolve("a.txt").toFile())){
+            pw.print("..cnai v2\n.domain CELL\n.set A\nP=1\n.set A\nUSERDATA=\"u\"\n..end\n");
+        }
+
+        //A gzip header followed by garbage
+        Files.write(input.resolve("b.txt"), new byte[]{ 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0, 1 });
+    }
+
+    public void testEvents() throws IOException
+    {
+        for(int threads = 1; threads <= 2; threads++){
+            final List<String> events = new ArrayList<String>();
+            File out = Files.createTempDirectory("cnai-out").toFile();
+            CnaiParser.builder().outputDirectory(out.getAbsolutePath()).threads(threads)
+                    .listener(new ParseListener(){
+                        @Override
+                        public void fileStarted(String fileName){
+                            events.add("started " + fileName);
+                        }
+
+                        @Override
+                        public void fileParsed(String fileName){
+                            events.add("parsed " + fileName);
+                        }
+
+                        @Override
+                        public void fileSkipped(String fileName, Exception error){
+                            events.add("skipped " + fileName);
+                        }
+                    }).build().parse(input.toString());
+
+            assertEquals(Arrays.asList("started a.txt", "parsed a.txt", "started b.txt",
+                    "skipped b.txt"), events);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedApi() throws IOException
+    {
+        File out = Files.createTempDirectory("cnai-out").toFile();
+        BodaCNAIParser legacy = new BodaCNAIParser();
+        legacy.setOutputDirectory(out.getAbsolutePath());
+        legacy.setDataSource(input.resolve("a.txt").toString());
+        BodaCNAIParser.processFileOrDirectory(null);
+        assertTrue(new File(out, "CELL.csv").isFile());
+
+        File lines = Files.createTempDirectory("cnai-out").toFile();
+        legacy.setOutputDirectory(lines.getAbsolutePath());
+        for(String line : new String[]{ ".domain BSC", ".set B", "P=2", ".set B", "USERDATA=\"u\"" }){
+            BodaCNAIParser.processLine(line);
+        }
+        BodaCNAIParser.closeDomainPWMap();
+        assertEquals(2, Files.readAllLines(new File(lines, "BSC.csv").toPath()).size());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedStatics() throws IOException
+    {
+        Path v1 = Files.createTempDirectory("cnai-in").resolve("v1.txt");
+        Files.write(v1, Arrays.asList("CELL BSC", "---- ---", "C1 B1"));
+        Path parameters = Files.createTempFile("cnai", ".cfg");
+        Files.write(parameters, Arrays.asList("CELL:set,P"));
+
+        File out = Files.createTempDirectory("cnai-out").toFile();
+        BodaCNAIParser legacy = new BodaCNAIParser();
+        legacy.setOutputDirectory(out.getAbsolutePath());
+        BodaCNAIParser.setFileName(v1.toString());
+        assertFalse(BodaCNAIParser.isVersion1);
+        BodaCNAIParser.parseCNAIVersion1File(v1.toString());
+        assertEquals(Arrays.asList("CELL,BSC", "C1,B1"),
+                Files.readAllLines(new File(out, "v1.txt.csv").toPath()));
+
+        File expected = Files.createTempDirectory("cnai-out").toFile();
+        CnaiParser.builder().outputDirectory(expected.getAbsolutePath())
+                .parameterFile(parameters.toString()).build().parse(input.resolve("a.txt").toString());
+        try{
+            BodaCNAIParser.getParametersToExtract(parameters.toString());
+            BodaCNAIParser.parse(input.resolve("a.txt").toString());
+        }finally{
+            legacy.setParameterFile(null);
+        }
+        assertEquals(Files.readAllLines(new File(expected, "CELL.csv").toPath()),
+                Files.readAllLines(new File(out, "CELL.csv").toPath()));
+    }
+}
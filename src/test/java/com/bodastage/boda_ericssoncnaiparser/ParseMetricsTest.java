@@ -0,0 +1,105 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks the counts of a parse run.
+ */
+public class ParseMetricsTest extends TestCase
+{
+    private Path input;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        input = Files.createTempFile("cnai", ".txt");
+        try(PrintWriter pw = new PrintWriter(input.toFile())){
+            pw.print("..cnai v2\n.domain CELL\n");
+            entity(pw, "A", "P0=1", "P1=2");
+            entity(pw, "B", "P0=1", "P1=2");
+            pw.print("garbage\n");
+            pw.print(".domain BSC\n");
+            entity(pw, "C", "P0=1", "P1=2");
+            pw.print("..end\n");
+        }
+    }
+
+    public void testCounts() throws IOException
+    {
+        File out = Files.createTempDirectory("cnai-out").toFile();
+        ParseMetrics metrics = new ParseMetrics();
+        CnaiParser.builder().outputDirectory(out.getAbsolutePath()).metrics(metrics)
+                .build().parse(input.toString());
+
+        assertEquals(Files.size(input), metrics.getBytes());
+        assertEquals(20, metrics.getLines());
+        assertEquals(3, metrics.getRecords());
+        assertEquals(3, metrics.getRows());
+        assertEquals(1, metrics.getMalformedLines());
+
+        Map<String, Long> domains = metrics.getDomainRecords();
+        assertEquals(Long.valueOf(2), domains.get("CELL"));
+        assertEquals(Long.valueOf(1), domains.get("BSC"));
+
+        Path report = Files.createTempFile("cnai-report", ".json");
+        metrics.writeReport(report);
+        String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"lines\": 20,"));
+        assertTrue(json, json.contains("\"CELL\": 2"));
+        assertTrue(json, json.contains("\"name\": \"" + input.getFileName() + "\""));
+    }
+
+    public void testBytesAreThoseOfTheFile() throws IOException
+    {
+        //CRLF line ends and multibyte characters, plain and compressed
+        String dump = "..cnai v2\r\n.domain CELL\r\n.set A\r\nP0=\u00e9t\u00e9\r\n"
+                + "P1=\u20ac\r\n.set A\r\nUSERDATA=\"u\"\r\n..end\r\n";
+        Path directory = Files.createTempDirectory("cnai-in");
+        Path plain = directory.resolve("plain.txt");
+        Files.write(plain, dump.getBytes(StandardCharsets.UTF_8));
+        Path gzip = directory.resolve("dump.gz");
+        try(OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))){
+            out.write(dump.getBytes(StandardCharsets.UTF_8));
+        }
+        Path zip = directory.resolve("dump.zip");
+        try(ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))){
+            for(String entry : new String[]{ "a.txt", "b.txt" }){
+                out.putNextEntry(new ZipEntry(entry));
+                out.write(dump.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+
+        for(Path file : new Path[]{ plain, gzip, zip }){
+            for(int reader = 0; reader < 3; reader++){
+                ParseMetrics metrics = new ParseMetrics();
+                CnaiParser.builder().outputDirectory(Files.createTempDirectory("cnai-out").toString())
+                        .nioReader(reader == 1).pipelined(reader == 2).metrics(metrics)
+                        .build().parse(file.toString());
+                assertEquals(file + ", reader " + reader, Files.size(file), metrics.getBytes());
+                assertEquals(file == zip ? 16 : 8, metrics.getLines());
+            }
+        }
+    }
+
+    private static void entity(PrintWriter pw, String set, String... parameters)
+    {
+        pw.print(".set " + set + "\n");
+        for(String p : parameters){
+            pw.print(p + "\n");
+        }
+        pw.print(".set " + set + "\n");
+        pw.print("USERDATA=\"u\"\n");
+    }
+}
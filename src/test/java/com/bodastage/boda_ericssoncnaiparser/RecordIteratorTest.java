@@ -0,0 +1,176 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks that a record sink and the record iterator see the records written
+ * to the csv files.
+ */
+public class RecordIteratorTest extends TestCase
+{
+    private static final String DUMP = "..cnai v2\n"
+            + "..capabilities CAP\n"
+            + ".subnetwork NET\n"
+            + ".utctime 2020-01-01 00:00\n"
+            + ".domain CELL\n"
+            + ".set CELL1\n"
+            + "P0=\"a, b\"\n"
+            + "P1=1\n"
+            + ".set CELL1\n"
+            + "USERDATA=\"x\"\n"
+            + ".set CELL2\n"
+            + "P0=c\n"
+            + "P1=2\n"
+            + ".set CELL2\n"
+            + "USERDATA=\"y\"\n"
+            + ".domain SITE\n"
+            + ".set SITE1\n"
+            + "S0=s\n"
+            + ".set SITE1\n"
+            + "USERDATA=\"z\"\n"
+            + "..end\n";
+
+    private static final List<String> EXPECTED = new ArrayList<String>();
+
+    static
+    {
+        for(String file : new String[]{"dump1.txt", "dump2.txt"}){
+            EXPECTED.add(file + "|2020-01-01 00:00|CAP|NET|CELL|CELL1|{P0=\"a, b\", P1=1, USERDATA=\"x\"}");
+            EXPECTED.add(file + "|2020-01-01 00:00|CAP|NET|CELL|CELL2|{P0=c, P1=2, USERDATA=\"y\"}");
+            EXPECTED.add(file + "|2020-01-01 00:00|CAP|NET|SITE|SITE1|{S0=s, USERDATA=\"z\"}");
+        }
+    }
+
+    private File inputDirectory;
+
+    private CnaiParser parser;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        inputDirectory = Files.createTempDirectory("cnai-in").toFile();
+        Files.write(new File(inputDirectory, "dump1.txt").toPath(),
+                DUMP.getBytes(StandardCharsets.UTF_8));
+        try(OutputStream out = new GZIPOutputStream(
+                new FileOutputStream(new File(inputDirectory, "dump2.txt")))){
+            out.write(DUMP.getBytes(StandardCharsets.UTF_8));
+        }
+
+        parser = CnaiParser.builder().build();
+    }
+
+    public void testSinkGetsEveryRecord() throws IOException
+    {
+        for(boolean pipelined : new boolean[]{false, true}){
+            final List<CnaiRecord> records = new ArrayList<CnaiRecord>();
+            CnaiParser.builder().pipelined(pipelined).build()
+                    .parse(inputDirectory.getAbsolutePath(), records::add);
+
+            //The records are kept after the parse
+            List<String> formatted = new ArrayList<String>();
+            for(CnaiRecord record : records){
+                formatted.add(format(record));
+            }
+            assertEquals(expected(), formatted);
+        }
+    }
+
+    public void testIteratorReturnsEveryRecord() throws IOException
+    {
+        List<String> records = new ArrayList<String>();
+        try(RecordIterator it = parser.records(inputDirectory.getAbsolutePath())){
+            while(it.hasNext()){
+                records.add(format(it.next()));
+            }
+            assertFalse(it.hasNext());
+        }
+        assertEquals(expected(), records);
+    }
+
+    public void testParameterFileOnlySelectsCsvColumns() throws IOException
+    {
+        File parameters = File.createTempFile("cnai", ".cfg");
+        Files.write(parameters.toPath(), "CELL:P0\n".getBytes(StandardCharsets.UTF_8));
+
+        //The same sink over the String, nio and pipelined readers
+        for(int reader = 0; reader < 3; reader++){
+            final List<String> records = new ArrayList<String>();
+            CnaiParser.builder().parameterFile(parameters.getAbsolutePath())
+                    .nioReader(reader == 1).pipelined(reader == 2).build()
+                    .parse(inputDirectory.getAbsolutePath(), record -> records.add(format(record)));
+            assertEquals("reader " + reader, expected(), records);
+        }
+
+        List<String> records = new ArrayList<String>();
+        try(RecordIterator it = CnaiParser.builder().parameterFile(parameters.getAbsolutePath())
+                .build().records(inputDirectory.getAbsolutePath())){
+            while(it.hasNext()){
+                records.add(format(it.next()));
+            }
+        }
+        assertEquals(expected(), records);
+    }
+
+    public void testValuesAreDecodedAsUtf8() throws IOException
+    {
+        File directory = Files.createTempDirectory("cnai-in").toFile();
+        String dump = "..cnai v2\n.domain CELL\n.set C\u00e9\nP0=\u20ac \u00e9t\u00e9\n"
+                + ".set C\u00e9\nUSERDATA=\"x\"\n..end\n";
+        Files.write(new File(directory, "dump1.txt").toPath(), dump.getBytes(StandardCharsets.UTF_8));
+        try(OutputStream out = new GZIPOutputStream(
+                new FileOutputStream(new File(directory, "dump2.txt")))){
+            out.write(dump.getBytes(StandardCharsets.UTF_8));
+        }
+
+        for(int reader = 0; reader < 4; reader++){
+            final List<String> values = new ArrayList<String>();
+            CnaiParser p = CnaiParser.builder().nioReader(reader == 1).pipelined(reader == 2).build();
+            if(reader < 3){
+                p.parse(directory.getAbsolutePath(), record -> values.add(record.getSet()
+                        + " " + record.getParameters().get("P0")));
+            }else{
+                try(RecordIterator it = p.records(directory.getAbsolutePath())){
+                    while(it.hasNext()){
+                        CnaiRecord record = it.next();
+                        values.add(record.getSet() + " " + record.getParameters().get("P0"));
+                    }
+                }
+            }
+            assertEquals("reader " + reader, 2, values.size());
+            for(String value : values){
+                assertEquals("C\u00e9 \u20ac \u00e9t\u00e9", value);
+            }
+        }
+    }
+
+    /**
+     * The expected records, with the files in the directory listing order.
+     */
+    private List<String> expected()
+    {
+        List<String> expected = new ArrayList<String>();
+        for(File f : inputDirectory.listFiles()){
+            for(String e : EXPECTED){
+                if(e.startsWith(f.getName())) expected.add(e);
+            }
+        }
+        return expected;
+    }
+
+    private static String format(CnaiRecord record)
+    {
+        return record.getFileName() + "|" + record.getDateTime()
+                + "|" + record.getCapabilities() + "|" + record.getSubnetwork()
+                + "|" + record.getDomain() + "|" + record.getSet()
+                + "|" + record.getParameters();
+    }
+}
@@ -0,0 +1,63 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.nio.charset.StandardCharsets;
+import junit.framework.TestCase;
+
+/**
+ * Checks the lookups of the symbol table.
+ */
+public class SymbolTableTest extends TestCase
+{
+    public void testSymbolsAreShared()
+    {
+        SymbolTable table = new SymbolTable();
+        byte[] line = "xxBSPWRB=ACTIVEx".getBytes(StandardCharsets.UTF_8);
+
+        String name = table.symbol(line, 2, 6);
+        assertEquals("BSPWRB", name);
+        assertSame(name, table.symbol(line, 2, 6));
+        assertSame(name, table.symbol("BSPWRB=NO", 0, 6));
+
+        String value = table.symbol("BSPWRB=ACTIVE", 7, 13);
+        assertEquals("ACTIVE", value);
+        assertSame(value, table.symbol(line, 9, 6));
+        assertEquals(2, table.size());
+
+        byte[] utf8 = "NAME=\u00c5sa".getBytes(StandardCharsets.UTF_8);
+        assertEquals("\u00c5sa", table.symbol(utf8, 5, utf8.length - 5));
+        assertEquals("\u00c5sa", table.symbol("NAME=\u00c5sa", 5, 8));
+        assertEquals("", table.symbol(utf8, 0, 0));
+    }
+
+    public void testValuesAreSharedOnlyIfTheyRepeat()
+    {
+        SymbolTable unique = new SymbolTable();
+        SymbolTable repeated = new SymbolTable();
+        for(int i = 0; i < SymbolTable.VALUE_SAMPLE_SIZE; i++){
+            String line = "P=V" + i;
+            unique.value(line, 2, line.length());
+            repeated.value("P=" + (i % 3), 2, 3);
+        }
+
+        assertNotSame(unique.value("P=ACTIVE", 2, 8), unique.value("P=ACTIVE", 2, 8));
+        assertSame(repeated.value("P=ACTIVE", 2, 8), repeated.value("P=ACTIVE", 2, 8));
+
+        //Long values are never shared
+        String line = "P=" + new String(new char[SymbolTable.MAX_VALUE_LENGTH + 1]).replace('\0', 'x');
+        assertNotSame(repeated.value(line, 2, line.length()), repeated.value(line, 2, line.length()));
+    }
+
+    public void testTableIsBounded()
+    {
+        SymbolTable table = new SymbolTable();
+        for(int i = 0; i < SymbolTable.MAX_SIZE * 2; i++){
+            byte[] b = ("P" + i).getBytes(StandardCharsets.UTF_8);
+            assertEquals("P" + i, table.symbol(b, 0, b.length));
+        }
+        assertEquals(SymbolTable.MAX_SIZE, table.size());
+
+        //The first symbols are still found
+        byte[] b = "P0".getBytes(StandardCharsets.UTF_8);
+        assertSame(table.symbol(b, 0, 2), table.symbol("P0", 0, 2));
+    }
+}
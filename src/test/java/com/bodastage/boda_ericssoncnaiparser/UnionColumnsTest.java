@@ -0,0 +1,81 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Checks that parameters found after the first record of a domain get
+ * columns of their own.
+ */
+public class UnionColumnsTest extends TestCase
+{
+    public void testLaterParametersArePadded() throws IOException
+    {
+        Path dump = Files.createTempFile("cnai", ".txt");
+        try(PrintWriter pw = new PrintWriter(dump.toFile())){
+            pw.print("..cnai v2\n");
+            pw.print("..capabilities CAP\n");
+            pw.print(".subnetwork NET\n");
+            pw.print(".utctime 2020-01-01 00:00\n");
+            pw.print(".domain CELL\n");
+            entity(pw, "A", "P0=1", "P1=\"x, y\"");
+            entity(pw, "B", "P2=2", "P0=3");
+            entity(pw, "C", "P1=4", "P3=5");
+            entity(pw, "D", "P0=6", "P1=7");
+            pw.print(".domain EMPTY\n");
+            pw.print("..end\n");
+        }
+
+        CnaiParser parser = CnaiParser.builder().unionColumns(true).build();
+        File out = Files.createTempDirectory("cnai-out").toFile();
+        try(DomainWriters output = parser.newOutput(out.getAbsolutePath())){
+            parser.newSession(output, "dump.txt").parse(dump.toString());
+        }
+
+        List<String> lines = Files.readAllLines(
+                new File(out, "CELL.csv").toPath(), StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList(
+                "FILENAME,DATETIME,capabilities,subnetwork,domain,set,P0,P1,USERDATA,P2,P3",
+                "dump.txt,2020-01-01 00:00,CAP,NET,CELL,A,1,\"x, y\",u,,",
+                "dump.txt,2020-01-01 00:00,CAP,NET,CELL,B,3,,u,2,",
+                "dump.txt,2020-01-01 00:00,CAP,NET,CELL,C,,4,u,,5",
+                "dump.txt,2020-01-01 00:00,CAP,NET,CELL,D,6,7,u,,"), lines);
+
+        assertEquals(0, new File(out, "EMPTY.csv").length());
+        assertEquals(Arrays.asList("CELL.csv", "EMPTY.csv"),
+                Arrays.asList(sorted(out.list())));
+    }
+
+    public void testRejectsParallelRuns() throws IOException
+    {
+        try{
+            CnaiParser.builder().unionColumns(true).threads(2).build();
+            fail();
+        }catch(IllegalArgumentException e){
+            assertEquals("Union columns are written by a single thread", e.getMessage());
+        }
+    }
+
+    private static void entity(PrintWriter pw, String set, String... parameters)
+    {
+        pw.print(".set " + set + "\n");
+        for(String p : parameters){
+            pw.print(p + "\n");
+        }
+        pw.print(".set " + set + "\n");
+        pw.print("USERDATA=\"u\"\n");
+    }
+
+    private static String[] sorted(String[] names)
+    {
+        Arrays.sort(names);
+        return names;
+    }
+}
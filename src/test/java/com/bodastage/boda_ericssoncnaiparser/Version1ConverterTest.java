@@ -0,0 +1,126 @@
+package com.bodastage.boda_ericssoncnaiparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks the conversion of CNAI v1 files.
+ */
+public class Version1ConverterTest extends TestCase
+{
+    public void testConvert()
+    {
+        assertEquals("CELL,BSC,PARAM\n"
+                + "C1,B1,10\n"
+                + "C2,,B1,\"x,y\"\n"
+                + "C3,\"a b\",\"p,q\",\"say\"\"hi\"\"\"\n"
+                + "\n",
+                convert("CELL BSC PARAM\r\n"
+                + "---- --- -----\r\n"
+                + "C1 B1 10\r\n"
+                + "C2 \tB1 \"x,y\"\r\n"
+                + "C3 \"a b\" p,q say\"hi\"\r\n"
+                + "\r\n"));
+    }
+
+    public void testQuotedValuesAreKeptWhole()
+    {
+        //Up to 2.3 every whitespace character became a comma, giving
+        //C3,"a,b",p,q: the quoted value was split and p,q took two columns
+        assertEquals("CELL,NAME,LIST\n"
+                + "C3,\"a b\",\"p,q\"\n",
+                convert("CELL NAME LIST\n"
+                + "---- ---- ----\n"
+                + "C3 \"a b\" p,q\n"));
+    }
+
+    public void testMixedDirectory() throws IOException
+    {
+        Path input = Files.createTempDirectory("cnai-in");
+        try(PrintWriter pw = new PrintWriter(input.resolve("v1.txt").toFile())){
+            pw.print("CELL BSC\n---- ---\nC1 B1\n");
+        }
+        try(PrintWriter pw = new PrintWriter(input.resolve("v2.txt").toFile())){
+            pw.print("..cnai v2\n.domain CELL\n.set A\nP=1\n.set A\nUSERDATA=\"u\"\n..end\n");
+        }
+
+        for(int threads = 1; threads <= 4; threads++){
+            //A -v1 run still recognizes the v2 file
+            File out = Files.createTempDirectory("cnai-out").toFile();
+            CnaiParser.builder().outputDirectory(out.getAbsolutePath()).threads((threads + 1) / 2)
+                    .version1(threads % 2 == 0).build().parse(input.toString());
+
+            assertEquals(Arrays.asList("CELL,BSC", "C1,B1"),
+                    Files.readAllLines(new File(out, "v1.txt.csv").toPath(), StandardCharsets.UTF_8));
+            assertTrue(new File(out, "CELL.csv").isFile());
+        }
+    }
+
+    public void testSkippedWithoutCsvOutput() throws IOException
+    {
+        Path input = Files.createTempDirectory("cnai-in");
+        try(PrintWriter pw = new PrintWriter(input.resolve("v1.txt").toFile())){
+            pw.print("CELL BSC\n---- ---\nC1 B1\n");
+        }
+        try(OutputStream out = new GZIPOutputStream(Files.newOutputStream(input.resolve("v1.gz")))){
+            out.write("CELL BSC\n---- ---\nC1 B1\n".getBytes(StandardCharsets.UTF_8));
+        }
+        try(PrintWriter pw = new PrintWriter(input.resolve("v2.txt").toFile())){
+            pw.print("..cnai v2\n.domain CELL\n.set A\nP=1\n.set A\nUSERDATA=\"u\"\n..end\n");
+        }
+
+        for(boolean version1 : new boolean[]{ false, true }){
+            final List<String> skipped = new ArrayList<String>();
+            CnaiParser parser = CnaiParser.builder().version1(version1)
+                    .listener(new ParseListener(){
+                        @Override
+                        public void fileSkipped(String fileName, Exception error){
+                            assertTrue(error.getMessage().contains("CNAI v1"));
+                            skipped.add(fileName);
+                        }
+                    }).build();
+
+            List<String> sets = new ArrayList<String>();
+            parser.parse(input.toString(), record -> sets.add(record.getSet()));
+            assertEquals(Arrays.asList("A"), sets);
+            assertEquals(Arrays.asList("v1.gz", "v1.txt"), skipped);
+
+            skipped.clear();
+            sets.clear();
+            try(RecordIterator records = parser.records(input.toString())){
+                while(records.hasNext()) sets.add(records.next().getSet());
+            }
+            assertEquals(Arrays.asList("A"), sets);
+            assertEquals(Arrays.asList("v1.gz", "v1.txt"), skipped);
+
+            skipped.clear();
+            assertEquals(Arrays.asList("CELL"),
+                    new ArrayList<String>(parser.discoverParameters(input.toString()).getParameters().keySet()));
+            assertEquals(Arrays.asList("v1.gz", "v1.txt"), skipped);
+        }
+    }
+
+    private static String convert(String v1)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Version1Converter converter = new Version1Converter(out);
+        byte[] bytes = v1.getBytes(StandardCharsets.UTF_8);
+        LineSplitter splitter = new LineSplitter();
+        int start = splitter.split(bytes, 0, 0, bytes.length, converter);
+        if(start < bytes.length) converter.line(bytes, start, bytes.length - start);
+        converter.flush();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}